@@ -0,0 +1,206 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import com.edugility.maven.liquibase.AggregateChangeLogGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput and latency of {@link
+ * AggregateChangeLogGenerator}'s rendering and up-to-date checking
+ * over varying numbers of changelog {@link URL}s.
+ *
+ * <p>Run with {@code -prof gc} to measure allocation rates as
+ * well.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+public class GenerateBenchmark {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The number of changelog {@link URL}s to aggregate.
+   */
+  @Param({ "10", "100", "1000", "10000" })
+  public int resourceCount;
+
+  private File directory;
+
+  private List<URL> resources;
+
+  private AggregateChangeLogGenerator generator;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link GenerateBenchmark}.
+   */
+  public GenerateBenchmark() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.directory = File.createTempFile("maven-liquibase-benchmarks", "");
+    if (!this.directory.delete() || !this.directory.mkdir()) {
+      throw new IOException("Could not create " + this.directory);
+    }
+    this.resources = new ArrayList<URL>(this.resourceCount);
+    for (int i = 0; i < this.resourceCount; i++) {
+      this.resources.add(new URL("jar:" + new File(this.directory, "artifact" + i + ".jar").toURI().toURL().toExternalForm() + "!/" + SyntheticRepository.CHANGELOG_RESOURCE_NAME));
+    }
+    this.generator = new AggregateChangeLogGenerator();
+    this.generator.setAggregateChangeLogFile(new File(this.directory, "changelog.xml"));
+    this.generator.generate(this.resources);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (this.directory != null) {
+      final File[] files = this.directory.listFiles();
+      if (files != null) {
+        for (final File file : files) {
+          file.delete();
+        }
+      }
+      this.directory.delete();
+    }
+  }
+
+  /**
+   * Renders the aggregate changelog in full, discarding the result.
+   *
+   * @return the number of characters rendered
+   *
+   * @exception IOException if an error occurs
+   */
+  @Benchmark
+  public long render() throws IOException {
+    final CountingWriter writer = new CountingWriter();
+    this.generator.generate(this.resources, writer);
+    return writer.count;
+  }
+
+  /**
+   * Calls {@link AggregateChangeLogGenerator#generate(Collection)} on
+   * an aggregate changelog that is already up to date, which is the
+   * common case for incremental builds.
+   *
+   * @return the aggregate changelog {@link File}
+   *
+   * @exception IOException if an error occurs
+   */
+  @Benchmark
+  public File generateUpToDate() throws IOException {
+    return this.generator.generate(this.resources);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  private static final class CountingWriter extends Writer {
+
+    private long count;
+
+    private CountingWriter() {
+      super();
+    }
+
+    @Override
+    public final void write(final char[] characters, final int offset, final int length) {
+      this.count += length;
+    }
+
+    @Override
+    public final void write(final String string, final int offset, final int length) {
+      this.count += length;
+    }
+
+    @Override
+    public final void flush() {
+
+    }
+
+    @Override
+    public final void close() {
+
+    }
+
+  }
+
+}
@@ -0,0 +1,176 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Collection;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import com.edugility.maven.ArtifactsProcessingException;
+
+import com.edugility.maven.liquibase.AggregateChangeLogGenerator;
+import com.edugility.maven.liquibase.LiquibaseChangeLogArtifactsProcessor;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.project.MavenProject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput and latency of {@link
+ * LiquibaseChangeLogArtifactsProcessor#process(MavenProject,
+ * Collection, org.apache.maven.plugin.logging.Log)} over a {@link
+ * SyntheticRepository} of varying size.
+ *
+ * <p>Run with {@code -prof gc} to measure allocation rates as
+ * well.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+public class ProcessBenchmark {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The number of {@link Artifact}s to process.
+   */
+  @Param({ "10", "100", "1000", "10000" })
+  public int artifactCount;
+
+  /**
+   * Which cache, if any, may answer artifact scans: {@code none},
+   * so that every invocation opens every archive; {@code
+   * archiveEntryCache}, the in-memory cache of archive entry lists,
+   * which lives as long as the Java Virtual Machine; or {@code
+   * scanIndex}, the persistent scan index.  When either cache is in
+   * use, every invocation after the first is answered from it.
+   */
+  @Param({ "none", "archiveEntryCache", "scanIndex" })
+  public String scanCache;
+
+  /**
+   * Whether the aggregate changelog is deleted before each
+   * invocation, so that every invocation renders it; when it is not,
+   * every invocation after the first finds it up to date and skips
+   * rendering.
+   */
+  @Param({ "true", "false" })
+  public boolean freshChangeLog;
+
+  private SyntheticRepository repository;
+
+  private File changeLogFile;
+
+  private List<Artifact> artifacts;
+
+  private MavenProject project;
+
+  private LiquibaseChangeLogArtifactsProcessor processor;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ProcessBenchmark}.
+   */
+  public ProcessBenchmark() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.repository = new SyntheticRepository(this.artifactCount);
+    this.artifacts = this.repository.getArtifacts();
+    this.project = this.repository.getProject();
+    this.changeLogFile = new File(this.repository.getDirectory(), "changelog.xml");
+    final AggregateChangeLogGenerator generator = new AggregateChangeLogGenerator();
+    generator.setAggregateChangeLogFile(this.changeLogFile);
+    this.processor = new LiquibaseChangeLogArtifactsProcessor();
+    this.processor.setChangeLogGenerator(generator);
+    this.processor.setArchiveEntryCacheEnabled("archiveEntryCache".equals(this.scanCache));
+    this.processor.setScanIndexEnabled("scanIndex".equals(this.scanCache));
+    this.processor.setScanIndexFile(new File(this.repository.getDirectory(), "scan-index.properties"));
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() throws IOException {
+    if (this.freshChangeLog && this.changeLogFile.exists() && !this.changeLogFile.delete()) {
+      throw new IOException("Could not delete " + this.changeLogFile);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    if (this.repository != null) {
+      this.repository.delete();
+    }
+  }
+
+  @Benchmark
+  public Collection<? extends Artifact> process() throws ArtifactsProcessingException {
+    return this.processor.process(this.project, this.artifacts, null);
+  }
+
+}
@@ -0,0 +1,297 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+import org.apache.maven.model.Build;
+
+import org.apache.maven.project.MavenProject;
+
+/**
+ * A synthetic, on-disk Maven repository of resolved {@link
+ * Artifact}s, some of which contain Liquibase changelogs, for use by
+ * benchmarks.
+ *
+ * <p>Artifacts are created in a repeating pattern: a jar with a
+ * changelog, a jar without one, a directory with a changelog and a
+ * directory without one.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+final class SyntheticRepository {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The resource name of the changelog contained by those artifacts
+   * that contain one.
+   */
+  static final String CHANGELOG_RESOURCE_NAME = "META-INF/liquibase/changelog.xml";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  private final File directory;
+
+  private final List<Artifact> artifacts;
+
+  private final MavenProject project;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link SyntheticRepository} of the supplied number
+   * of {@link Artifact}s in a new temporary directory.
+   *
+   * @param artifactCount the number of {@link Artifact}s to create;
+   * must not be negative
+   *
+   * @exception IOException if the repository could not be created
+   */
+  SyntheticRepository(final int artifactCount) throws IOException {
+    super();
+    if (artifactCount < 0) {
+      throw new IllegalArgumentException("artifactCount < 0: " + artifactCount);
+    }
+    this.directory = Files.createTempDirectory("maven-liquibase-benchmarks").toFile();
+    final List<Artifact> artifacts = new ArrayList<Artifact>(artifactCount);
+    for (int i = 0; i < artifactCount; i++) {
+      final String artifactId = "artifact" + i;
+      final File file;
+      switch (i % 4) {
+      case 0:
+        file = new File(this.directory, artifactId + ".jar");
+        writeJar(file, changeLog(artifactId));
+        break;
+      case 1:
+        file = new File(this.directory, artifactId + ".jar");
+        writeJar(file, null);
+        break;
+      case 2:
+        file = new File(this.directory, artifactId);
+        writeDirectory(file, changeLog(artifactId));
+        break;
+      default:
+        file = new File(this.directory, artifactId);
+        writeDirectory(file, null);
+        break;
+      }
+      final DefaultArtifact artifact = new DefaultArtifact("com.example.benchmarks", artifactId, "1.0", Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+      artifact.setFile(file);
+      artifact.setResolved(true);
+      artifacts.add(artifact);
+    }
+    this.artifacts = Collections.unmodifiableList(artifacts);
+
+    final File projectDirectory = new File(this.directory, "project");
+    final Build build = new Build();
+    build.setDirectory(new File(projectDirectory, "target").getAbsolutePath());
+    build.setOutputDirectory(new File(projectDirectory, "target/classes").getAbsolutePath());
+    build.setTestOutputDirectory(new File(projectDirectory, "target/test-classes").getAbsolutePath());
+    this.project = new MavenProject();
+    this.project.setBuild(build);
+    this.project.setArtifact(new DefaultArtifact("com.example.benchmarks", "project", "1.0", Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar")));
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the directory in which this {@link SyntheticRepository}
+   * lives.
+   *
+   * @return a non-{@code null} directory
+   */
+  final File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * Returns the {@link Artifact}s in this {@link SyntheticRepository}.
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Artifact}s
+   */
+  final List<Artifact> getArtifacts() {
+    return this.artifacts;
+  }
+
+  /**
+   * Returns a {@link MavenProject} whose build directory is inside
+   * this {@link SyntheticRepository}.
+   *
+   * @return a non-{@code null} {@link MavenProject}
+   */
+  final MavenProject getProject() {
+    return this.project;
+  }
+
+  /**
+   * Deletes this {@link SyntheticRepository} and everything in it.
+   *
+   * @exception IOException if an error occurs
+   */
+  final void delete() throws IOException {
+    Files.walkFileTree(this.directory.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+          Files.delete(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public final FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+          if (exception != null) {
+            throw exception;
+          }
+          Files.delete(directory);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final byte[] changeLog(final String artifactId) {
+    return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\"\n" +
+            "                   xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+            "                   xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.3.xsd\">\n" +
+            "  <changeSet id=\"" + artifactId + "\" author=\"benchmarks\">\n" +
+            "    <createTable tableName=\"" + artifactId + "\">\n" +
+            "      <column name=\"id\" type=\"int\"/>\n" +
+            "    </createTable>\n" +
+            "  </changeSet>\n" +
+            "</databaseChangeLog>\n").getBytes(UTF_8);
+  }
+
+  private static final void writeJar(final File file, final byte[] changeLog) throws IOException {
+    ZipOutputStream zip = null;
+    try {
+      zip = new ZipOutputStream(new FileOutputStream(file));
+      // Some filler so that every archive has a realistic number of
+      // entries to look past.
+      for (int i = 0; i < 32; i++) {
+        zip.putNextEntry(new ZipEntry("com/example/benchmarks/Filler" + i + ".class"));
+        zip.write(new byte[256]);
+        zip.closeEntry();
+      }
+      if (changeLog != null) {
+        zip.putNextEntry(new ZipEntry(CHANGELOG_RESOURCE_NAME));
+        zip.write(changeLog);
+        zip.closeEntry();
+      }
+    } finally {
+      if (zip != null) {
+        try {
+          zip.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+  private static final void writeDirectory(final File directory, final byte[] changeLog) throws IOException {
+    final File packageDirectory = new File(directory, "com/example/benchmarks");
+    if (!packageDirectory.mkdirs()) {
+      throw new IOException("Could not create " + packageDirectory);
+    }
+    write(new File(packageDirectory, "Filler.class"), new byte[256]);
+    if (changeLog != null) {
+      final File changeLogFile = new File(directory, CHANGELOG_RESOURCE_NAME);
+      if (!changeLogFile.getParentFile().mkdirs()) {
+        throw new IOException("Could not create " + changeLogFile.getParentFile());
+      }
+      write(changeLogFile, changeLog);
+    }
+  }
+
+  private static final void write(final File file, final byte[] bytes) throws IOException {
+    OutputStream stream = null;
+    try {
+      stream = new FileOutputStream(file);
+      stream.write(bytes);
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+}
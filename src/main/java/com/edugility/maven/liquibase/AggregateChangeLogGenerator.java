@@ -30,24 +30,53 @@ package com.edugility.maven.liquibase;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import java.net.URL;
 
+import java.nio.charset.Charset;
+
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.logging.Log;
+
+import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 import org.mvel2.templates.CompiledTemplate;
 import org.mvel2.templates.TemplateCompiler;
 import org.mvel2.templates.TemplateRuntime;
 
+import org.mvel2.templates.util.TemplateOutputStream;
+
 /**
  * A generator that creates a <a
  * href="http://www.liquibase.org/">Liquibase</a> <a
@@ -60,6 +89,21 @@ import org.mvel2.templates.TemplateRuntime;
  * <p>This class is chiefly for use by a {@link
  * LiquibaseChangeLogArtifactsProcessor}.</p>
  *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>Instances of this class are safe for use by multiple threads.
+ * In particular, a single configured {@link
+ * AggregateChangeLogGenerator} may be shared by several modules of a
+ * parallel Maven build and its {@link #generate(Collection)} methods
+ * may be invoked concurrently.  Each such invocation takes a
+ * snapshot of this {@link AggregateChangeLogGenerator}'s
+ * configuration when it begins and works exclusively with that
+ * snapshot and with state of its own; changes made to the
+ * configuration while an invocation is in progress affect only
+ * subsequent invocations.  Concurrent invocations that write the
+ * same {@linkplain #getAggregateChangeLogFile() aggregate changelog
+ * file} each replace it atomically.</p>
+ *
  * @author <a href="http://about.me/lairdnelson"
  * target="_parent">Laird Nelson</a>
  *
@@ -80,6 +124,40 @@ public class AggregateChangeLogGenerator {
 
   private static final String LS = System.getProperty("line.separator", "\n");
 
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The maximum number of {@link CompiledTemplate}s that will be
+   * cached.
+   *
+   * @see #compileTemplate(String, ChangeLogStatistics)
+   */
+  private static final int TEMPLATE_CACHE_CAPACITY = 16;
+
+  /**
+   * Template sources read from {@link URL}s, indexed by character set
+   * and {@link URL}, shared by all {@link
+   * AggregateChangeLogGenerator} instances.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on it.</p>
+   *
+   * @see #loadTemplate(URL, String)
+   */
+  private static final Map<String, String> templateSources = new BoundedCache<String, String>(TEMPLATE_CACHE_CAPACITY);
+
+  /**
+   * {@link CompiledTemplate}s indexed by the SHA-256 digest of their
+   * source, shared by all {@link AggregateChangeLogGenerator}
+   * instances.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on it.</p>
+   *
+   * @see #compileTemplate(String, ChangeLogStatistics)
+   */
+  private static final Map<String, CompiledTemplate> compiledTemplates = new BoundedCache<String, CompiledTemplate>(TEMPLATE_CACHE_CAPACITY);
+
   /**
    * The aggregating Liquibase changelog file that includes other
    * changelog files in the appropriate order.
@@ -90,7 +168,7 @@ public class AggregateChangeLogGenerator {
    *
    * @see #setAggregateChangeLogFile(File)
    */
-  private File aggregateChangeLogFile;
+  private volatile File aggregateChangeLogFile;
 
   /**
    * A {@link String} containing the contents of a logical template
@@ -102,7 +180,7 @@ public class AggregateChangeLogGenerator {
    *
    * @see #setTemplate(String)
    */
-  private String template;
+  private volatile String template;
 
   /**
    * The version of the Liquibase changelog file generated.
@@ -113,7 +191,7 @@ public class AggregateChangeLogGenerator {
    *
    * @see #setDatabaseChangeLogXsdVersion(String)
    */
-  private String databaseChangeLogXsdVersion;
+  private volatile String databaseChangeLogXsdVersion;
 
   /**
    * A {@link Properties} object representing Liquibase changelog
@@ -125,30 +203,39 @@ public class AggregateChangeLogGenerator {
    *
    * @see #setProperties(Properties)
    */
-  private Properties properties;
+  private volatile Properties properties;
 
-  private String characterSet;
+  private volatile String characterSet;
 
   /**
-   * Represents whether the aggregate changelog was actually
-   * generated, or supplied via the {@link
-   * #setAggregateChangeLogFile(File)} method.
+   * Whether the changelogs to be aggregated will be parsed and their
+   * includes resolved so that each changelog is named only once.
    *
-   * @see #generateEmptyAggregateChangeLogFile()
+   * @see #isResolveIncludes()
+   *
+   * @see #setResolveIncludes(boolean)
    */
-  private transient boolean fileWasGenerated;
+  private volatile boolean resolveIncludes;
 
   /**
-   * An MVEL representation of the contents of the {@link #template}
-   * field.
+   * Whether the change sets of the changelogs to be aggregated will
+   * be inlined into the aggregate changelog rather than included by
+   * it.
    *
-   * <p>This field may be {@code null}.</p>
+   * @see #isFlatten()
    *
-   * @see #getTemplate()
+   * @see #setFlatten(boolean)
+   */
+  private volatile boolean flatten;
+
+  /**
+   * Represents whether the aggregate changelog was actually
+   * generated, or supplied via the {@link
+   * #setAggregateChangeLogFile(File)} method.
    *
-   * @see #setTemplate(String)
+   * @see #generateEmptyAggregateChangeLogFile()
    */
-  private transient CompiledTemplate compiledTemplate;
+  private transient volatile boolean fileWasGenerated;
 
   
   /*
@@ -299,12 +386,107 @@ public class AggregateChangeLogGenerator {
     this.characterSet = characterSet;
   }
 
+  /**
+   * Returns {@code true} if each changelog to be aggregated will
+   * first be parsed, and the graph of changelogs that it {@code
+   * <include>}s or {@code <includeAll>}s followed, so that the
+   * aggregate changelog names each reachable changelog at most once.
+   *
+   * <p>By default, this method returns {@code false} and the supplied
+   * changelogs are included exactly as given.</p>
+   *
+   * <p>When this method returns {@code true}, changelogs that consist
+   * of nothing but includes are replaced by the changelogs that they
+   * include, so that a changelog shared by several dependencies
+   * through such changelogs is parsed, and its change sets
+   * checksummed, only once by Liquibase.  Changelogs that hold change
+   * sets of their own are included as-is, along with whatever they
+   * include.  Change sets reached in this way that do not declare a
+   * {@code logicalFilePath} will be identified by Liquibase using
+   * their {@link URL}s rather than the paths written in the
+   * changelogs that included them.</p>
+   *
+   * @return {@code true} if includes will be resolved; {@code false}
+   * otherwise
+   *
+   * @see #setResolveIncludes(boolean)
+   *
+   * @see ChangeLogIncludeGraph
+   */
+  public boolean isResolveIncludes() {
+    return this.resolveIncludes;
+  }
+
+  /**
+   * Sets whether each changelog to be aggregated will first be parsed
+   * and its includes resolved so that the aggregate changelog names
+   * each reachable changelog at most once.
+   *
+   * @param resolveIncludes whether includes will be resolved
+   *
+   * @see #isResolveIncludes()
+   */
+  public void setResolveIncludes(final boolean resolveIncludes) {
+    this.resolveIncludes = resolveIncludes;
+  }
+
+  /**
+   * Returns {@code true} if the change sets of the changelogs to be
+   * aggregated will be inlined into the aggregate changelog, making
+   * it self-contained, rather than {@code <include>}d by it.
+   *
+   * <p>By default, this method returns {@code false}.</p>
+   *
+   * <p>A flattened aggregate changelog can be read by Liquibase
+   * without opening any of the archives from which its changelogs
+   * came.  Each inlined change set keeps the identity, and the
+   * checksum, that it would have had if its changelog had been
+   * included; see {@link ChangeLogFlattener} for details.  The
+   * {@linkplain #getTemplate() template} is still used to render
+   * everything but the inlined content, which is placed immediately
+   * before its closing {@code </databaseChangeLog>} tag.</p>
+   *
+   * <p>Since the contents of a flattened aggregate changelog depend
+   * on the contents of the changelogs it inlines, and not just on
+   * their {@link URL}s, a flattened aggregate changelog is never
+   * considered to be {@linkplain #isUpToDate(Collection) up to
+   * date}; it is nevertheless rewritten only if its contents
+   * change.</p>
+   *
+   * @return {@code true} if changelogs will be inlined; {@code false}
+   * otherwise
+   *
+   * @see #setFlatten(boolean)
+   */
+  public boolean isFlatten() {
+    return this.flatten;
+  }
+
+  /**
+   * Sets whether the change sets of the changelogs to be aggregated
+   * will be inlined into the aggregate changelog rather than {@code
+   * <include>}d by it.
+   *
+   * @param flatten whether changelogs will be inlined
+   *
+   * @see #isFlatten()
+   */
+  public void setFlatten(final boolean flatten) {
+    this.flatten = flatten;
+  }
+
   /**
    * Returns the source code of an <a
    * href="http://mvel.codehaus.org/MVEL+2.0+Templating+Guide">MVEL
    * template</a> that represents the skeleton of a Liquibase
    * changelog into which will be placed {@code <include>} elements.
    *
+   * <p>The template is rendered with the variables {@code
+   * resources}, {@code databaseChangeLogXsdVersion} and {@code
+   * properties} in scope, along with an {@link XMLEscaper} named
+   * {@code xml} with which values interpolated into attributes should
+   * be escaped: {@code @{xml.escape(url)}}.</p>
+   *
    * <p>This method will not return {@code null} and overrides of it
    * must not either.</p>
    *
@@ -317,42 +499,15 @@ public class AggregateChangeLogGenerator {
     if (this.template == null) {
       final URL templateURL = this.getResource("changeLogTemplate.xml");
       if (templateURL != null) {
-        BufferedReader reader = null;
-        InputStream stream = null;
+        String characterSet = this.getCharacterSet();
+        if (characterSet == null) {
+          characterSet = "UTF-8";
+        }
         try {
-          stream = templateURL.openStream();
-          if (stream != null) {
-            String characterSet = this.getCharacterSet();
-            if (characterSet == null) {
-              characterSet = "UTF-8";
-            }
-            reader = new BufferedReader(new InputStreamReader(stream, characterSet));
-            String line = null;
-            final StringBuilder sb = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-              sb.append(line);
-              sb.append(LS);
-            }
-            this.template = sb.toString();
-          }
+          this.template = loadTemplate(templateURL, characterSet);
         } catch (final IOException boom) {
           // TODO: log
           template = null;
-        } finally {
-          if (stream != null) {
-            try {
-              stream.close();
-            } catch (final IOException nothingWeCanDo) {
-              
-            }
-          }
-          if (reader != null) {
-            try {
-              reader.close();
-            } catch (final IOException nothingWeCanDo) {
-
-            }
-          }
         }
       }
     }
@@ -374,9 +529,9 @@ public class AggregateChangeLogGenerator {
     if (template == null) {
       throw new IllegalArgumentException("template", new NullPointerException("template"));
     }
+    // Compile (and cache) eagerly so that syntax errors surface here.
+    compileTemplate(template, null);
     this.template = template;
-    this.compiledTemplate = null;
-    this.compiledTemplate = TemplateCompiler.compileTemplate(template);
   }
 
   /**
@@ -393,7 +548,7 @@ public class AggregateChangeLogGenerator {
    *
    * @see #generateEmptyAggregateChangeLogFile()
    */
-  public File getAggregateChangeLogFile() {
+  public synchronized File getAggregateChangeLogFile() {
     if (this.aggregateChangeLogFile == null) {
       try {
         this.aggregateChangeLogFile = this.generateEmptyAggregateChangeLogFile();
@@ -414,7 +569,7 @@ public class AggregateChangeLogGenerator {
    * changelog file generated by this {@link
    * AggregateChangeLogGenerator}; may be {@code null}
    */
-  public void setAggregateChangeLogFile(final File file) {
+  public synchronized void setAggregateChangeLogFile(final File file) {
     this.aggregateChangeLogFile = file;
     this.fileWasGenerated = false;
   }
@@ -448,6 +603,12 @@ public class AggregateChangeLogGenerator {
    *
    * <p>This method never returns {@code null}.</p>
    *
+   * <p>If the {@linkplain #getAggregateChangeLogFile() aggregate
+   * changelog file} is {@linkplain #isUpToDate(Collection) already up
+   * to date} with respect to the supplied {@code resources} and this
+   * {@link AggregateChangeLogGenerator}'s configuration, then it is
+   * left untouched and simply returned.</p>
+   *
    * @param resources a {@link Collection} of {@link URL}s, each
    * element of which resolves to a Liquibase changelog file; may be
    * {@code null} or {@linkplain Collection#isEmpty() empty} in whihc
@@ -464,43 +625,668 @@ public class AggregateChangeLogGenerator {
    * @see #getAggregateChangeLogFile()
    *
    * @see #generateEmptyAggregateChangeLogFile()
+   *
+   * @see #isUpToDate(Collection)
+   *
+   * @see #generate(Collection, ChangeLogStatistics)
    */
   public File generate(final Collection<? extends URL> resources) throws IOException {
+    return this.generate(resources, (ChangeLogStatistics)null);
+  }
+
+  /**
+   * Generates a Liquibase changelog file exactly as the {@link
+   * #generate(Collection)} method does, recording the time spent in
+   * each phase of generation, and counters such as the number of
+   * bytes rendered and whether the compiled template was found in
+   * the cache, in the supplied {@link ChangeLogStatistics}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources a {@link Collection} of {@link URL}s, each
+   * element of which resolves to a Liquibase changelog file; may be
+   * {@code null} or {@linkplain Collection#isEmpty() empty} in which
+   * case a generally useless changelog will be generated
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record timings and counters; may be {@code null}
+   *
+   * @return a non-{@code null} {@link File} representing the path to
+   * the generated file
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalStateException if somehow the {@link File} into
+   * which content will be poured is {@code null}
+   *
+   * @see #generate(Collection)
+   */
+  public File generate(final Collection<? extends URL> resources, final ChangeLogStatistics statistics) throws IOException {
+    return this.generate(resources, statistics, null);
+  }
+
+  /**
+   * Generates a Liquibase changelog file exactly as the {@link
+   * #generate(Collection, ChangeLogStatistics)} method does,
+   * reporting changelogs whose includes cannot be {@linkplain
+   * #isResolveIncludes() resolved} to the supplied {@link Log} at
+   * debug level.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources a {@link Collection} of {@link URL}s, each
+   * element of which resolves to a Liquibase changelog file; may be
+   * {@code null} or {@linkplain Collection#isEmpty() empty} in which
+   * case a generally useless changelog will be generated
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record timings and counters; may be {@code null}
+   *
+   * @param log the {@link Log} to use; may be {@code null}
+   *
+   * @return a non-{@code null} {@link File} representing the path to
+   * the generated file
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalStateException if somehow the {@link File} into
+   * which content will be poured is {@code null}
+   *
+   * @see #generate(Collection, ChangeLogStatistics)
+   */
+  public File generate(final Collection<? extends URL> resources, final ChangeLogStatistics statistics, final Log log) throws IOException {
     // Get the aggregate file ready to go.
-    File aggregateChangeLogFile = this.getAggregateChangeLogFile();
-    if (aggregateChangeLogFile == null) {
-      aggregateChangeLogFile = this.generateEmptyAggregateChangeLogFile();
-    }
+    final Configuration configuration = this.snapshot(true);
+    final File aggregateChangeLogFile = configuration.aggregateChangeLogFile;
     if (aggregateChangeLogFile == null) {
       throw new IllegalStateException("Could not get or generate a temporary aggregate change log file");
     }
-    
-    this.fill(aggregateChangeLogFile, resources);
-    
+
+    final long start = System.nanoTime();
+    final Collection<? extends URL> includes = getIncludes(configuration, resources, log);
+    if (statistics != null && configuration.resolveIncludes) {
+      statistics.time("resolveIncludes", start);
+    }
+
+    return generate(configuration, includes, statistics);
+  }
+
+  /**
+   * Generates an aggregate Liquibase changelog file for each of the
+   * supplied {@link AggregateChangeLogGenerator}s from the same
+   * {@code resources}, exactly as each one's {@link
+   * #generate(Collection, ChangeLogStatistics)} method would, and
+   * returns the files generated, in the same order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>This is useful when one aggregate changelog is needed per
+   * tenant or profile, each with its own {@linkplain
+   * #getAggregateChangeLogFile() file}, {@linkplain #getProperties()
+   * properties} and {@linkplain #getTemplate() template}.  The
+   * includes are {@linkplain #isResolveIncludes() resolved} at most
+   * once, each distinct template is compiled at most once, and the
+   * aggregate changelogs are rendered by a pool of at most {@code
+   * parallelism} threads, so the cost of each additional aggregate
+   * changelog is little more than that of rendering it.</p>
+   *
+   * @param resources a {@link Collection} of {@link URL}s, each
+   * element of which resolves to a Liquibase changelog file; may be
+   * {@code null}
+   *
+   * @param generators the {@link AggregateChangeLogGenerator}s whose
+   * aggregate changelog files will be generated; must not be {@code
+   * null}, contain {@code null} elements or contain two {@link
+   * AggregateChangeLogGenerator}s with the same {@linkplain
+   * #getAggregateChangeLogFile() aggregate changelog file}
+   *
+   * @param parallelism the maximum number of aggregate changelogs to
+   * render concurrently; if less than {@code 1}, the number of
+   * {@linkplain Runtime#availableProcessors() available processors}
+   * will be used
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record timings and counters; may be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of generated {@link
+   * File}s, one per supplied {@link AggregateChangeLogGenerator}, in
+   * the same order
+   *
+   * @exception IllegalArgumentException if {@code generators} is
+   * {@code null} or contains a {@code null} element, or if two
+   * {@link AggregateChangeLogGenerator}s would write the same file
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalStateException if somehow the {@link File} into
+   * which content will be poured is {@code null}
+   *
+   * @see #generate(Collection, ChangeLogStatistics)
+   */
+  public static final List<File> generateAll(final Collection<? extends URL> resources, final Collection<? extends AggregateChangeLogGenerator> generators, final int parallelism, final ChangeLogStatistics statistics) throws IOException {
+    return generateAll(resources, generators, parallelism, statistics, null);
+  }
+
+  /**
+   * Generates an aggregate Liquibase changelog file for each of the
+   * supplied {@link AggregateChangeLogGenerator}s exactly as the
+   * {@link #generateAll(Collection, Collection, int,
+   * ChangeLogStatistics)} method does, reporting changelogs whose
+   * includes cannot be {@linkplain #isResolveIncludes() resolved} to
+   * the supplied {@link Log} at debug level.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resources a {@link Collection} of {@link URL}s, each
+   * element of which resolves to a Liquibase changelog file; may be
+   * {@code null}
+   *
+   * @param generators the {@link AggregateChangeLogGenerator}s whose
+   * aggregate changelog files will be generated; must not be {@code
+   * null}, contain {@code null} elements or contain two {@link
+   * AggregateChangeLogGenerator}s with the same {@linkplain
+   * #getAggregateChangeLogFile() aggregate changelog file}
+   *
+   * @param parallelism the maximum number of aggregate changelogs to
+   * render concurrently; if less than {@code 1}, the number of
+   * {@linkplain Runtime#availableProcessors() available processors}
+   * will be used
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record timings and counters; may be {@code null}
+   *
+   * @param log the {@link Log} to use; may be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of generated {@link
+   * File}s, one per supplied {@link AggregateChangeLogGenerator}, in
+   * the same order
+   *
+   * @exception IllegalArgumentException if {@code generators} is
+   * {@code null} or contains a {@code null} element, or if two
+   * {@link AggregateChangeLogGenerator}s would write the same file
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalStateException if somehow the {@link File} into
+   * which content will be poured is {@code null}
+   *
+   * @see #generateAll(Collection, Collection, int, ChangeLogStatistics)
+   */
+  public static final List<File> generateAll(final Collection<? extends URL> resources, final Collection<? extends AggregateChangeLogGenerator> generators, int parallelism, final ChangeLogStatistics statistics, final Log log) throws IOException {
+    if (generators == null) {
+      throw new IllegalArgumentException("generators", new NullPointerException("generators"));
+    }
+    final List<Configuration> configurations = new ArrayList<Configuration>(generators.size());
+    final Set<File> files = new HashSet<File>();
+    for (final AggregateChangeLogGenerator generator : generators) {
+      if (generator == null) {
+        throw new IllegalArgumentException("generators", new NullPointerException("generators contains null"));
+      }
+      final Configuration configuration = generator.snapshot(true);
+      if (configuration.aggregateChangeLogFile == null) {
+        throw new IllegalStateException("Could not get or generate a temporary aggregate change log file");
+      }
+      if (!files.add(configuration.aggregateChangeLogFile.getAbsoluteFile())) {
+        throw new IllegalArgumentException("More than one generator would write " + configuration.aggregateChangeLogFile);
+      }
+      configurations.add(configuration);
+    }
+
+    // Resolve includes only once, however many generators want them
+    // resolved.
+    Collection<? extends URL> resolvedIncludes = null;
+    final List<Collection<? extends URL>> includes = new ArrayList<Collection<? extends URL>>(configurations.size());
+    for (final Configuration configuration : configurations) {
+      if (configuration.resolveIncludes) {
+        if (resolvedIncludes == null) {
+          final long start = System.nanoTime();
+          resolvedIncludes = getIncludes(configuration, resources, log);
+          if (statistics != null) {
+            statistics.time("resolveIncludes", start);
+          }
+        }
+        includes.add(resolvedIncludes);
+      } else {
+        includes.add(resources);
+      }
+    }
+
+    if (parallelism < 1) {
+      parallelism = Runtime.getRuntime().availableProcessors();
+    }
+    parallelism = Math.min(parallelism, configurations.size());
+    final List<File> returnValue = new ArrayList<File>(configurations.size());
+    if (parallelism <= 1) {
+      for (int i = 0; i < configurations.size(); i++) {
+        returnValue.add(generate(configurations.get(i), includes.get(i), statistics));
+      }
+    } else {
+      final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+      try {
+        final List<Future<File>> futures = new ArrayList<Future<File>>(configurations.size());
+        for (int i = 0; i < configurations.size(); i++) {
+          final Configuration configuration = configurations.get(i);
+          final Collection<? extends URL> configurationIncludes = includes.get(i);
+          futures.add(executor.submit(new Callable<File>() {
+              @Override
+              public final File call() throws IOException {
+                return generate(configuration, configurationIncludes, statistics);
+              }
+            }));
+        }
+        for (final Future<File> future : futures) {
+          returnValue.add(future.get());
+        }
+      } catch (final ExecutionException executionException) {
+        final Throwable cause = executionException.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException)cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else if (cause instanceof Error) {
+          throw (Error)cause;
+        } else {
+          throw new IOException(cause);
+        }
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(interruptedException.toString());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Generates the aggregate changelog file described by the supplied
+   * {@link Configuration} unless it is already up to date.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param configuration the {@link Configuration} in effect; must
+   * not be {@code null} and must have a non-{@code null} aggregate
+   * changelog file
+   *
+   * @param includes the changelog {@link URL}s to include, already
+   * {@linkplain #getIncludes(Configuration, Collection) resolved} if
+   * necessary; may be {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record timings and counters; may be {@code null}
+   *
+   * @return the non-{@code null} aggregate changelog file
+   *
+   * @exception IOException if an error occurs
+   */
+  private static final File generate(final Configuration configuration, final Collection<? extends URL> includes, final ChangeLogStatistics statistics) throws IOException {
+    final File aggregateChangeLogFile = configuration.aggregateChangeLogFile;
+    assert aggregateChangeLogFile != null;
+
+    long start = System.nanoTime();
+    final String fingerprint = getFingerprint(configuration, includes);
+    final boolean upToDate = isUpToDate(aggregateChangeLogFile, fingerprint);
+    if (statistics != null) {
+      statistics.time("fingerprint", start);
+    }
+    if (upToDate) {
+      if (statistics != null) {
+        statistics.increment("aggregateChangeLogUpToDate");
+      }
+    } else {
+      start = System.nanoTime();
+      final boolean written = fill(configuration, includes, statistics);
+      writeFingerprint(aggregateChangeLogFile, fingerprint);
+      if (statistics != null) {
+        statistics.time("render", start);
+        statistics.increment(written ? "aggregateChangeLogWritten" : "aggregateChangeLogUnchanged");
+      }
+    }
+
     return aggregateChangeLogFile;
   }
 
-  private final void fill(final File changeLogFile, final Collection<? extends URL> resources) throws IOException {
-    if (changeLogFile == null) {
-      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile == null"));
+  /**
+   * Returns {@code true} if a call to the {@link #generate(Collection)}
+   * method with the supplied {@code resources} would find that the
+   * {@linkplain #getAggregateChangeLogFile() aggregate changelog
+   * file} is already up to date and would therefore neither render
+   * nor write it.
+   *
+   * <p>An aggregate changelog file is up to date if it exists and if
+   * the fingerprint recorded next to it when it was last generated
+   * matches a fingerprint computed from the supplied {@code
+   * resources} (in order), the {@linkplain #getProperties()
+   * properties}, the {@linkplain #getDatabaseChangeLogXsdVersion()
+   * changelog XSD version}, the {@linkplain #getCharacterSet()
+   * character set} and the {@linkplain #getTemplate() template}.</p>
+   *
+   * <p>A temporary aggregate changelog file {@linkplain
+   * #generateEmptyAggregateChangeLogFile() generated} by this {@link
+   * AggregateChangeLogGenerator} is never considered to be up to
+   * date.</p>
+   *
+   * @param resources a {@link Collection} of {@link URL}s, each
+   * element of which resolves to a Liquibase changelog file; may be
+   * {@code null}
+   *
+   * @return {@code true} if the aggregate changelog file is up to
+   * date; {@code false} otherwise
+   *
+   * @exception IOException if the recorded fingerprint could not be
+   * read
+   *
+   * @see #generate(Collection)
+   */
+  public boolean isUpToDate(final Collection<? extends URL> resources) throws IOException {
+    final Configuration configuration = this.snapshot(false);
+    return configuration.aggregateChangeLogFile != null && isUpToDate(configuration.aggregateChangeLogFile, getFingerprint(configuration, getIncludes(configuration, resources, null)));
+  }
+
+  /**
+   * Renders a Liquibase changelog that, from a high level, logically
+   * contains the Liquibase changelog fragments reachable from the
+   * supplied {@link URL}s, streaming it to the supplied {@link
+   * Writer} as it is produced.
+   *
+   * <p>The rendered changelog is never held in memory in its
+   * entirety, so memory consumption does not grow with the number of
+   * {@code resources} being aggregated.</p>
+   *
+   * <p>The supplied {@link Writer} is neither flushed nor closed by
+   * this method.  No {@linkplain #getAggregateChangeLogFile()
+   * aggregate changelog file} is consulted or written.</p>
+   *
+   * @param resources a {@link Collection} of {@link URL}s, each
+   * element of which resolves to a Liquibase changelog file; must not
+   * be {@code null} or {@linkplain Collection#isEmpty() empty}
+   *
+   * @param writer the {@link Writer} to which the changelog will be
+   * written; must not be {@code null}
+   *
+   * @exception IOException if an error occurs while writing
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IllegalStateException if {@code resources} is {@code
+   * null} or {@linkplain Collection#isEmpty() empty}
+   *
+   * @see #generate(Collection)
+   */
+  public void generate(final Collection<? extends URL> resources, final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
     }
-    final String changeLogContents = this.getAggregateChangeLogContents(resources);
-    if (changeLogContents == null) {
-      throw new IllegalStateException("this.getAggregateChangeLogContents() == null");
+    if (resources == null || resources.isEmpty()) {
+      throw new IllegalStateException("No sub-changelogs to aggregate");
     }
-    this.write(changeLogFile, changeLogContents);
+
+    final Configuration configuration = this.snapshot(false);
+    render(configuration, getIncludes(configuration, resources, null), writer, null);
   }
 
-  private final void write(final File aggregateChangeLogFile, final String changeLogContents) throws IOException {
-    if (aggregateChangeLogFile != null && changeLogContents != null) {
-      BufferedWriter writer = null;
+  /**
+   * Returns an immutable snapshot of this {@link
+   * AggregateChangeLogGenerator}'s current configuration, obtained
+   * via its (possibly overridden) accessor methods.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param createFile whether a temporary aggregate changelog file
+   * should be {@linkplain #generateEmptyAggregateChangeLogFile()
+   * generated} if none has been set
+   *
+   * @return a non-{@code null} {@link Configuration}
+   *
+   * @exception IOException if a temporary aggregate changelog file
+   * could not be generated
+   */
+  private final Configuration snapshot(final boolean createFile) throws IOException {
+    File aggregateChangeLogFile;
+    final boolean fileWasGenerated;
+    synchronized (this) {
+      if (createFile) {
+        aggregateChangeLogFile = this.getAggregateChangeLogFile();
+        if (aggregateChangeLogFile == null) {
+          aggregateChangeLogFile = this.generateEmptyAggregateChangeLogFile();
+        }
+      } else {
+        aggregateChangeLogFile = this.aggregateChangeLogFile;
+      }
+      fileWasGenerated = this.fileWasGenerated;
+    }
+    Properties properties = this.getProperties();
+    if (properties != null) {
+      // Hashtable#clone() preserves the enumeration order on which
+      // the rendered output depends.
+      properties = (Properties)properties.clone();
+    }
+    String characterSet = this.getCharacterSet();
+    if (characterSet == null) {
+      characterSet = "UTF-8";
+    }
+    final String template = this.getTemplate();
+    if (template == null) {
+      throw new IllegalStateException("No template present; please call setTemplate(String) first.");
+    }
+    return new Configuration(aggregateChangeLogFile, fileWasGenerated, template, template.equals(DefaultTemplate.SOURCE), this.getDatabaseChangeLogXsdVersion(), properties, characterSet, this.isResolveIncludes(), this.isFlatten());
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the changelog {@link URL}s that the aggregate changelog
+   * should actually include in place of the supplied {@code
+   * resources}, {@linkplain ChangeLogIncludeGraph#resolve(Collection)
+   * resolving their includes} if the supplied {@link Configuration}
+   * calls for it.
+   *
+   * <p>This method may return {@code null} if {@code resources} is
+   * {@code null}.</p>
+   *
+   * @param configuration the {@link Configuration} in effect; must
+   * not be {@code null}
+   *
+   * @param resources the changelog {@link URL}s to be aggregated;
+   * may be {@code null}
+   *
+   * @param log the {@link Log} to which changelogs that cannot be
+   * expanded will be reported; may be {@code null}
+   *
+   * @return the changelog {@link URL}s to include, or {@code null}
+   *
+   * @exception IOException if a changelog could not be read
+   */
+  private static final Collection<? extends URL> getIncludes(final Configuration configuration, final Collection<? extends URL> resources, final Log log) throws IOException {
+    if (!configuration.resolveIncludes || resources == null || resources.isEmpty()) {
+      return resources;
+    }
+    return new ChangeLogIncludeGraph(log).resolve(resources);
+  }
+
+  private static final boolean isUpToDate(final File aggregateChangeLogFile, final String fingerprint) throws IOException {
+    boolean returnValue = false;
+    if (fingerprint != null && aggregateChangeLogFile != null && aggregateChangeLogFile.isFile()) {
+      final File fingerprintFile = getFingerprintFile(aggregateChangeLogFile);
+      if (fingerprintFile.isFile()) {
+        BufferedReader reader = null;
+        try {
+          reader = new BufferedReader(new InputStreamReader(new FileInputStream(fingerprintFile), UTF_8));
+          returnValue = fingerprint.equals(reader.readLine());
+        } catch (final FileNotFoundException deletedInTheMeantime) {
+          returnValue = false;
+        } finally {
+          if (reader != null) {
+            try {
+              reader.close();
+            } catch (final IOException nothingWeCanDo) {
+
+            }
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private static final void writeFingerprint(final File aggregateChangeLogFile, final String fingerprint) throws IOException {
+    if (aggregateChangeLogFile != null && fingerprint != null) {
+      final File fingerprintFile = getFingerprintFile(aggregateChangeLogFile);
+      final File temporaryFile = ChangeLogFiles.createTemporaryFile(fingerprintFile.toPath()).toFile();
+      boolean moved = false;
       try {
-        String characterSet = this.getCharacterSet();
-        if (characterSet == null) {
-          characterSet = "UTF-8";
+        BufferedWriter writer = null;
+        try {
+          writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), UTF_8));
+          writer.write(fingerprint);
+          writer.newLine();
+          writer.flush();
+        } finally {
+          if (writer != null) {
+            try {
+              writer.close();
+            } catch (final IOException nothingWeCanDo) {
+
+            }
+          }
+        }
+        ChangeLogFiles.moveIntoPlace(temporaryFile.toPath(), fingerprintFile.toPath());
+        moved = true;
+      } finally {
+        if (!moved) {
+          temporaryFile.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a hexadecimal SHA-256 digest of all of the inputs that
+   * affect the contents of the aggregate changelog, or {@code null}
+   * if the aggregate changelog file is a temporary file generated by
+   * an {@link AggregateChangeLogGenerator} or if its contents depend
+   * on the contents of the changelogs being {@linkplain
+   * #isFlatten() flattened}.
+   *
+   * @param configuration the {@link Configuration} in effect; must
+   * not be {@code null}
+   *
+   * @param resources the changelog {@link URL}s to be aggregated;
+   * may be {@code null}
+   *
+   * @return a fingerprint, or {@code null}
+   */
+  private static final String getFingerprint(final Configuration configuration, final Collection<? extends URL> resources) {
+    if (configuration.fileWasGenerated || configuration.flatten) {
+      return null;
+    }
+    final MessageDigest digest = ChangeLogFiles.newDigest();
+    update(digest, configuration.characterSet);
+    update(digest, configuration.databaseChangeLogXsdVersion);
+    update(digest, configuration.template);
+    if (configuration.resolveIncludes) {
+      update(digest, "resolveIncludes");
+    }
+    final Properties properties = configuration.properties;
+    if (properties != null) {
+      // Enumerate in the same order the template does, since that
+      // order is reflected in the output.
+      final Enumeration<?> propertyNames = properties.propertyNames();
+      while (propertyNames.hasMoreElements()) {
+        final Object propertyName = propertyNames.nextElement();
+        if (propertyName instanceof String) {
+          update(digest, (String)propertyName);
+          update(digest, properties.getProperty((String)propertyName));
+        }
+      }
+    }
+    update(digest, "resources");
+    if (resources != null) {
+      for (final URL resource : resources) {
+        update(digest, resource == null ? null : resource.toExternalForm());
+      }
+    }
+    return ChangeLogFiles.toHexString(digest.digest());
+  }
+
+  private static final byte[] digest(final File file) throws IOException {
+    final MessageDigest digest = ChangeLogFiles.newDigest();
+    InputStream stream = null;
+    try {
+      stream = new FileInputStream(file);
+      final byte[] buffer = new byte[8192];
+      int bytesRead;
+      while ((bytesRead = stream.read(buffer)) != -1) {
+        digest.update(buffer, 0, bytesRead);
+      }
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
         }
-        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(aggregateChangeLogFile), characterSet));
-        writer.write(changeLogContents, 0, changeLogContents.length());
+      }
+    }
+    return digest.digest();
+  }
+
+  private static final void update(final MessageDigest digest, final String value) {
+    if (value != null) {
+      digest.update(value.getBytes(UTF_8));
+    }
+    // Delimit each value so that adjacent values cannot run into one
+    // another and produce the same digest.
+    digest.update((byte)0);
+  }
+
+  private static final File getFingerprintFile(final File aggregateChangeLogFile) {
+    return new File(aggregateChangeLogFile.getPath() + ".fingerprint");
+  }
+
+  /**
+   * Renders the aggregate changelog into a temporary file alongside
+   * the aggregate changelog file and then, only if its contents
+   * differ from those of the existing file, moves it into place
+   * atomically.
+   *
+   * <p>Readers of the aggregate changelog file, such as other modules
+   * in a parallel Maven build, therefore never see a partially
+   * written changelog, and a changelog whose contents would not
+   * change is not rewritten at all.</p>
+   *
+   * @param configuration the {@link Configuration} in effect, whose
+   * aggregate changelog file must not be {@code null}; must not be
+   * {@code null}
+   *
+   * @param resources the changelog {@link URL}s to aggregate
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record counters; may be {@code null}
+   *
+   * @return {@code true} if the aggregate changelog file was replaced;
+   * {@code false} if its contents were already correct
+   *
+   * @exception IOException if an error occurs
+   */
+  private static final boolean fill(final Configuration configuration, final Collection<? extends URL> resources, final ChangeLogStatistics statistics) throws IOException {
+    final File changeLogFile = configuration.aggregateChangeLogFile;
+    if (changeLogFile == null) {
+      throw new IllegalArgumentException("changeLogFile", new NullPointerException("changeLogFile == null"));
+    }
+    boolean returnValue = false;
+    final File temporaryFile = ChangeLogFiles.createTemporaryFile(changeLogFile.toPath()).toFile();
+    try {
+      final MessageDigest digest = ChangeLogFiles.newDigest();
+      BufferedWriter writer = null;
+      try {
+        writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(new FileOutputStream(temporaryFile), digest), configuration.characterSet));
+        render(configuration, resources, writer, statistics);
         writer.flush();
       } finally {
         if (writer != null) {
@@ -511,39 +1297,439 @@ public class AggregateChangeLogGenerator {
           }
         }
       }
+      if (statistics != null) {
+        statistics.add("bytesRendered", temporaryFile.length());
+      }
+      if (!changeLogFile.isFile() || changeLogFile.length() != temporaryFile.length() || !MessageDigest.isEqual(digest.digest(), digest(changeLogFile))) {
+        ChangeLogFiles.moveIntoPlace(temporaryFile.toPath(), changeLogFile.toPath());
+        returnValue = true;
+      }
+    } finally {
+      if (!returnValue) {
+        temporaryFile.delete();
+      }
     }
+    return returnValue;
   }
 
-  private final String getAggregateChangeLogContents(final Collection<? extends URL> resources) throws IOException {
+  private static final void render(final Configuration configuration, final Collection<? extends URL> resources, final Writer writer, final ChangeLogStatistics statistics) throws IOException {
     if (resources == null || resources.isEmpty()) {
       throw new IllegalStateException("No sub-changelogs to aggregate");
     }
 
+    if (configuration.flatten) {
+      // Render everything but the includes, then put the inlined
+      // content where they would have gone.
+      final StringWriter skeletonWriter = new StringWriter();
+      renderTemplate(configuration, Collections.<URL>emptyList(), skeletonWriter, statistics);
+      final String skeleton = skeletonWriter.toString();
+      int end = skeleton.lastIndexOf("</databaseChangeLog>");
+      if (end < 0) {
+        throw new IllegalStateException("The template does not end with </databaseChangeLog>");
+      }
+      while (end > 0 && Character.isWhitespace(skeleton.charAt(end - 1))) {
+        end--;
+      }
+      writer.write(skeleton, 0, end);
+      writer.write(LS);
+      new ChangeLogFlattener().flatten(resources, writer);
+      // The inlined content ends with a line separator of its own.
+      if (skeleton.startsWith(LS, end)) {
+        end += LS.length();
+      }
+      writer.write(skeleton, end, skeleton.length() - end);
+    } else {
+      renderTemplate(configuration, resources, writer, statistics);
+    }
+  }
+
+  /**
+   * Renders the {@linkplain #getTemplate() template} in effect with
+   * the supplied {@code resources} to the supplied {@link Writer}.
+   *
+   * <p>If the template in effect is the stock {@code
+   * changeLogTemplate.xml} template, its output is {@linkplain
+   * #renderDefaultTemplate(Configuration, Collection, Writer) written
+   * directly}, byte for byte as MVEL would have rendered it, without
+   * compiling or interpreting it.  Otherwise, it is rendered by
+   * MVEL.</p>
+   *
+   * @param configuration the {@link Configuration} in effect; must
+   * not be {@code null}
+   *
+   * @param resources the changelog {@link URL}s to include; must not
+   * be {@code null}
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record counters; may be {@code null}
+   *
+   * @exception IOException if an error occurs while writing
+   */
+  private static final void renderTemplate(final Configuration configuration, final Collection<? extends URL> resources, final Writer writer, final ChangeLogStatistics statistics) throws IOException {
+    if (configuration.defaultTemplate) {
+      if (statistics != null) {
+        statistics.increment("defaultTemplateFastPath");
+      }
+      renderDefaultTemplate(configuration, resources, writer);
+      return;
+    }
+
     final Map<String, Object> parameters = new HashMap<String, Object>(5);
     parameters.put("resources", resources);
-    parameters.put("databaseChangeLogXsdVersion", this.getDatabaseChangeLogXsdVersion());
-    parameters.put("properties", this.getProperties());
-    
-    return this.getAggregateChangeLogContents(parameters);
+    parameters.put("databaseChangeLogXsdVersion", configuration.databaseChangeLogXsdVersion);
+    parameters.put("properties", configuration.properties);
+    parameters.put("xml", XMLEscaper.getInstance());
+
+    final WriterTemplateOutputStream stream = new WriterTemplateOutputStream(writer);
+    TemplateRuntime.execute(compileTemplate(configuration.template, statistics), null, new MapVariableResolverFactory(parameters), null, stream);
+    stream.rethrow();
   }
 
-  private final String getAggregateChangeLogContents(final Map<?, ?> parameters) {
-    final String template = this.getTemplate();
-    if (template == null) {
-      throw new IllegalStateException("No template present; please call setTemplate(String) first.");
+  /**
+   * Writes exactly what MVEL would render from the stock {@code
+   * changeLogTemplate.xml} template given the supplied {@link
+   * Configuration} and {@code resources}.
+   *
+   * <p>This method must be kept in step with {@code
+   * changeLogTemplate.xml}; {@code TestAggregateChangeLogGenerator}
+   * fails if it is not.</p>
+   *
+   * @param configuration the {@link Configuration} in effect; must
+   * not be {@code null}
+   *
+   * @param resources the changelog {@link URL}s to include; must not
+   * be {@code null}
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IOException if an error occurs while writing
+   */
+  private static final void renderDefaultTemplate(final Configuration configuration, final Collection<? extends URL> resources, final Writer writer) throws IOException {
+    final XMLEscaper xml = XMLEscaper.getInstance();
+    writer.write("<?xml version=\"1.0\" ?>");
+    writer.write(LS);
+    writer.write("<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\"");
+    writer.write(LS);
+    writer.write("                   xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ");
+    writer.write(LS);
+    writer.write("                   xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog ");
+    writer.write(LS);
+    writer.write("                                       http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-");
+    xml.escape(configuration.databaseChangeLogXsdVersion, writer);
+    writer.write(".xsd\">");
+    writer.write(LS);
+    final Properties properties = configuration.properties;
+    if (properties != null && !properties.isEmpty()) {
+      final Enumeration<?> propertyNames = properties.propertyNames();
+      while (propertyNames.hasMoreElements()) {
+        final Object propertyName = propertyNames.nextElement();
+        final String value = properties.getProperty((String)propertyName);
+        if (value != null) {
+          writer.write("  <property name=\"");
+          xml.escape(String.valueOf(propertyName), writer);
+          writer.write("\" value=\"");
+          xml.escape(value, writer);
+          writer.write("\"/>");
+        }
+      }
+    }
+    writer.write(LS);
+    for (final URL resource : resources) {
+      writer.write("  <include file=\"");
+      xml.escape(String.valueOf(resource), writer);
+      writer.write("\"/>");
+      writer.write(LS);
     }
+    writer.write(LS);
+    writer.write("</databaseChangeLog>");
+    writer.write(LS);
+  }
 
-    String returnValue = null;
-    if (this.compiledTemplate == null) {
-      this.compiledTemplate = TemplateCompiler.compileTemplate(template);
-      assert this.compiledTemplate != null;
+  /**
+   * Returns the source of the template found at the supplied {@link
+   * URL}, reading it only if it has not already been read by any
+   * {@link AggregateChangeLogGenerator} in this Java Virtual
+   * Machine.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param templateURL the {@link URL} of the template; must not be
+   * {@code null}
+   *
+   * @param characterSet the name of the character set in which the
+   * template is encoded; must not be {@code null}
+   *
+   * @return the template source; never {@code null}
+   *
+   * @exception IOException if the template could not be read
+   */
+  private static final String loadTemplate(final URL templateURL, final String characterSet) throws IOException {
+    assert templateURL != null;
+    assert characterSet != null;
+    final String key = characterSet + " " + templateURL.toExternalForm();
+    String returnValue;
+    synchronized (templateSources) {
+      returnValue = templateSources.get(key);
     }
-    if (parameters == null || parameters.isEmpty()) {
-      returnValue = (String)TemplateRuntime.execute(compiledTemplate);
-    } else {
-      returnValue = (String)TemplateRuntime.execute(compiledTemplate, parameters);
+    if (returnValue == null) {
+      BufferedReader reader = null;
+      InputStream stream = null;
+      try {
+        stream = templateURL.openStream();
+        if (stream == null) {
+          throw new IOException("Could not open " + templateURL);
+        }
+        reader = new BufferedReader(new InputStreamReader(stream, characterSet));
+        String line = null;
+        final StringBuilder sb = new StringBuilder();
+        while ((line = reader.readLine()) != null) {
+          sb.append(line);
+          sb.append(LS);
+        }
+        returnValue = sb.toString();
+      } finally {
+        if (stream != null) {
+          try {
+            stream.close();
+          } catch (final IOException nothingWeCanDo) {
+            
+          }
+        }
+        if (reader != null) {
+          try {
+            reader.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+      synchronized (templateSources) {
+        templateSources.put(key, returnValue);
+      }
     }
     return returnValue;
   }
 
+  /**
+   * Returns a {@link CompiledTemplate} for the supplied template
+   * source, compiling it only if a template with the same contents
+   * has not already been compiled by any {@link
+   * AggregateChangeLogGenerator} in this Java Virtual Machine.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Compiled templates are cached by the SHA-256 digest of their
+   * source.  At most {@value #TEMPLATE_CACHE_CAPACITY} of them are
+   * retained; the least recently used one is evicted when that limit
+   * is exceeded.</p>
+   *
+   * @param template the template source; must not be {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record cache hits and misses and compilation time; may be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link CompiledTemplate}
+   */
+  private static final CompiledTemplate compileTemplate(final String template, final ChangeLogStatistics statistics) {
+    assert template != null;
+    final MessageDigest digest = ChangeLogFiles.newDigest();
+    digest.update(template.getBytes(UTF_8));
+    final String key = ChangeLogFiles.toHexString(digest.digest());
+    synchronized (compiledTemplates) {
+      CompiledTemplate returnValue = compiledTemplates.get(key);
+      if (returnValue == null) {
+        final long start = System.nanoTime();
+        returnValue = TemplateCompiler.compileTemplate(template);
+        assert returnValue != null;
+        compiledTemplates.put(key, returnValue);
+        if (statistics != null) {
+          statistics.time("templateCompilation", start);
+          statistics.increment("templateCacheMisses");
+        }
+      } else if (statistics != null) {
+        statistics.increment("templateCacheHits");
+      }
+      return returnValue;
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * An immutable snapshot of an {@link AggregateChangeLogGenerator}'s
+   * configuration, taken at the start of a generation so that
+   * concurrent reconfiguration cannot affect it.
+   */
+  private static final class Configuration {
+
+    private final File aggregateChangeLogFile;
+
+    private final boolean fileWasGenerated;
+
+    private final String template;
+
+    /**
+     * Whether {@link #template} is the stock {@code
+     * changeLogTemplate.xml} template.
+     */
+    private final boolean defaultTemplate;
+
+    private final String databaseChangeLogXsdVersion;
+
+    private final Properties properties;
+
+    private final String characterSet;
+
+    private final boolean resolveIncludes;
+
+    private final boolean flatten;
+
+    private Configuration(final File aggregateChangeLogFile,
+                          final boolean fileWasGenerated,
+                          final String template,
+                          final boolean defaultTemplate,
+                          final String databaseChangeLogXsdVersion,
+                          final Properties properties,
+                          final String characterSet,
+                          final boolean resolveIncludes,
+                          final boolean flatten) {
+      super();
+      this.aggregateChangeLogFile = aggregateChangeLogFile;
+      this.fileWasGenerated = fileWasGenerated;
+      this.template = template;
+      this.defaultTemplate = defaultTemplate;
+      this.databaseChangeLogXsdVersion = databaseChangeLogXsdVersion;
+      this.properties = properties;
+      this.characterSet = characterSet;
+      this.resolveIncludes = resolveIncludes;
+      this.flatten = flatten;
+    }
+
+  }
+
+  /**
+   * A holder for the source of the stock {@code changeLogTemplate.xml}
+   * template bundled with this class, loaded the first time it is
+   * needed.
+   */
+  private static final class DefaultTemplate {
+
+    /**
+     * The source of the stock template, with each line terminated as
+     * {@link AggregateChangeLogGenerator#getTemplate()} terminates it.
+     *
+     * <p>This field may be {@code null} if the stock template could
+     * not be loaded, in which case templates are always rendered by
+     * MVEL.</p>
+     */
+    private static final String SOURCE = load();
+
+    private DefaultTemplate() {
+      super();
+    }
+
+    private static final String load() {
+      final URL templateURL = AggregateChangeLogGenerator.class.getResource("/changeLogTemplate.xml");
+      if (templateURL == null) {
+        return null;
+      }
+      try {
+        return loadTemplate(templateURL, "UTF-8");
+      } catch (final IOException cannotLoad) {
+        return null;
+      }
+    }
+
+  }
+
+  /**
+   * A {@link LinkedHashMap} in access order that evicts its least
+   * recently used entry once it holds more than a fixed number of
+   * entries.
+   *
+   * <p>Instances of this class are not safe for use by multiple
+   * threads without external synchronization.</p>
+   */
+  private static final class BoundedCache<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    private BoundedCache(final int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected final boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+      return this.size() > this.capacity;
+    }
+
+  }
+
+
+  /**
+   * A {@link TemplateOutputStream} that forwards everything appended
+   * to it to a {@link Writer}.
+   *
+   * <p>Because {@link TemplateOutputStream} methods cannot throw
+   * {@link IOException}s, the first such exception is retained, all
+   * further output is discarded, and the exception is rethrown by
+   * the {@link #rethrow()} method once template execution has
+   * completed.</p>
+   */
+  private static final class WriterTemplateOutputStream implements TemplateOutputStream {
+
+    private final Writer writer;
+
+    private IOException exception;
+
+    private WriterTemplateOutputStream(final Writer writer) {
+      super();
+      assert writer != null;
+      this.writer = writer;
+    }
+
+    @Override
+    public final TemplateOutputStream append(final CharSequence characters) {
+      if (this.exception == null && characters != null) {
+        try {
+          this.writer.append(characters);
+        } catch (final IOException exception) {
+          this.exception = exception;
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public final TemplateOutputStream append(final char[] characters) {
+      if (this.exception == null && characters != null) {
+        try {
+          this.writer.write(characters);
+        } catch (final IOException exception) {
+          this.exception = exception;
+        }
+      }
+      return this;
+    }
+
+    private final void rethrow() throws IOException {
+      if (this.exception != null) {
+        throw this.exception;
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,303 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An in-memory record of the names of the entries in archives that
+ * have already been opened, keyed by each archive's absolute path,
+ * {@linkplain File#length() length} and {@linkplain
+ * File#lastModified() last modification time}, so that an archive
+ * need be opened only once no matter how many times, or for how many
+ * different resource names, it is scanned.
+ *
+ * <p>A single {@link ArchiveEntryCache} is shared by all {@link
+ * LiquibaseChangeLogArtifactsProcessor} instances in a Java Virtual
+ * Machine, and hence by every execution in a build, and under a
+ * long-lived Maven process by every build.  So the memory its entry
+ * names occupy is bounded by a fixed, {@linkplain #sizeOf(String[])
+ * estimated} number of bytes; when that number would be exceeded,
+ * the least recently used archives are forgotten.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setArchiveEntryCacheEnabled(boolean)
+ */
+final class ArchiveEntryCache {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The estimated number of bytes occupied by an entry name in
+   * addition to its characters: the {@link String} object, its array
+   * header and the reference to it.
+   *
+   * @see #sizeOf(String[])
+   */
+  private static final int ENTRY_NAME_OVERHEAD = 64;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The maximum {@linkplain #sizeOf(String[]) estimated} number of
+   * bytes of entry names that this {@link ArchiveEntryCache} will
+   * hold.
+   */
+  private final long maximumSize;
+
+  /**
+   * The cached archives, in access order, indexed by absolute path.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on it.</p>
+   */
+  private final LinkedHashMap<String, Archive> archives;
+
+  /**
+   * The {@linkplain #sizeOf(String[]) estimated} number of bytes of
+   * entry names held in {@link #archives}.
+   *
+   * <p>Access to this field must be synchronized on {@link
+   * #archives}.</p>
+   */
+  private long size;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ArchiveEntryCache}.
+   *
+   * @param maximumSize the maximum {@linkplain #sizeOf(String[])
+   * estimated} number of bytes of entry names that the new cache will
+   * hold; must be greater than {@code 0}
+   *
+   * @exception IllegalArgumentException if {@code maximumSize} is
+   * less than {@code 1}
+   */
+  ArchiveEntryCache(final long maximumSize) {
+    super();
+    if (maximumSize < 1L) {
+      throw new IllegalArgumentException("maximumSize < 1: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.archives = new LinkedHashMap<String, Archive>(16, 0.75f, true);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the sorted names of the non-directory entries in the
+   * supplied archive as they were when it was last {@linkplain
+   * #put(File, String[]) recorded}, or {@code null} if it has not
+   * been recorded or has changed since.
+   *
+   * <p>This method may return {@code null}.  Callers must not modify
+   * the array that is returned.</p>
+   *
+   * @param archive the archive in question; may be {@code null} in
+   * which case {@code null} will be returned
+   *
+   * @return a sorted array of entry names, or {@code null}
+   */
+  final String[] get(final File archive) {
+    if (archive == null) {
+      return null;
+    }
+    final String path = archive.getAbsolutePath();
+    final long length = archive.length();
+    final long lastModified = archive.lastModified();
+    synchronized (this.archives) {
+      final Archive cached = this.archives.get(path);
+      if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+        return cached.entryNames;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Records the sorted names of the non-directory entries in the
+   * supplied archive.
+   *
+   * <p>If {@code entryNames} is larger than this {@link
+   * ArchiveEntryCache} can hold in total, it is not recorded.</p>
+   *
+   * @param archive the archive in question; must not be {@code null}
+   *
+   * @param entryNames the sorted names of its non-directory entries;
+   * must not be {@code null} and must not be modified after this
+   * method is called
+   *
+   * @exception IllegalArgumentException if either parameter is {@code
+   * null}
+   */
+  final void put(final File archive, final String[] entryNames) {
+    if (archive == null) {
+      throw new IllegalArgumentException("archive", new NullPointerException("archive"));
+    }
+    if (entryNames == null) {
+      throw new IllegalArgumentException("entryNames", new NullPointerException("entryNames"));
+    }
+    final Archive value = new Archive(archive.length(), archive.lastModified(), entryNames);
+    synchronized (this.archives) {
+      final Archive old = this.archives.remove(archive.getAbsolutePath());
+      if (old != null) {
+        this.size -= old.size;
+      }
+      if (value.size <= this.maximumSize) {
+        final Iterator<Archive> iterator = this.archives.values().iterator();
+        while (this.size + value.size > this.maximumSize && iterator.hasNext()) {
+          this.size -= iterator.next().size;
+          iterator.remove();
+        }
+        this.archives.put(archive.getAbsolutePath(), value);
+        this.size += value.size;
+      }
+    }
+  }
+
+  /**
+   * Returns the {@linkplain #sizeOf(String[]) estimated} number of
+   * bytes of entry names that this {@link ArchiveEntryCache} holds.
+   *
+   * @return the estimated size of this cache in bytes
+   */
+  final long size() {
+    synchronized (this.archives) {
+      return this.size;
+    }
+  }
+
+  /**
+   * Forgets all recorded archives.
+   */
+  final void clear() {
+    synchronized (this.archives) {
+      this.archives.clear();
+      this.size = 0;
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns an estimate of the number of bytes of heap that the
+   * supplied entry names occupy: two bytes per character, as on a
+   * Java Virtual Machine that does not compact strings, plus a fixed
+   * overhead per name.
+   *
+   * @param entryNames the entry names; must not be {@code null}
+   *
+   * @return the estimated size of {@code entryNames} in bytes
+   */
+  static final long sizeOf(final String[] entryNames) {
+    long returnValue = 0L;
+    for (final String entryName : entryNames) {
+      returnValue += ENTRY_NAME_OVERHEAD + 2L * entryName.length();
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The recorded state of a single archive.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Archive {
+
+    /**
+     * The {@linkplain File#length() length} of the archive when it
+     * was recorded.
+     */
+    private final long length;
+
+    /**
+     * The {@linkplain File#lastModified() last modification time} of
+     * the archive when it was recorded.
+     */
+    private final long lastModified;
+
+    /**
+     * The sorted names of the archive's non-directory entries.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final String[] entryNames;
+
+    /**
+     * The {@linkplain ArchiveEntryCache#sizeOf(String[]) estimated}
+     * size of {@link #entryNames} in bytes.
+     */
+    private final long size;
+
+    private Archive(final long length, final long lastModified, final String[] entryNames) {
+      super();
+      this.length = length;
+      this.lastModified = lastModified;
+      this.entryNames = entryNames;
+      this.size = sizeOf(entryNames);
+    }
+
+  }
+
+}
@@ -0,0 +1,232 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * A graph of {@link Artifact}s and the {@link Artifact}s they depend
+ * upon, built from each {@link Artifact}'s {@linkplain
+ * Artifact#getDependencyTrail() dependency trail}, that can order
+ * them so that every {@link Artifact} follows all of the {@link
+ * Artifact}s it depends upon.
+ *
+ * <p>A dependency trail lists the identifiers of the project and of
+ * each {@link Artifact} through which the {@link Artifact} it belongs
+ * to was reached, ending with that {@link Artifact} itself; each
+ * element of the trail depends on the element after it.  Elements
+ * are matched to {@link Artifact}s by group and artifact identifier
+ * only, since the versions recorded in a trail are those that were
+ * requested, not necessarily those that were resolved.  Elements
+ * that match none of the {@link Artifact}s being ordered, such as the
+ * project itself, are skipped over, so that an {@link Artifact}
+ * still follows those it depends upon only transitively.</p>
+ *
+ * <p>Ordering is a depth-first topological sort, and so takes time
+ * proportional to the total length of all of the dependency trails.
+ * {@link Artifact}s that are not constrained relative to one another
+ * keep the order in which they were supplied.  Should the trails
+ * describe a cycle, the {@link Artifact}s in it are ordered as they
+ * were first reached.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setDependencyOrderEnabled(boolean)
+ */
+final class ArtifactDependencyGraph {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link Artifact}s to be ordered, in the order in which they
+   * were supplied.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<Artifact> artifacts;
+
+  /**
+   * The {@link Artifact}s that each {@link Artifact} in {@link
+   * #artifacts} directly depends upon.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<Artifact, List<Artifact>> dependencies;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ArtifactDependencyGraph}.
+   *
+   * @param artifacts the {@link Artifact}s to order; must not be
+   * {@code null}; {@code null} elements are ignored
+   *
+   * @exception IllegalArgumentException if {@code artifacts} is
+   * {@code null}
+   */
+  ArtifactDependencyGraph(final Collection<? extends Artifact> artifacts) {
+    super();
+    if (artifacts == null) {
+      throw new IllegalArgumentException("artifacts", new NullPointerException("artifacts"));
+    }
+    this.artifacts = new ArrayList<Artifact>(artifacts.size());
+    this.dependencies = new IdentityHashMap<Artifact, List<Artifact>>(artifacts.size());
+    final Map<String, List<Artifact>> artifactsByKey = new HashMap<String, List<Artifact>>(artifacts.size());
+    for (final Artifact artifact : artifacts) {
+      if (artifact != null && !this.dependencies.containsKey(artifact)) {
+        this.artifacts.add(artifact);
+        this.dependencies.put(artifact, new ArrayList<Artifact>());
+        final String key = artifact.getGroupId() + ":" + artifact.getArtifactId();
+        List<Artifact> sameKey = artifactsByKey.get(key);
+        if (sameKey == null) {
+          sameKey = new ArrayList<Artifact>(1);
+          artifactsByKey.put(key, sameKey);
+        }
+        sameKey.add(artifact);
+      }
+    }
+    for (final Artifact artifact : this.artifacts) {
+      final List<String> trail = artifact.getDependencyTrail();
+      if (trail != null && !trail.isEmpty()) {
+        // Walk the trail backwards from the artifact itself towards
+        // the project, recording each artifact found along the way
+        // as a dependency of the next one found.
+        List<Artifact> dependency = null;
+        final ListIterator<String> iterator = trail.listIterator(trail.size());
+        while (iterator.hasPrevious()) {
+          final List<Artifact> dependents = artifactsByKey.get(getKey(iterator.previous()));
+          if (dependents != null) {
+            if (dependency != null && dependency != dependents) {
+              for (final Artifact dependent : dependents) {
+                this.dependencies.get(dependent).addAll(dependency);
+              }
+            }
+            dependency = dependents;
+          }
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link Artifact}s supplied at construction time,
+   * ordered so that every {@link Artifact} follows all of the {@link
+   * Artifact}s it depends upon.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link List} of {@link Artifact}s
+   */
+  final List<Artifact> sort() {
+    final List<Artifact> returnValue = new ArrayList<Artifact>(this.artifacts.size());
+    final Map<Artifact, Boolean> visited = new IdentityHashMap<Artifact, Boolean>(this.artifacts.size());
+    for (final Artifact artifact : this.artifacts) {
+      this.visit(artifact, visited, returnValue);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Adds the supplied {@link Artifact} to the supplied {@link List}
+   * after first adding, recursively, all of the {@link Artifact}s it
+   * depends upon, unless it has already been visited.
+   *
+   * @param artifact the {@link Artifact} to visit; must not be {@code
+   * null}
+   *
+   * @param visited the {@link Artifact}s already visited; must not be
+   * {@code null}
+   *
+   * @param sorted the {@link List} to which {@link Artifact}s are
+   * added; must not be {@code null}
+   */
+  private final void visit(final Artifact artifact, final Map<Artifact, Boolean> visited, final List<Artifact> sorted) {
+    if (!visited.containsKey(artifact)) {
+      visited.put(artifact, Boolean.TRUE);
+      for (final Artifact dependency : this.dependencies.get(artifact)) {
+        this.visit(dependency, visited, sorted);
+      }
+      sorted.add(artifact);
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the group and artifact identifier portion of the supplied
+   * dependency trail element, which is of the form {@code
+   * groupId:artifactId:type[:classifier]:version}.
+   *
+   * @param id the dependency trail element; may be {@code null}
+   *
+   * @return a key of the form {@code groupId:artifactId}, or {@code
+   * null}
+   */
+  private static final String getKey(final String id) {
+    if (id == null) {
+      return null;
+    }
+    final int firstColon = id.indexOf(':');
+    if (firstColon < 0) {
+      return id;
+    }
+    final int secondColon = id.indexOf(':', firstColon + 1);
+    if (secondColon < 0) {
+      return id;
+    }
+    return id.substring(0, secondColon);
+  }
+
+}
@@ -0,0 +1,491 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.maven.artifact.Artifact;
+
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+/**
+ * An {@link ArtifactFilter} that decides, using only an {@link
+ * Artifact}'s coordinates, scope and file size, whether it is worth
+ * scanning for Liquibase changelog fragments at all.
+ *
+ * <p>Each criterion consists of an optional collection of included
+ * values and an optional collection of excluded values.  An {@link
+ * Artifact} {@linkplain #include(Artifact) passes} a criterion if the
+ * included values are {@code null} or empty or contain its value, and
+ * the excluded values do not.  Group identifiers may be given as
+ * globs such as {@code com.example.*}; types, classifiers and scopes
+ * are compared literally, with the empty string standing for "no
+ * classifier".  An {@link Artifact} is included only if it passes
+ * every criterion and its file is no larger than the {@linkplain
+ * #getMaximumFileSize() maximum file size}.</p>
+ *
+ * <p>By default, only {@code pom} artifacts are excluded, since
+ * their files are never archives.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setArtifactFilter(ArtifactFilter)
+ */
+public class ChangeLogArtifactFilter implements ArtifactFilter {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  private Collection<String> includedGroupIds;
+
+  private Collection<String> excludedGroupIds;
+
+  /**
+   * The {@link ResourceNamePattern}s compiled from those {@linkplain
+   * #getIncludedGroupIds() included group identifiers} that are
+   * globs.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #setIncludedGroupIds(Collection)
+   */
+  private Collection<ResourceNamePattern> includedGroupIdPatterns;
+
+  /**
+   * The {@link ResourceNamePattern}s compiled from those {@linkplain
+   * #getExcludedGroupIds() excluded group identifiers} that are
+   * globs.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #setExcludedGroupIds(Collection)
+   */
+  private Collection<ResourceNamePattern> excludedGroupIdPatterns;
+
+  private Collection<String> includedTypes;
+
+  private Collection<String> excludedTypes;
+
+  private Collection<String> includedClassifiers;
+
+  private Collection<String> excludedClassifiers;
+
+  private Collection<String> includedScopes;
+
+  private Collection<String> excludedScopes;
+
+  /**
+   * The size in bytes above which an {@link Artifact}'s file will be
+   * excluded; zero or negative values mean there is no limit.
+   *
+   * @see #getMaximumFileSize()
+   *
+   * @see #setMaximumFileSize(long)
+   */
+  private long maximumFileSize;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogArtifactFilter} that excludes only
+   * {@code pom} artifacts.
+   */
+  public ChangeLogArtifactFilter() {
+    super();
+    this.setExcludedTypes(Collections.singleton("pom"));
+  }
+
+
+  /*
+   * Properties.
+   */
+
+
+  /**
+   * Returns the group identifiers, or globs matching them, of the
+   * {@link Artifact}s that will be included.
+   *
+   * <p>This method may return {@code null}, in which case artifacts
+   * are not included or excluded on the basis of their group
+   * identifiers.</p>
+   *
+   * @return a {@link Collection} of group identifiers or globs, or
+   * {@code null}
+   *
+   * @see #setIncludedGroupIds(Collection)
+   */
+  public Collection<String> getIncludedGroupIds() {
+    return this.includedGroupIds;
+  }
+
+  /**
+   * Sets the group identifiers, or globs matching them, of the {@link
+   * Artifact}s that will be included.
+   *
+   * @param includedGroupIds the new group identifiers or globs; may
+   * be {@code null}
+   *
+   * @see #getIncludedGroupIds()
+   */
+  public void setIncludedGroupIds(final Collection<String> includedGroupIds) {
+    this.includedGroupIds = includedGroupIds;
+    this.includedGroupIdPatterns = compile(includedGroupIds);
+  }
+
+  /**
+   * Returns the group identifiers, or globs matching them, of the
+   * {@link Artifact}s that will be excluded.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of group identifiers or globs, or
+   * {@code null}
+   *
+   * @see #setExcludedGroupIds(Collection)
+   */
+  public Collection<String> getExcludedGroupIds() {
+    return this.excludedGroupIds;
+  }
+
+  /**
+   * Sets the group identifiers, or globs matching them, of the {@link
+   * Artifact}s that will be excluded.
+   *
+   * @param excludedGroupIds the new group identifiers or globs; may
+   * be {@code null}
+   *
+   * @see #getExcludedGroupIds()
+   */
+  public void setExcludedGroupIds(final Collection<String> excludedGroupIds) {
+    this.excludedGroupIds = excludedGroupIds;
+    this.excludedGroupIdPatterns = compile(excludedGroupIds);
+  }
+
+  /**
+   * Returns the {@linkplain Artifact#getType() types} of the {@link
+   * Artifact}s that will be included.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of types, or {@code null}
+   *
+   * @see #setIncludedTypes(Collection)
+   */
+  public Collection<String> getIncludedTypes() {
+    return this.includedTypes;
+  }
+
+  /**
+   * Sets the {@linkplain Artifact#getType() types} of the {@link
+   * Artifact}s that will be included.
+   *
+   * @param includedTypes the new types; may be {@code null}
+   *
+   * @see #getIncludedTypes()
+   */
+  public void setIncludedTypes(final Collection<String> includedTypes) {
+    this.includedTypes = includedTypes;
+  }
+
+  /**
+   * Returns the {@linkplain Artifact#getType() types} of the {@link
+   * Artifact}s that will be excluded.
+   *
+   * <p>This method may return {@code null}.  By default it returns a
+   * {@link Collection} containing only {@code pom}.</p>
+   *
+   * @return a {@link Collection} of types, or {@code null}
+   *
+   * @see #setExcludedTypes(Collection)
+   */
+  public Collection<String> getExcludedTypes() {
+    return this.excludedTypes;
+  }
+
+  /**
+   * Sets the {@linkplain Artifact#getType() types} of the {@link
+   * Artifact}s that will be excluded.
+   *
+   * @param excludedTypes the new types; may be {@code null}
+   *
+   * @see #getExcludedTypes()
+   */
+  public void setExcludedTypes(final Collection<String> excludedTypes) {
+    this.excludedTypes = excludedTypes;
+  }
+
+  /**
+   * Returns the {@linkplain Artifact#getClassifier() classifiers} of
+   * the {@link Artifact}s that will be included; the empty string
+   * stands for artifacts without a classifier.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of classifiers, or {@code null}
+   *
+   * @see #setIncludedClassifiers(Collection)
+   */
+  public Collection<String> getIncludedClassifiers() {
+    return this.includedClassifiers;
+  }
+
+  /**
+   * Sets the {@linkplain Artifact#getClassifier() classifiers} of the
+   * {@link Artifact}s that will be included.
+   *
+   * @param includedClassifiers the new classifiers; may be {@code
+   * null}
+   *
+   * @see #getIncludedClassifiers()
+   */
+  public void setIncludedClassifiers(final Collection<String> includedClassifiers) {
+    this.includedClassifiers = includedClassifiers;
+  }
+
+  /**
+   * Returns the {@linkplain Artifact#getClassifier() classifiers} of
+   * the {@link Artifact}s that will be excluded, such as {@code
+   * tests} or {@code natives}; the empty string stands for artifacts
+   * without a classifier.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of classifiers, or {@code null}
+   *
+   * @see #setExcludedClassifiers(Collection)
+   */
+  public Collection<String> getExcludedClassifiers() {
+    return this.excludedClassifiers;
+  }
+
+  /**
+   * Sets the {@linkplain Artifact#getClassifier() classifiers} of the
+   * {@link Artifact}s that will be excluded.
+   *
+   * @param excludedClassifiers the new classifiers; may be {@code
+   * null}
+   *
+   * @see #getExcludedClassifiers()
+   */
+  public void setExcludedClassifiers(final Collection<String> excludedClassifiers) {
+    this.excludedClassifiers = excludedClassifiers;
+  }
+
+  /**
+   * Returns the {@linkplain Artifact#getScope() scopes} of the {@link
+   * Artifact}s that will be included.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of scopes, or {@code null}
+   *
+   * @see #setIncludedScopes(Collection)
+   */
+  public Collection<String> getIncludedScopes() {
+    return this.includedScopes;
+  }
+
+  /**
+   * Sets the {@linkplain Artifact#getScope() scopes} of the {@link
+   * Artifact}s that will be included.
+   *
+   * @param includedScopes the new scopes; may be {@code null}
+   *
+   * @see #getIncludedScopes()
+   */
+  public void setIncludedScopes(final Collection<String> includedScopes) {
+    this.includedScopes = includedScopes;
+  }
+
+  /**
+   * Returns the {@linkplain Artifact#getScope() scopes} of the {@link
+   * Artifact}s that will be excluded.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of scopes, or {@code null}
+   *
+   * @see #setExcludedScopes(Collection)
+   */
+  public Collection<String> getExcludedScopes() {
+    return this.excludedScopes;
+  }
+
+  /**
+   * Sets the {@linkplain Artifact#getScope() scopes} of the {@link
+   * Artifact}s that will be excluded.
+   *
+   * @param excludedScopes the new scopes; may be {@code null}
+   *
+   * @see #getExcludedScopes()
+   */
+  public void setExcludedScopes(final Collection<String> excludedScopes) {
+    this.excludedScopes = excludedScopes;
+  }
+
+  /**
+   * Returns the size in bytes above which an {@link Artifact}'s file
+   * will cause it to be excluded, such as to skip shaded
+   * "uber-jars".
+   *
+   * <p>A return value of zero or less means there is no limit, which
+   * is the default.</p>
+   *
+   * @return the maximum file size in bytes
+   *
+   * @see #setMaximumFileSize(long)
+   */
+  public long getMaximumFileSize() {
+    return this.maximumFileSize;
+  }
+
+  /**
+   * Sets the size in bytes above which an {@link Artifact}'s file
+   * will cause it to be excluded.
+   *
+   * @param maximumFileSize the new maximum file size in bytes; zero or
+   * less means there is no limit
+   *
+   * @see #getMaximumFileSize()
+   */
+  public void setMaximumFileSize(final long maximumFileSize) {
+    this.maximumFileSize = maximumFileSize;
+  }
+
+
+  /*
+   * ArtifactFilter implementation.
+   */
+
+
+  /**
+   * Returns {@code true} if the supplied {@link Artifact} should be
+   * scanned for Liquibase changelog fragments.
+   *
+   * <p>No artifact file is opened by this method.</p>
+   *
+   * @param artifact the {@link Artifact} to test; may be {@code null}
+   * in which case {@code false} will be returned
+   *
+   * @return {@code true} if {@code artifact} should be scanned;
+   * {@code false} otherwise
+   */
+  @Override
+  public boolean include(final Artifact artifact) {
+    if (artifact == null) {
+      return false;
+    }
+    final String classifier = artifact.getClassifier() == null ? "" : artifact.getClassifier();
+    boolean returnValue =
+      passesGlobs(artifact.getGroupId(), this.getIncludedGroupIds(), this.includedGroupIdPatterns, this.getExcludedGroupIds(), this.excludedGroupIdPatterns) &&
+      passes(artifact.getType(), this.getIncludedTypes(), this.getExcludedTypes()) &&
+      passes(classifier, this.getIncludedClassifiers(), this.getExcludedClassifiers()) &&
+      passes(artifact.getScope(), this.getIncludedScopes(), this.getExcludedScopes());
+    if (returnValue) {
+      final long maximumFileSize = this.getMaximumFileSize();
+      if (maximumFileSize > 0L) {
+        final File file = artifact.getFile();
+        if (file != null && file.isFile() && file.length() > maximumFileSize) {
+          returnValue = false;
+        }
+      }
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final boolean passes(final String value, final Collection<? extends String> included, final Collection<? extends String> excluded) {
+    return (included == null || included.isEmpty() || included.contains(value)) && (excluded == null || !excluded.contains(value));
+  }
+
+  private static final boolean passesGlobs(final String value, final Collection<? extends String> included, final Collection<? extends ResourceNamePattern> includedPatterns, final Collection<? extends String> excluded, final Collection<? extends ResourceNamePattern> excludedPatterns) {
+    return (included == null || included.isEmpty() || matchesAny(value, included, includedPatterns)) && (excluded == null || !matchesAny(value, excluded, excludedPatterns));
+  }
+
+  private static final boolean matchesAny(final String value, final Collection<? extends String> globs, final Collection<? extends ResourceNamePattern> patterns) {
+    if (value != null) {
+      if (globs != null && globs.contains(value)) {
+        return true;
+      }
+      if (patterns != null) {
+        for (final ResourceNamePattern pattern : patterns) {
+          if (pattern.matches(value)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compiles those of the supplied group identifiers that are globs
+   * into {@link ResourceNamePattern}s, so that {@link
+   * #include(Artifact)} need not compile them for every {@link
+   * Artifact} it is handed.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param globs the group identifiers or globs; may be {@code null}
+   *
+   * @return a {@link Collection} of {@link ResourceNamePattern}s, or
+   * {@code null} if {@code globs} contains no globs
+   */
+  private static final Collection<ResourceNamePattern> compile(final Collection<? extends String> globs) {
+    Collection<ResourceNamePattern> returnValue = null;
+    if (globs != null) {
+      for (final String glob : globs) {
+        if (glob != null && ResourceNamePattern.isPattern(glob)) {
+          if (returnValue == null) {
+            returnValue = new ArrayList<ResourceNamePattern>();
+          }
+          returnValue.add(new ResourceNamePattern(glob));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+}
@@ -0,0 +1,1002 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * A content-addressed store, shared by every Maven process on a
+ * host, of the entry listings of archives and of the changelogs
+ * extracted from them.
+ *
+ * <p>Each archive is identified by the SHA-256 digest of its
+ * contents.  Beneath the cache's root directory, a directory named
+ * for that digest holds a file named {@code entries}, listing the
+ * name, size and CRC-32 of every non-directory entry in the archive,
+ * and a directory named {@code files}, holding those entries that
+ * have been {@linkplain #getEntries(File, Collection,
+ * ChangeLogStatistics) extracted} so far under their entry names.
+ * So that an archive need not be read in full every time its digest
+ * is needed, the digest of each archive path is remembered in the
+ * {@code paths} directory together with the archive's {@linkplain
+ * File#length() length} and {@linkplain File#lastModified() last
+ * modification time}.</p>
+ *
+ * <p>Concurrent access by several processes is coordinated with
+ * {@link FileLock}s on files in the {@code locks} directory: a
+ * digest directory is read under a shared lock and added to under
+ * an exclusive one, and every file is written to a temporary file
+ * first and then moved into place.  {@link FileLock}s are held on
+ * behalf of a whole Java Virtual Machine, so access by threads
+ * within one is additionally coordinated by monitors.</p>
+ *
+ * <p>The last modification time of each {@code entries} file is
+ * updated whenever it is used.  When the cache grows beyond its
+ * maximum size, it is {@linkplain #evict() trimmed} by deleting the
+ * least recently used digest directories that no other process is
+ * reading, together with their lock files and with the remembered
+ * digests in the {@code paths} directory that refer to them.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setSharedCacheEnabled(boolean)
+ */
+final class ChangeLogCache {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Monitors guarding the use of {@link FileLock}s within this Java
+   * Virtual Machine, one of which is chosen for each digest by its
+   * {@linkplain String#hashCode() hash code}.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getMonitor(String)
+   */
+  private static final Object[] monitors = new Object[64];
+
+  /**
+   * A monitor guarding the use of the eviction {@link FileLock}
+   * within this Java Virtual Machine.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #evict()
+   */
+  private static final Object evictionMonitor = new Object();
+
+  static {
+    for (int i = 0; i < monitors.length; i++) {
+      monitors[i] = new Object();
+    }
+  }
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The root directory of this {@link ChangeLogCache}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Path root;
+
+  /**
+   * The size in bytes beyond which this {@link ChangeLogCache} will
+   * be {@linkplain #evict() trimmed}.
+   */
+  private final long maximumSize;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogCache}.
+   *
+   * @param root the root directory of the new cache; must not be
+   * {@code null}; will be created if necessary
+   *
+   * @param maximumSize the size in bytes beyond which the new cache
+   * will be trimmed; must not be less than {@code 0}
+   *
+   * @exception IllegalArgumentException if {@code root} is {@code
+   * null} or {@code maximumSize} is less than {@code 0}
+   */
+  ChangeLogCache(final File root, final long maximumSize) {
+    super();
+    if (root == null) {
+      throw new IllegalArgumentException("root", new NullPointerException("root"));
+    }
+    if (maximumSize < 0L) {
+      throw new IllegalArgumentException("maximumSize < 0: " + maximumSize);
+    }
+    this.root = root.toPath().toAbsolutePath().normalize();
+    this.maximumSize = maximumSize;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the root directory of this {@link ChangeLogCache}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the non-{@code null} root directory
+   */
+  final File getRoot() {
+    return this.root.toFile();
+  }
+
+  /**
+   * Returns the names of the non-directory entries in the supplied
+   * archive, sorted in natural order, reading the archive only if
+   * this {@link ChangeLogCache} has no record of its contents.
+   *
+   * <p>This method never returns {@code null}.  If {@code archive} is
+   * not a zip-format archive, an empty array is returned.</p>
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record hits and misses; may be {@code null}
+   *
+   * @return a non-{@code null} array of entry names
+   *
+   * @exception IllegalArgumentException if {@code archive} is {@code
+   * null}
+   *
+   * @exception IOException if the archive or this cache could not be
+   * read or written
+   */
+  final String[] getEntryNames(final File archive, final ChangeLogStatistics statistics) throws IOException {
+    if (archive == null) {
+      throw new IllegalArgumentException("archive", new NullPointerException("archive"));
+    }
+    final Map<String, CachedEntry> listing = this.getListing(this.getDigest(archive), archive, statistics);
+    return listing.keySet().toArray(new String[listing.size()]);
+  }
+
+  /**
+   * Returns {@link CachedEntry} instances describing the entries in
+   * the supplied archive bearing the supplied names, copying any that
+   * have not already been copied into this {@link ChangeLogCache}
+   * from the archive first.
+   *
+   * <p>This method never returns {@code null}.  Names that do not
+   * identify a non-directory entry in the archive are not present in
+   * the {@link Map} that is returned.</p>
+   *
+   * <p>Files in this cache may be {@linkplain #evict() evicted} by
+   * another process at any time, so callers must be prepared for the
+   * {@linkplain CachedEntry#getPath() files} described by the
+   * returned {@link CachedEntry} instances to have disappeared.</p>
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @param entryNames the names of the entries in question; must not
+   * be {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record hits and misses; may be {@code null}
+   *
+   * @return a non-{@code null} {@link Map} of {@link CachedEntry}
+   * instances indexed by entry name
+   *
+   * @exception IllegalArgumentException if {@code archive} or {@code
+   * entryNames} is {@code null}
+   *
+   * @exception IOException if the archive or this cache could not be
+   * read or written
+   */
+  final Map<String, CachedEntry> getEntries(final File archive, final Collection<? extends String> entryNames, final ChangeLogStatistics statistics) throws IOException {
+    if (archive == null) {
+      throw new IllegalArgumentException("archive", new NullPointerException("archive"));
+    }
+    if (entryNames == null) {
+      throw new IllegalArgumentException("entryNames", new NullPointerException("entryNames"));
+    }
+    final String digest = this.getDigest(archive);
+    final Map<String, CachedEntry> listing = this.getListing(digest, archive, statistics);
+    final Map<String, CachedEntry> returnValue = new LinkedHashMap<String, CachedEntry>();
+    final List<CachedEntry> missing = new ArrayList<CachedEntry>();
+    for (final String entryName : entryNames) {
+      final CachedEntry entry = listing.get(entryName);
+      if (entry != null && entry.path != null) {
+        returnValue.put(entryName, entry);
+        if (!Files.isRegularFile(entry.path)) {
+          missing.add(entry);
+        }
+      }
+    }
+    if (!missing.isEmpty()) {
+      synchronized (getMonitor(digest)) {
+        final FileLock lock = this.lock(digest, false, true);
+        try {
+          ZipFile zipFile = null;
+          try {
+            for (final CachedEntry entry : missing) {
+              // Another process may have stored it while we waited.
+              if (!Files.isRegularFile(entry.path)) {
+                if (zipFile == null) {
+                  zipFile = new ZipFile(archive);
+                }
+                final ZipEntry zipEntry = zipFile.getEntry(entry.name);
+                if (zipEntry != null) {
+                  store(zipFile, zipEntry, entry.path);
+                  if (statistics != null) {
+                    statistics.increment("sharedCacheEntriesStored");
+                  }
+                }
+              }
+            }
+          } finally {
+            if (zipFile != null) {
+              try {
+                zipFile.close();
+              } catch (final IOException nothingWeCanDo) {
+
+              }
+            }
+          }
+        } finally {
+          lock.channel().close();
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Deletes the least recently used digest directories in this
+   * {@link ChangeLogCache} until its total size no longer exceeds
+   * its maximum size.
+   *
+   * <p>The lock file of each deleted digest directory is deleted as
+   * well, as is each remembered digest in the {@code paths} directory
+   * that no longer refers to a digest directory.</p>
+   *
+   * <p>If another process is already trimming the cache, this method
+   * does nothing.  Digest directories that another process is using
+   * are skipped.</p>
+   *
+   * @exception IOException if this cache could not be read or
+   * written
+   */
+  final void evict() throws IOException {
+    if (!Files.isDirectory(this.root)) {
+      return;
+    }
+    synchronized (evictionMonitor) {
+      final FileLock evictionLock = this.lock("eviction", false, false);
+      if (evictionLock != null) {
+        try {
+          this.evictUnderLock();
+        } finally {
+          evictionLock.channel().close();
+        }
+      }
+    }
+  }
+
+  private final void evictUnderLock() throws IOException {
+    final List<Path> directories = new ArrayList<Path>();
+    final Map<Path, Long> sizes = new TreeMap<Path, Long>();
+    final Map<Path, FileTime> lastUses = new TreeMap<Path, FileTime>();
+    long totalSize = 0L;
+    DirectoryStream<Path> stream = null;
+    try {
+      stream = Files.newDirectoryStream(this.root);
+      for (final Path directory : stream) {
+        if (isDigest(directory.getFileName().toString()) && Files.isDirectory(directory)) {
+          final long size = size(directory);
+          FileTime lastUse;
+          try {
+            lastUse = Files.getLastModifiedTime(directory.resolve("entries"));
+          } catch (final NoSuchFileException incomplete) {
+            lastUse = FileTime.fromMillis(0L);
+          }
+          directories.add(directory);
+          sizes.put(directory, Long.valueOf(size));
+          lastUses.put(directory, lastUse);
+          totalSize += size;
+        }
+      }
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    if (totalSize > this.maximumSize) {
+      Collections.sort(directories, new Comparator<Path>() {
+          @Override
+          public final int compare(final Path one, final Path two) {
+            return lastUses.get(one).compareTo(lastUses.get(two));
+          }
+        });
+      final Set<String> evicted = new HashSet<String>();
+      for (final Path directory : directories) {
+        if (totalSize <= this.maximumSize) {
+          break;
+        }
+        final String digest = directory.getFileName().toString();
+        synchronized (getMonitor(digest)) {
+          final FileLock lock = this.lock(digest, false, false);
+          if (lock != null) {
+            try {
+              delete(directory);
+              totalSize -= sizes.get(directory).longValue();
+              evicted.add(digest);
+              this.retire(digest, lock);
+            } finally {
+              lock.channel().close();
+            }
+          }
+        }
+      }
+      if (!evicted.isEmpty()) {
+        this.deleteMemos(evicted);
+      }
+    }
+  }
+
+  /**
+   * Deletes those remembered digests in the {@code paths} directory
+   * that refer to one of the supplied evicted digests, to a digest
+   * directory that does not exist, or to nothing intelligible.
+   *
+   * <p>A remembered digest is only a shortcut, so deleting one that
+   * another process has just written costs that process no more than
+   * reading its archive again.</p>
+   *
+   * @param evicted the digests whose directories have just been
+   * deleted; must not be {@code null}
+   *
+   * @exception IOException if the {@code paths} directory could not
+   * be read or written
+   */
+  private final void deleteMemos(final Set<? extends String> evicted) throws IOException {
+    final Path paths = this.root.resolve("paths");
+    if (!Files.isDirectory(paths)) {
+      return;
+    }
+    DirectoryStream<Path> stream = null;
+    try {
+      stream = Files.newDirectoryStream(paths);
+      for (final Path memo : stream) {
+        if (isDigest(memo.getFileName().toString())) {
+          final String digest;
+          try {
+            digest = readMemo(memo);
+          } catch (final NoSuchFileException deletedMeanwhile) {
+            continue;
+          }
+          if (digest == null || evicted.contains(digest) || !Files.isDirectory(this.root.resolve(digest))) {
+            Files.deleteIfExists(memo);
+          }
+        }
+      }
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the listing of the archive with the supplied digest,
+   * creating it from the supplied archive if necessary.
+   *
+   * @param digest the archive's digest; must not be {@code null}
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record hits and misses; may be {@code null}
+   *
+   * @return a non-{@code null} {@link Map} of {@link CachedEntry}
+   * instances indexed by entry name, in natural order
+   *
+   * @exception IOException if the archive or this cache could not be
+   * read or written
+   */
+  private final Map<String, CachedEntry> getListing(final String digest, final File archive, final ChangeLogStatistics statistics) throws IOException {
+    final Path directory = this.root.resolve(digest);
+    final Path entriesFile = directory.resolve("entries");
+    synchronized (getMonitor(digest)) {
+      FileLock lock = this.lock(digest, true, true);
+      try {
+        if (Files.isRegularFile(entriesFile)) {
+          if (statistics != null) {
+            statistics.increment("sharedCacheHits");
+          }
+          Files.setLastModifiedTime(entriesFile, FileTime.fromMillis(System.currentTimeMillis()));
+          return readListing(directory, entriesFile);
+        }
+      } finally {
+        lock.channel().close();
+      }
+      lock = this.lock(digest, false, true);
+      try {
+        // Another process may have written it while we waited.
+        if (Files.isRegularFile(entriesFile)) {
+          if (statistics != null) {
+            statistics.increment("sharedCacheHits");
+          }
+          return readListing(directory, entriesFile);
+        }
+        if (statistics != null) {
+          statistics.increment("sharedCacheMisses");
+          statistics.increment("archivesOpened");
+        }
+        final Map<String, CachedEntry> returnValue = list(directory, archive);
+        writeListing(returnValue.values(), entriesFile);
+        return returnValue;
+      } finally {
+        lock.channel().close();
+      }
+    }
+  }
+
+  /**
+   * Returns the hexadecimal SHA-256 digest of the contents of the
+   * supplied archive, reading the archive only if its digest has not
+   * been remembered or it has changed since.
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @return a non-{@code null} digest
+   *
+   * @exception IOException if the archive or this cache could not be
+   * read or written
+   */
+  private final String getDigest(final File archive) throws IOException {
+    final String path = archive.getAbsolutePath();
+    final long length = archive.length();
+    final long lastModified = archive.lastModified();
+    final Path memo = this.root.resolve("paths").resolve(ChangeLogFiles.toHexString(ChangeLogFiles.newDigest().digest(path.getBytes(UTF_8))));
+    if (Files.isRegularFile(memo)) {
+      List<String> lines;
+      try {
+        lines = Files.readAllLines(memo, UTF_8);
+      } catch (final NoSuchFileException evicted) {
+        lines = Collections.emptyList();
+      }
+      if (!lines.isEmpty()) {
+        final String[] fields = lines.get(0).split("\t");
+        if (fields.length == 3 && fields[0].equals(String.valueOf(length)) && fields[1].equals(String.valueOf(lastModified)) && isDigest(fields[2])) {
+          return fields[2];
+        }
+      }
+    }
+    final MessageDigest digest = ChangeLogFiles.newDigest();
+    InputStream stream = null;
+    try {
+      stream = Files.newInputStream(archive.toPath());
+      final byte[] buffer = new byte[8192];
+      int bytesRead;
+      while ((bytesRead = stream.read(buffer)) != -1) {
+        digest.update(buffer, 0, bytesRead);
+      }
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    final String returnValue = ChangeLogFiles.toHexString(digest.digest());
+    ChangeLogFiles.write((length + "\t" + lastModified + "\t" + returnValue + "\n").getBytes(UTF_8), memo);
+    return returnValue;
+  }
+
+  /**
+   * Locks, creating it if necessary, the lock file with the supplied
+   * name in this {@link ChangeLogCache}'s {@code locks} directory.
+   *
+   * <p>This method may return {@code null}, but only if {@code wait}
+   * is {@code false} and another process holds a conflicting lock.
+   * Closing the {@linkplain FileLock#channel() channel} of the
+   * returned {@link FileLock} releases it.</p>
+   *
+   * <p>A lock file may have been {@linkplain #retire(String, FileLock)
+   * retired} by the time it has been locked, in which case it is
+   * closed and whatever file is now at its path is locked
+   * instead.</p>
+   *
+   * @param name the name of the lock; must not be {@code null}
+   *
+   * @param shared whether the lock should be shared
+   *
+   * @param wait whether to wait for a conflicting lock held by
+   * another process to be released
+   *
+   * @return a valid {@link FileLock}, or {@code null}
+   *
+   * @exception IOException if the lock file could not be opened or
+   * locked
+   */
+  private final FileLock lock(final String name, final boolean shared, final boolean wait) throws IOException {
+    final Path locks = this.root.resolve("locks");
+    final Path lockFile = locks.resolve(name + ".lock");
+    while (true) {
+      Files.createDirectories(locks);
+      final FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      boolean locked = false;
+      try {
+        final FileLock lock;
+        if (wait) {
+          lock = lockChannel.lock(0L, Long.MAX_VALUE, shared);
+        } else {
+          lock = lockChannel.tryLock(0L, Long.MAX_VALUE, shared);
+        }
+        if (lock == null) {
+          return null;
+        }
+        if (lockChannel.size() == 0L) {
+          locked = true;
+          return lock;
+        }
+      } finally {
+        if (!locked) {
+          lockChannel.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Retires and deletes the lock file with the supplied name, which
+   * must be locked exclusively by the supplied {@link FileLock}.
+   *
+   * <p>A process waiting to lock the file when it is deleted still
+   * acquires a lock on it, and nothing would stop a third process
+   * from creating and locking a new file at the same path in the
+   * meantime.  So before it is deleted the file is marked as retired
+   * by making it non-empty, and {@link #lock(String, boolean,
+   * boolean)} never returns a lock on a retired file.  If the file
+   * cannot be deleted, the mark is removed again.</p>
+   *
+   * @param name the name of the lock; must not be {@code null}
+   *
+   * @param lock an exclusive {@link FileLock} on the lock file; must
+   * not be {@code null}
+   *
+   * @exception IOException if the lock file could not be written
+   */
+  private final void retire(final String name, final FileLock lock) throws IOException {
+    final FileChannel lockChannel = lock.channel();
+    lockChannel.write(ByteBuffer.wrap(new byte[] { (byte)'\n' }), 0L);
+    try {
+      Files.delete(this.root.resolve("locks").resolve(name + ".lock"));
+    } catch (final NoSuchFileException alreadyDeleted) {
+
+    } catch (final IOException inUse) {
+      // Some platforms refuse to delete a file that is open.
+      lockChannel.truncate(0L);
+    }
+  }
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the default root directory of a {@link ChangeLogCache}:
+   * a directory named {@code liquibase-cache} in the {@code .m2}
+   * directory in the user's home directory.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the non-{@code null} default root directory
+   */
+  static final File getDefaultRoot() {
+    return new File(new File(System.getProperty("user.home"), ".m2"), "liquibase-cache");
+  }
+
+  private static final Object getMonitor(final String name) {
+    return monitors[(name.hashCode() & Integer.MAX_VALUE) % monitors.length];
+  }
+
+  /**
+   * Lists the non-directory entries of the supplied archive.
+   *
+   * @param directory the digest directory for the archive; must not
+   * be {@code null}
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Map} of {@link CachedEntry}
+   * instances indexed by entry name, in natural order; empty if
+   * {@code archive} is not a zip-format archive
+   *
+   * @exception IOException if the archive could not be read
+   */
+  private static final Map<String, CachedEntry> list(final Path directory, final File archive) throws IOException {
+    final Map<String, CachedEntry> returnValue = new TreeMap<String, CachedEntry>();
+    ZipFile zipFile = null;
+    try {
+      zipFile = new ZipFile(archive);
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (entry != null && !entry.isDirectory()) {
+          final String name = entry.getName();
+          returnValue.put(name, new CachedEntry(name, getPath(directory, name), entry.getSize(), entry.getCrc()));
+        }
+      }
+    } catch (final ZipException notAnArchive) {
+      returnValue.clear();
+    } finally {
+      if (zipFile != null) {
+        try {
+          zipFile.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the digest remembered in the supplied file in the {@code
+   * paths} directory.
+   *
+   * <p>This method may return {@code null} if the file does not
+   * contain a remembered digest.</p>
+   *
+   * @param memo the file; must not be {@code null}
+   *
+   * @return the remembered digest, or {@code null}
+   *
+   * @exception IOException if the file could not be read
+   */
+  private static final String readMemo(final Path memo) throws IOException {
+    final List<String> lines = Files.readAllLines(memo, UTF_8);
+    if (!lines.isEmpty()) {
+      final String[] fields = lines.get(0).split("\t");
+      if (fields.length == 3 && isDigest(fields[2])) {
+        return fields[2];
+      }
+    }
+    return null;
+  }
+
+  private static final Map<String, CachedEntry> readListing(final Path directory, final Path entriesFile) throws IOException {
+    final Map<String, CachedEntry> returnValue = new TreeMap<String, CachedEntry>();
+    BufferedReader reader = null;
+    try {
+      reader = Files.newBufferedReader(entriesFile, UTF_8);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] fields = line.split("\t", 3);
+        if (fields.length == 3) {
+          try {
+            returnValue.put(fields[2], new CachedEntry(fields[2], getPath(directory, fields[2]), Long.parseLong(fields[1]), Long.parseLong(fields[0])));
+          } catch (final NumberFormatException corrupt) {
+            throw new IOException("Corrupt entry in " + entriesFile + ": " + line, corrupt);
+          }
+        }
+      }
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private static final void writeListing(final Collection<? extends CachedEntry> entries, final Path entriesFile) throws IOException {
+    final Path temporaryFile = ChangeLogFiles.createTemporaryFile(entriesFile);
+    boolean moved = false;
+    try {
+      Writer writer = null;
+      try {
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temporaryFile), UTF_8));
+        for (final CachedEntry entry : entries) {
+          writer.write(String.valueOf(entry.crc));
+          writer.write('\t');
+          writer.write(String.valueOf(entry.size));
+          writer.write('\t');
+          writer.write(entry.name);
+          writer.write('\n');
+        }
+      } finally {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+      ChangeLogFiles.moveIntoPlace(temporaryFile, entriesFile);
+      moved = true;
+    } finally {
+      if (!moved) {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+  }
+
+  private static final void store(final ZipFile zipFile, final ZipEntry entry, final Path target) throws IOException {
+    ReadableByteChannel in = null;
+    try {
+      in = Channels.newChannel(zipFile.getInputStream(entry));
+      ChangeLogFiles.write(in, target);
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the {@link Path} within the supplied digest directory at
+   * which the entry with the supplied name is stored, or {@code null}
+   * if the entry name would lead outside of it.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param directory the digest directory; must not be {@code null}
+   *
+   * @param entryName the entry name; must not be {@code null}
+   *
+   * @return a {@link Path}, or {@code null}
+   */
+  private static final Path getPath(final Path directory, final String entryName) {
+    final Path files = directory.resolve("files");
+    final Path returnValue;
+    try {
+      returnValue = files.resolve(entryName).normalize();
+    } catch (final InvalidPathException notARelativePath) {
+      return null;
+    }
+    if (returnValue.equals(files) || !returnValue.startsWith(files)) {
+      return null;
+    }
+    return returnValue;
+  }
+
+  private static final long size(final Path directory) throws IOException {
+    final long[] size = new long[1];
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+        @Override
+        public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+          size[0] += attributes.size();
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    return size[0];
+  }
+
+  private static final void delete(final Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+        @Override
+        public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+          Files.deleteIfExists(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public final FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+          if (exception != null) {
+            throw exception;
+          }
+          Files.deleteIfExists(directory);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+  }
+
+  private static final boolean isDigest(final String name) {
+    if (name == null || name.length() != 64) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A description of an entry in an archive known to a {@link
+   * ChangeLogCache}.
+   *
+   * @author <a href="http://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  static final class CachedEntry {
+
+    /**
+     * The entry's name.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final String name;
+
+    /**
+     * The {@link Path} at which a copy of the entry is, or would be,
+     * stored.
+     *
+     * <p>This field may be {@code null} if the entry's name does not
+     * permit it to be stored.</p>
+     */
+    private final Path path;
+
+    /**
+     * The uncompressed size of the entry, or {@code -1} if it is not
+     * known.
+     */
+    private final long size;
+
+    /**
+     * The CRC-32 of the entry, or {@code -1} if it is not known.
+     */
+    private final long crc;
+
+    private CachedEntry(final String name, final Path path, final long size, final long crc) {
+      super();
+      this.name = name;
+      this.path = path;
+      this.size = size;
+      this.crc = crc;
+    }
+
+    /**
+     * Returns the {@link Path} at which a copy of this entry is
+     * stored.
+     *
+     * <p>This method never returns {@code null} for a {@link
+     * CachedEntry} returned by {@link ChangeLogCache#getEntries(File,
+     * Collection, ChangeLogStatistics)}.</p>
+     *
+     * @return the {@link Path} of the stored copy
+     */
+    final Path getPath() {
+      return this.path;
+    }
+
+    /**
+     * Returns the uncompressed size of this entry, or {@code -1} if
+     * it is not known.
+     *
+     * @return the size of this entry
+     */
+    final long getSize() {
+      return this.size;
+    }
+
+    /**
+     * Returns the CRC-32 of this entry, or {@code -1} if it is not
+     * known.
+     *
+     * @return the CRC-32 of this entry
+     */
+    final long getCrc() {
+      return this.crc;
+    }
+
+  }
+
+}
@@ -0,0 +1,786 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Runnable} that uses a {@link WatchService} to keep track
+ * of Liquibase changelog fragments appearing in, disappearing from or
+ * changing within a set of directories, such as a Maven project's
+ * output directories, and that regenerates an aggregate changelog
+ * with an {@link AggregateChangeLogGenerator} only when that
+ * happens.
+ *
+ * <p>This is intended for development loops (an IDE, or a
+ * long-lived Maven daemon) where the same project is built over and
+ * over: rather than probing the directories on every build, the
+ * watcher is told by the operating system which paths changed, and
+ * each build can ask it for the {@linkplain #getDiscoveredUrls()
+ * changelog fragments it currently knows about}.</p>
+ *
+ * <p>Because a {@link WatchService} only reports changes to the
+ * immediate children of a registered directory, each directory on
+ * the path from a watched directory to each changelog resource name
+ * is registered individually as it comes into existence.  For a
+ * {@linkplain ResourceNamePattern glob}, every directory beneath its
+ * literal base directory is registered as well.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setWatchProjectDirectories(boolean)
+ */
+public class ChangeLogDirectoryWatcher implements Closeable, Runnable {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link AggregateChangeLogGenerator} used to regenerate the
+   * aggregate changelog.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #setGenerator(AggregateChangeLogGenerator)
+   */
+  private volatile AggregateChangeLogGenerator generator;
+
+  /**
+   * {@link URL}s, typically harvested from dependencies, that precede
+   * the changelogs discovered in the watched directories.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #setLeadingUrls(Collection)
+   */
+  private volatile List<URL> leadingUrls;
+
+  /**
+   * The absolute directories being watched, in the order in which
+   * they were supplied at construction time.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<File> directories;
+
+  /**
+   * The changelog resource names, or {@linkplain ResourceNamePattern
+   * globs}, looked for within each watched directory.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<String> changeLogResourceNames;
+
+  /**
+   * Descriptions of the changelog files that may appear in the
+   * watched directories, in the order in which they should be
+   * included.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<Target> targets;
+
+  /**
+   * The watched directories, as normalized absolute {@link Path}s.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<Path> roots;
+
+  /**
+   * The directories that must be watched in order to notice changes
+   * to any of the {@linkplain #targets targets}: every directory on
+   * the path from a watched directory to each literal target, or to
+   * the {@linkplain ResourceNamePattern#getBase() base} of each
+   * glob.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<Path> ancestors;
+
+  /**
+   * The {@linkplain ResourceNamePattern#getBase() base} directories
+   * of glob targets, each of which is watched together with all of
+   * its subdirectories.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Set<Path> subtrees;
+
+  /**
+   * The {@link WatchService} in use.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final WatchService watchService;
+
+  /**
+   * The directories currently registered with the {@link
+   * #watchService}, indexed by their {@link WatchKey}s.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on {@code this}.</p>
+   */
+  private final Map<WatchKey, Path> registrations;
+
+  /**
+   * The most recent failure to regenerate the aggregate changelog
+   * from within {@link #run()}, if it has not yet been {@linkplain
+   * #takeFailure() taken}.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private volatile Exception failure;
+
+  /**
+   * Whether this {@link ChangeLogDirectoryWatcher} has been
+   * {@linkplain #close() closed}.
+   */
+  private volatile boolean closed;
+
+  /**
+   * The targets that exist at present, in {@linkplain #targets
+   * target} order.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on {@code this}.</p>
+   */
+  private List<Path> present;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogDirectoryWatcher}, registers the
+   * supplied {@code directories} for watching and discovers the
+   * changelog fragments that they already contain.
+   *
+   * <p>No aggregate changelog is generated by this constructor; call
+   * {@link #generate()} to do that.</p>
+   *
+   * @param generator the {@link AggregateChangeLogGenerator} that
+   * will regenerate the aggregate changelog; must not be {@code null}
+   *
+   * @param leadingUrls {@link URL}s, such as those harvested from a
+   * project's dependencies, that will precede the discovered
+   * changelogs in the aggregate changelog; may be {@code null}
+   *
+   * @param directories the directories to watch; may be {@code null}
+   *
+   * @param changeLogResourceNames the relative names of changelog
+   * fragments, or {@linkplain ResourceNamePattern globs} matching
+   * them, to look for within each directory; may be {@code null}
+   *
+   * @exception IOException if a {@link WatchService} could not be
+   * created or a directory could not be registered with it
+   *
+   * @exception IllegalArgumentException if {@code generator} is
+   * {@code null}
+   */
+  public ChangeLogDirectoryWatcher(final AggregateChangeLogGenerator generator,
+                                   final Collection<? extends URL> leadingUrls,
+                                   final Collection<? extends File> directories,
+                                   final Collection<? extends String> changeLogResourceNames) throws IOException {
+    super();
+    this.setGenerator(generator);
+    this.setLeadingUrls(leadingUrls);
+    final List<File> absoluteDirectories = new ArrayList<File>();
+    final List<String> names = new ArrayList<String>();
+    final List<Target> targets = new ArrayList<Target>();
+    final Set<Path> roots = new LinkedHashSet<Path>();
+    final Set<Path> ancestors = new HashSet<Path>();
+    final Set<Path> subtrees = new HashSet<Path>();
+    if (changeLogResourceNames != null) {
+      for (final String name : changeLogResourceNames) {
+        if (name != null) {
+          names.add(name);
+        }
+      }
+    }
+    if (directories != null) {
+      for (final File directory : directories) {
+        if (directory != null) {
+          final Path root = directory.toPath().toAbsolutePath().normalize();
+          absoluteDirectories.add(root.toFile());
+          roots.add(root);
+          for (final String name : names) {
+            if (name != null) {
+              final ResourceNamePattern pattern = ResourceNamePattern.isPattern(name) ? new ResourceNamePattern(name) : null;
+              final Path path = root.resolve(pattern == null ? name : pattern.getBase()).normalize();
+              if (path.startsWith(root)) {
+                final Path lastAncestor;
+                if (pattern == null) {
+                  if (path.equals(root)) {
+                    continue;
+                  }
+                  lastAncestor = path.getParent();
+                } else {
+                  lastAncestor = path;
+                  subtrees.add(path);
+                }
+                targets.add(new Target(root, path, pattern));
+                for (Path ancestor = lastAncestor; ancestor != null && ancestor.startsWith(root); ancestor = ancestor.getParent()) {
+                  ancestors.add(ancestor);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+    this.directories = Collections.unmodifiableList(absoluteDirectories);
+    this.changeLogResourceNames = Collections.unmodifiableList(names);
+    this.targets = Collections.unmodifiableList(targets);
+    this.roots = Collections.unmodifiableSet(roots);
+    this.ancestors = Collections.unmodifiableSet(ancestors);
+    this.subtrees = Collections.unmodifiableSet(subtrees);
+    this.registrations = new HashMap<WatchKey, Path>();
+    this.watchService = FileSystems.getDefault().newWatchService();
+    synchronized (this) {
+      this.register();
+      this.present = this.discover();
+    }
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the absolute directories being watched, in the order in
+   * which they were supplied at construction time.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, immutable {@link List} of {@link
+   * File}s
+   */
+  public List<File> getDirectories() {
+    return this.directories;
+  }
+
+  /**
+   * Returns the changelog resource names, or {@linkplain
+   * ResourceNamePattern globs}, looked for within each watched
+   * directory.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, immutable {@link List} of resource
+   * names
+   */
+  public List<String> getChangeLogResourceNames() {
+    return this.changeLogResourceNames;
+  }
+
+  /**
+   * Returns the {@link AggregateChangeLogGenerator} used to
+   * regenerate the aggregate changelog.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link AggregateChangeLogGenerator}
+   *
+   * @see #setGenerator(AggregateChangeLogGenerator)
+   */
+  public AggregateChangeLogGenerator getGenerator() {
+    return this.generator;
+  }
+
+  /**
+   * Sets the {@link AggregateChangeLogGenerator} used to regenerate
+   * the aggregate changelog, typically because a later build of the
+   * same project is reusing this {@link ChangeLogDirectoryWatcher}.
+   *
+   * @param generator the new {@link AggregateChangeLogGenerator};
+   * must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code generator} is
+   * {@code null}
+   *
+   * @see #getGenerator()
+   */
+  public void setGenerator(final AggregateChangeLogGenerator generator) {
+    if (generator == null) {
+      throw new IllegalArgumentException("generator", new NullPointerException("generator"));
+    }
+    this.generator = generator;
+  }
+
+  /**
+   * Sets the {@link URL}s, such as those harvested from a project's
+   * dependencies, that will precede the discovered changelogs in the
+   * aggregate changelog, typically because a later build of the same
+   * project is reusing this {@link ChangeLogDirectoryWatcher}.
+   *
+   * @param leadingUrls the leading {@link URL}s; may be {@code null}
+   */
+  public void setLeadingUrls(final Collection<? extends URL> leadingUrls) {
+    if (leadingUrls == null || leadingUrls.isEmpty()) {
+      this.leadingUrls = Collections.emptyList();
+    } else {
+      this.leadingUrls = Collections.unmodifiableList(new ArrayList<URL>(leadingUrls));
+    }
+  }
+
+  /**
+   * Returns {@code true} if this {@link ChangeLogDirectoryWatcher}
+   * has been {@linkplain #close() closed}.
+   *
+   * @return {@code true} if this {@link ChangeLogDirectoryWatcher}
+   * has been closed; {@code false} otherwise
+   */
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  /**
+   * Returns and forgets the most recent failure to regenerate the
+   * aggregate changelog from within {@link #run()}, so that the
+   * caller, such as a later build, can report it.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the most recent failure, or {@code null}
+   */
+  public Exception takeFailure() {
+    final Exception returnValue = this.failure;
+    this.failure = null;
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@link URL}s of the changelog fragments in the
+   * watched directories, in inclusion order, as known after any file
+   * system events already reported by the operating system have been
+   * processed.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Apart from checking that each watched directory that exists
+   * is still registered, this method does not probe the file system
+   * unless an event calls for it.</p>
+   *
+   * @return a non-{@code null}, immutable {@link List} of {@link URL}s
+   *
+   * @exception IOException if the watched directories could not be
+   * examined, or if a discovered path could not be expressed as a
+   * {@link URL}
+   *
+   * @exception ClosedWatchServiceException if this {@link
+   * ChangeLogDirectoryWatcher} has been {@linkplain #close() closed}
+   */
+  public List<URL> getDiscoveredUrls() throws IOException {
+    this.update(null);
+    final List<Path> present;
+    synchronized (this) {
+      present = this.present;
+    }
+    return toUrls(Collections.<URL>emptyList(), present);
+  }
+
+  /**
+   * Returns the {@link URL}s of all the changelog fragments known to
+   * this {@link ChangeLogDirectoryWatcher} at the moment, in
+   * inclusion order: the leading {@link URL}s supplied at
+   * construction time followed by those discovered in the watched
+   * directories.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, immutable {@link List} of {@link URL}s
+   *
+   * @exception IOException if a discovered path could not be
+   * expressed as a {@link URL}
+   */
+  public List<URL> getUrls() throws IOException {
+    final List<Path> present;
+    synchronized (this) {
+      present = this.present;
+    }
+    return toUrls(this.leadingUrls, present);
+  }
+
+  /**
+   * Generates the aggregate changelog from the {@linkplain #getUrls()
+   * changelog fragments currently known}.
+   *
+   * <p>This method may return {@code null} if there are no known
+   * changelog fragments, in which case nothing is generated.</p>
+   *
+   * @return the aggregate changelog {@link File}, or {@code null}
+   *
+   * @exception IOException if an error occurs
+   *
+   * @see AggregateChangeLogGenerator#generate(Collection)
+   */
+  public File generate() throws IOException {
+    File returnValue = null;
+    final List<URL> urls = this.getUrls();
+    if (!urls.isEmpty()) {
+      returnValue = this.generator.generate(urls);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Waits up to the supplied amount of time for file system events,
+   * processes all that are available and, if a changelog fragment
+   * appeared, disappeared or changed as a result, {@linkplain
+   * #generate() regenerates} the aggregate changelog.
+   *
+   * @param timeout how long to wait for the first event; if zero or
+   * negative, this method does not wait at all
+   *
+   * @param unit the {@link TimeUnit} of {@code timeout}; must not be
+   * {@code null}
+   *
+   * @return {@code true} if the aggregate changelog was regenerated;
+   * {@code false} otherwise
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception InterruptedException if the calling thread was
+   * interrupted while waiting
+   *
+   * @exception ClosedWatchServiceException if this {@link
+   * ChangeLogDirectoryWatcher} has been {@linkplain #close() closed}
+   */
+  public boolean poll(final long timeout, final TimeUnit unit) throws IOException, InterruptedException {
+    final WatchKey key = timeout > 0L ? this.watchService.poll(timeout, unit) : this.watchService.poll();
+    boolean returnValue = false;
+    if (this.update(key)) {
+      returnValue = this.generate() != null;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Processes the supplied {@link WatchKey}, if any, and all other
+   * file system events that are available without waiting, and
+   * brings the registered directories and the {@linkplain #present
+   * present targets} up to date.
+   *
+   * @param key a {@link WatchKey} already retrieved from the {@link
+   * #watchService}; may be {@code null}
+   *
+   * @return {@code true} if a changelog fragment appeared,
+   * disappeared or changed; {@code false} otherwise
+   *
+   * @exception IOException if a directory could not be registered or
+   * traversed
+   *
+   * @exception ClosedWatchServiceException if this {@link
+   * ChangeLogDirectoryWatcher} has been {@linkplain #close() closed}
+   */
+  private final synchronized boolean update(WatchKey key) throws IOException {
+    boolean targetChanged = false;
+    boolean structureChanged = false;
+    while (key != null) {
+      final Path directory = this.registrations.get(key);
+      for (final WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          // Events were lost; assume the worst.
+          targetChanged = true;
+          structureChanged = true;
+        } else if (directory != null) {
+          final Path path = directory.resolve((Path)event.context());
+          if (this.ancestors.contains(path)) {
+            structureChanged = true;
+          }
+          for (final Target target : this.targets) {
+            if (target.isMatchedBy(path)) {
+              targetChanged = true;
+            } else if (target.pattern != null && path.startsWith(target.path)) {
+              // Possibly a new or deleted subdirectory of a glob's
+              // base directory.
+              structureChanged = true;
+            }
+          }
+        }
+      }
+      if (!key.reset()) {
+        // The directory is gone.
+        this.registrations.remove(key);
+        structureChanged = true;
+      }
+      key = this.watchService.poll();
+    }
+    if (!structureChanged) {
+      // A watched directory that was deleted (by "mvn clean", say)
+      // and then re-created produces no event of its own.
+      for (final Path root : this.roots) {
+        if (!this.registrations.containsValue(root) && Files.isDirectory(root)) {
+          structureChanged = true;
+          break;
+        }
+      }
+    }
+    boolean presenceChanged = false;
+    if (targetChanged || structureChanged) {
+      this.register();
+      final List<Path> present = this.discover();
+      presenceChanged = !present.equals(this.present);
+      this.present = present;
+    }
+    return targetChanged || presenceChanged;
+  }
+
+  /**
+   * Repeatedly {@linkplain #poll(long, TimeUnit) processes file
+   * system events} until this {@link ChangeLogDirectoryWatcher} is
+   * {@linkplain #close() closed} or the current thread is
+   * interrupted.
+   *
+   * <p>Errors encountered while regenerating the aggregate changelog
+   * do not stop this method; the most recent one is retained so that
+   * it may be {@linkplain #takeFailure() reported} later.</p>
+   */
+  @Override
+  public void run() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          this.poll(1L, TimeUnit.SECONDS);
+        } catch (final IOException | RuntimeException notFatal) {
+          if (notFatal instanceof ClosedWatchServiceException) {
+            throw (ClosedWatchServiceException)notFatal;
+          }
+          this.failure = notFatal;
+        }
+      }
+    } catch (final ClosedWatchServiceException closed) {
+      // We're done.
+    } catch (final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops watching the directories supplied at construction time.
+   *
+   * @exception IOException if an error occurs
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.watchService.close();
+  }
+
+  /**
+   * Registers every {@linkplain #ancestors necessary directory}, and
+   * every directory within each {@linkplain #subtrees glob base
+   * directory}, that exists and is not already registered with the
+   * {@link #watchService}.
+   *
+   * <p>This method must be called while holding this object's
+   * monitor.</p>
+   *
+   * @exception IOException if a directory could not be registered
+   */
+  private final void register() throws IOException {
+    assert Thread.holdsLock(this);
+    final Set<Path> registered = new HashSet<Path>(this.registrations.values());
+    for (final Path directory : this.ancestors) {
+      this.register(directory, registered);
+    }
+    for (final Path subtree : this.subtrees) {
+      if (Files.isDirectory(subtree)) {
+        Files.walkFileTree(subtree, new SimpleFileVisitor<Path>() {
+            @Override
+            public final FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) throws IOException {
+              register(directory, registered);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+      }
+    }
+  }
+
+  private final void register(final Path directory, final Set<Path> registered) throws IOException {
+    assert Thread.holdsLock(this);
+    if (!registered.contains(directory) && Files.isDirectory(directory)) {
+      final WatchKey key = directory.register(this.watchService,
+                                              StandardWatchEventKinds.ENTRY_CREATE,
+                                              StandardWatchEventKinds.ENTRY_DELETE,
+                                              StandardWatchEventKinds.ENTRY_MODIFY);
+      this.registrations.put(key, directory);
+      registered.add(directory);
+    }
+  }
+
+  /**
+   * Returns the paths of the changelog files that currently exist as
+   * readable regular files, in {@linkplain #targets target} order,
+   * with the matches of each glob sorted in natural order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, immutable {@link List} of {@link
+   * Path}s
+   *
+   * @exception IOException if a directory could not be traversed
+   */
+  private final List<Path> discover() throws IOException {
+    final Set<Path> returnValue = new LinkedHashSet<Path>();
+    for (final Target target : this.targets) {
+      if (target.pattern == null) {
+        if (Files.isRegularFile(target.path) && Files.isReadable(target.path)) {
+          returnValue.add(target.path);
+        }
+      } else {
+        for (final String name : target.pattern.list(target.root.toFile())) {
+          returnValue.add(target.root.resolve(name).normalize());
+        }
+      }
+    }
+    return Collections.unmodifiableList(new ArrayList<Path>(returnValue));
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final List<URL> toUrls(final List<? extends URL> leadingUrls, final List<? extends Path> paths) throws IOException {
+    final List<URL> returnValue = new ArrayList<URL>(leadingUrls.size() + paths.size());
+    returnValue.addAll(leadingUrls);
+    try {
+      for (final Path path : paths) {
+        returnValue.add(path.toUri().toURL());
+      }
+    } catch (final MalformedURLException wrapMe) {
+      throw new IOException(wrapMe);
+    }
+    return Collections.unmodifiableList(returnValue);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A description of a changelog file, or of a glob matching
+   * changelog files, within a watched directory.
+   */
+  private static final class Target {
+
+    /**
+     * The watched directory.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Path root;
+
+    /**
+     * The path of the changelog file, or of the {@linkplain
+     * ResourceNamePattern#getBase() base} directory of the {@link
+     * #pattern}.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final Path path;
+
+    /**
+     * The glob matching changelog files, or {@code null} if this
+     * {@link Target} describes a single changelog file.
+     */
+    private final ResourceNamePattern pattern;
+
+    private Target(final Path root, final Path path, final ResourceNamePattern pattern) {
+      super();
+      this.root = root;
+      this.path = path;
+      this.pattern = pattern;
+    }
+
+    private final boolean isMatchedBy(final Path candidate) {
+      if (this.pattern == null) {
+        return this.path.equals(candidate);
+      }
+      if (!candidate.startsWith(this.path)) {
+        return false;
+      }
+      final StringBuilder name = new StringBuilder();
+      for (final Path segment : this.root.relativize(candidate)) {
+        if (name.length() > 0) {
+          name.append('/');
+        }
+        name.append(segment.toString());
+      }
+      return this.pattern.matches(name.toString());
+    }
+
+  }
+
+}
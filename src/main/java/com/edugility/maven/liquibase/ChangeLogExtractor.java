@@ -0,0 +1,479 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Copies changelogs found in an archive, together with the entries
+ * alongside them, into a directory on the filesystem, so that they
+ * can be included by way of {@code file:} {@link URL}s rather than
+ * {@code jar:} {@link URL}s.
+ *
+ * <p>For each changelog, every non-directory entry in the same
+ * archive directory as the changelog, or beneath it, is copied, so
+ * that changelogs and SQL files that it includes relative to itself
+ * are available alongside it.  A changelog at the root of an
+ * archive is copied by itself.  An entry is copied only if no file
+ * of the same {@linkplain File#length() length} and {@link CRC32}
+ * is already in place, and is moved into place atomically where the
+ * filesystem supports it.</p>
+ *
+ * <p>Entries are copied by way of {@linkplain
+ * FileChannel#transferFrom(ReadableByteChannel, long, long) channel
+ * transfers} into the target file.  Since most archive entries are
+ * compressed, they must still be inflated on their way through,
+ * unless a {@link ChangeLogCache} is in use, in which case they are
+ * inflated into the cache at most once and thereafter {@linkplain
+ * FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)
+ * transferred} from file to file.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setExtractChangeLogs(boolean)
+ */
+final class ChangeLogExtractor {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ChangeLogStatistics} in which to record counters.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final ChangeLogStatistics statistics;
+
+  /**
+   * The {@link ChangeLogCache} from which entries will be copied.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final ChangeLogCache cache;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogExtractor}.
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record the number of entries copied and left in place; may be
+   * {@code null}
+   *
+   * @param cache a {@link ChangeLogCache} from which entries will be
+   * copied rather than from the archives containing them; may be
+   * {@code null}
+   */
+  ChangeLogExtractor(final ChangeLogStatistics statistics, final ChangeLogCache cache) {
+    super();
+    this.statistics = statistics;
+    this.cache = cache;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Copies the changelogs in the supplied {@code archive} identified
+   * by the supplied {@code jar:} {@link URL}s, along with the entries
+   * alongside them, into the supplied {@code directory}, and returns
+   * {@code file:} {@link URL}s for the copied changelogs in the same
+   * order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Any supplied {@link URL} that does not identify an entry in
+   * {@code archive} is returned as is.</p>
+   *
+   * @param archive the archive containing the changelogs; must not be
+   * {@code null}
+   *
+   * @param urls {@code jar:} {@link URL}s of the form {@code
+   * jar:<archive URL>!/<encoded entry name>}, as returned by {@link
+   * ChangeLogScanner#toURLs(File, Collection)}; must not be {@code
+   * null}
+   *
+   * @param directory the directory into which entries will be copied
+   * under their entry names; must not be {@code null}; will be created
+   * if necessary
+   *
+   * @return a non-{@code null} {@link List} of {@link URL}s
+   *
+   * @exception IllegalArgumentException if any parameter is {@code
+   * null}
+   *
+   * @exception IOException if an entry could not be copied
+   */
+  final List<URL> extract(final File archive, final Collection<? extends URL> urls, final File directory) throws IOException {
+    if (archive == null) {
+      throw new IllegalArgumentException("archive", new NullPointerException("archive"));
+    }
+    if (urls == null) {
+      throw new IllegalArgumentException("urls", new NullPointerException("urls"));
+    }
+    if (directory == null) {
+      throw new IllegalArgumentException("directory", new NullPointerException("directory"));
+    }
+    final String prefix = ChangeLogScanner.toURLPrefix(archive);
+    final Path root = directory.toPath().toAbsolutePath().normalize();
+    final List<URL> returnValue = new ArrayList<URL>(urls.size());
+    final Set<String> changeLogNames = new LinkedHashSet<String>();
+    final Set<String> directoryNames = new LinkedHashSet<String>();
+    for (final URL url : urls) {
+      final String externalForm = url == null ? null : url.toExternalForm();
+      if (externalForm != null && externalForm.startsWith(prefix) && externalForm.length() > prefix.length()) {
+        String entryName;
+        try {
+          entryName = ChangeLogScanner.decodeEntryName(externalForm.substring(prefix.length()));
+        } catch (final IllegalArgumentException malformed) {
+          entryName = null;
+        }
+        final Path target = entryName == null ? null : resolve(root, entryName);
+        if (target == null) {
+          returnValue.add(url);
+        } else {
+          changeLogNames.add(entryName);
+          final int lastSlash = entryName.lastIndexOf('/');
+          if (lastSlash > 0) {
+            directoryNames.add(entryName.substring(0, lastSlash + 1));
+          }
+          returnValue.add(target.toUri().toURL());
+        }
+      } else {
+        returnValue.add(url);
+      }
+    }
+    if (!changeLogNames.isEmpty() && (this.cache == null || !this.extractFromCache(archive, root, changeLogNames, directoryNames))) {
+      ZipFile zipFile = null;
+      try {
+        zipFile = new ZipFile(archive);
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          final ZipEntry entry = entries.nextElement();
+          if (entry != null && !entry.isDirectory()) {
+            final String entryName = entry.getName();
+            if (changeLogNames.contains(entryName) || isBeneath(entryName, directoryNames)) {
+              final Path target = resolve(root, entryName);
+              if (target != null) {
+                this.copy(zipFile, entry, target);
+              }
+            }
+          }
+        }
+      } finally {
+        if (zipFile != null) {
+          try {
+            zipFile.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Copies the changelogs bearing the supplied names, and the entries
+   * beneath the supplied directory names, from copies held in this
+   * {@link ChangeLogExtractor}'s {@link ChangeLogCache} into the
+   * supplied {@code root} directory.
+   *
+   * <p>If the cache cannot be used, for example because an entry was
+   * evicted from it by another process, {@code false} is returned so
+   * that entries may be copied from the archive instead.</p>
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @param root the directory into which entries will be copied; must
+   * not be {@code null}
+   *
+   * @param changeLogNames the names of the changelog entries; must
+   * not be {@code null}
+   *
+   * @param directoryNames the names of the directories whose entries
+   * should also be copied, each ending with a slash; must not be
+   * {@code null}
+   *
+   * @return {@code true} if all entries were copied; {@code false}
+   * otherwise
+   */
+  private final boolean extractFromCache(final File archive, final Path root, final Collection<? extends String> changeLogNames, final Collection<? extends String> directoryNames) {
+    assert this.cache != null;
+    try {
+      final List<String> entryNames = new ArrayList<String>();
+      for (final String entryName : this.cache.getEntryNames(archive, null)) {
+        if (changeLogNames.contains(entryName) || isBeneath(entryName, directoryNames)) {
+          entryNames.add(entryName);
+        }
+      }
+      final Map<String, ChangeLogCache.CachedEntry> entries = this.cache.getEntries(archive, entryNames, this.statistics);
+      for (final Map.Entry<String, ChangeLogCache.CachedEntry> entry : entries.entrySet()) {
+        final Path target = resolve(root, entry.getKey());
+        if (target != null) {
+          this.copy(entry.getValue(), target);
+        }
+      }
+      return true;
+    } catch (final IOException cacheUnusable) {
+      if (this.statistics != null) {
+        this.statistics.increment("sharedCacheFailures");
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Copies the supplied {@link ChangeLogCache.CachedEntry} to the
+   * supplied {@link Path} unless a file with the same length and
+   * {@link CRC32} is already there.
+   *
+   * @param entry the {@link ChangeLogCache.CachedEntry} to copy; must
+   * not be {@code null}
+   *
+   * @param target the {@link Path} to copy to; must not be {@code
+   * null}
+   *
+   * @exception IOException if the entry could not be copied
+   */
+  private final void copy(final ChangeLogCache.CachedEntry entry, final Path target) throws IOException {
+    if (isUnchanged(entry.getSize(), entry.getCrc(), target)) {
+      if (this.statistics != null) {
+        this.statistics.increment("changeLogEntriesUnchanged");
+      }
+      return;
+    }
+    FileChannel in = null;
+    try {
+      in = FileChannel.open(entry.getPath(), StandardOpenOption.READ);
+      ChangeLogFiles.write(in, target);
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    if (this.statistics != null) {
+      this.statistics.increment("changeLogEntriesExtracted");
+    }
+  }
+
+  /**
+   * Copies the supplied {@link ZipEntry} to the supplied {@link
+   * Path} unless a file with the same length and {@link CRC32} is
+   * already there.
+   *
+   * @param zipFile the {@link ZipFile} containing {@code entry}; must
+   * not be {@code null}
+   *
+   * @param entry the {@link ZipEntry} to copy; must not be {@code
+   * null}
+   *
+   * @param target the {@link Path} to copy to; must not be {@code
+   * null}
+   *
+   * @exception IOException if the entry could not be copied
+   */
+  private final void copy(final ZipFile zipFile, final ZipEntry entry, final Path target) throws IOException {
+    if (isUnchanged(entry.getSize(), entry.getCrc(), target)) {
+      if (this.statistics != null) {
+        this.statistics.increment("changeLogEntriesUnchanged");
+      }
+      return;
+    }
+    InputStream stream = null;
+    ReadableByteChannel in = null;
+    try {
+      stream = zipFile.getInputStream(entry);
+      in = Channels.newChannel(stream);
+      ChangeLogFiles.write(in, target);
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    if (this.statistics != null) {
+      this.statistics.increment("changeLogEntriesExtracted");
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns {@code true} if a regular file with the supplied size and
+   * CRC-32 already exists at the supplied {@link Path}.
+   *
+   * @param size the expected size, or {@code -1} if it is not known
+   *
+   * @param crc the expected CRC-32, or {@code -1} if it is not known
+   *
+   * @param target the {@link Path} to compare it to; must not be
+   * {@code null}
+   *
+   * @return {@code true} if {@code target} need not be copied again;
+   * {@code false} otherwise
+   *
+   * @exception IOException if {@code target} could not be read
+   */
+  private static final boolean isUnchanged(final long size, final long crc, final Path target) throws IOException {
+    if (crc < 0L || size < 0L || !Files.isRegularFile(target) || Files.size(target) != size) {
+      return false;
+    }
+    final CRC32 checksum = new CRC32();
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(target, StandardOpenOption.READ);
+      final ByteBuffer buffer = ByteBuffer.allocate(8192);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        checksum.update(buffer.array(), 0, buffer.limit());
+        buffer.clear();
+      }
+    } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    return checksum.getValue() == crc;
+  }
+
+  /**
+   * Returns {@code true} if the supplied entry name lies beneath any
+   * of the supplied directory names, each of which ends with a
+   * slash.
+   *
+   * @param entryName the entry name to check; must not be {@code
+   * null}
+   *
+   * @param directoryNames the directory names; must not be {@code
+   * null}
+   *
+   * @return {@code true} if {@code entryName} lies beneath one of
+   * {@code directoryNames}; {@code false} otherwise
+   */
+  private static final boolean isBeneath(final String entryName, final Collection<? extends String> directoryNames) {
+    for (final String directoryName : directoryNames) {
+      if (entryName.startsWith(directoryName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the {@link Path} beneath the supplied {@code root} to
+   * which the entry with the supplied name should be copied, or
+   * {@code null} if the entry name would lead outside of {@code
+   * root}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param root the absolute, normalized directory {@link Path} into
+   * which entries are copied; must not be {@code null}
+   *
+   * @param entryName the entry name; must not be {@code null}
+   *
+   * @return a {@link Path}, or {@code null}
+   */
+  private static final Path resolve(final Path root, final String entryName) {
+    final Path returnValue;
+    try {
+      returnValue = root.resolve(entryName).normalize();
+    } catch (final InvalidPathException notARelativePath) {
+      return null;
+    }
+    if (returnValue.equals(root) || !returnValue.startsWith(root)) {
+      return null;
+    }
+    return returnValue;
+  }
+
+}
@@ -0,0 +1,262 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Replaces files atomically by way of temporary files written
+ * alongside them, and computes the SHA-256 digests that name and
+ * fingerprint them, on behalf of the classes in this package that
+ * keep files on disk.
+ *
+ * <p>A file is replaced by {@linkplain #createTemporaryFile(Path)
+ * creating a temporary file} next to it, writing that temporary
+ * file completely, and then {@linkplain #moveIntoPlace(Path, Path)
+ * moving it into place}, so that a concurrent reader, whether in
+ * this Java Virtual Machine or another, sees either the old file or
+ * the new one but never a partially written one.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AggregateChangeLogGenerator
+ *
+ * @see ChangeLogCache
+ *
+ * @see ChangeLogExtractor
+ */
+final class ChangeLogFiles {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The hexadecimal digits, in lower case, used by {@link
+   * #toHexString(byte[])}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogFiles}.
+   */
+  private ChangeLogFiles() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Creates, along with any missing parent directories, an empty
+   * temporary file in the same directory as the supplied {@link
+   * Path}, so that it can later be {@linkplain #moveIntoPlace(Path,
+   * Path) moved over it} without leaving its file system.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The caller is responsible for deleting the temporary file if
+   * it is never moved into place.</p>
+   *
+   * @param target the {@link Path} that the temporary file will
+   * eventually replace; must not be {@code null} and must have a
+   * parent
+   *
+   * @return the {@link Path} of a new, empty temporary file; never
+   * {@code null}
+   *
+   * @exception IOException if the temporary file could not be
+   * created
+   */
+  static final Path createTemporaryFile(final Path target) throws IOException {
+    final Path parent = target.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    // File#createTempFile(), unlike Files#createTempFile(), leaves
+    // the permissions to the umask, so the file keeps them once it
+    // is moved into place.
+    return File.createTempFile(target.getFileName() + ".", ".tmp", parent.toFile()).toPath();
+  }
+
+  /**
+   * Moves the supplied temporary file over the supplied target,
+   * atomically if the file system permits it.
+   *
+   * @param temporaryFile the {@link Path} to move; must not be {@code
+   * null}
+   *
+   * @param target the {@link Path} to replace; must not be {@code
+   * null}
+   *
+   * @exception IOException if the move failed
+   *
+   * @see #createTemporaryFile(Path)
+   */
+  static final void moveIntoPlace(final Path temporaryFile, final Path target) throws IOException {
+    try {
+      Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final AtomicMoveNotSupportedException notSupported) {
+      Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Replaces the supplied target with a file containing exactly the
+   * supplied bytes.
+   *
+   * @param bytes the bytes to write; must not be {@code null}
+   *
+   * @param target the {@link Path} to replace; must not be {@code
+   * null}
+   *
+   * @exception IOException if {@code target} could not be written
+   */
+  static final void write(final byte[] bytes, final Path target) throws IOException {
+    final Path temporaryFile = createTemporaryFile(target);
+    boolean moved = false;
+    try {
+      Files.write(temporaryFile, bytes);
+      moveIntoPlace(temporaryFile, target);
+      moved = true;
+    } finally {
+      if (!moved) {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+  }
+
+  /**
+   * Replaces the supplied target with a file containing everything
+   * that remains to be read from the supplied {@link
+   * ReadableByteChannel}.
+   *
+   * <p>The supplied {@link ReadableByteChannel} is not closed.</p>
+   *
+   * @param in the {@link ReadableByteChannel} to read; must not be
+   * {@code null}
+   *
+   * @param target the {@link Path} to replace; must not be {@code
+   * null}
+   *
+   * @exception IOException if {@code in} could not be read or {@code
+   * target} could not be written
+   */
+  static final void write(final ReadableByteChannel in, final Path target) throws IOException {
+    final Path temporaryFile = createTemporaryFile(target);
+    boolean moved = false;
+    try {
+      FileChannel out = null;
+      try {
+        out = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        long position = 0L;
+        long transferred;
+        while ((transferred = out.transferFrom(in, position, Long.MAX_VALUE - position)) > 0L) {
+          position += transferred;
+        }
+      } finally {
+        if (out != null) {
+          try {
+            out.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+      moveIntoPlace(temporaryFile, target);
+      moved = true;
+    } finally {
+      if (!moved) {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+  }
+
+  /**
+   * Returns a new SHA-256 {@link MessageDigest}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new SHA-256 {@link MessageDigest}; never {@code null}
+   *
+   * @exception IllegalStateException if, against the requirements of
+   * the Java platform, SHA-256 is not available
+   */
+  static final MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException everyJavaPlatformHasSha256) {
+      throw new IllegalStateException(everyJavaPlatformHasSha256);
+    }
+  }
+
+  /**
+   * Returns the supplied bytes as a string of lower case hexadecimal
+   * digits, two per byte.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param bytes the bytes to render; must not be {@code null}
+   *
+   * @return a non-{@code null} hexadecimal string
+   */
+  static final String toHexString(final byte[] bytes) {
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+}
@@ -0,0 +1,450 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.net.URL;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Inlines the change sets of Liquibase changelogs, streamed through
+ * StAX, into the body of a single self-contained aggregate
+ * changelog.
+ *
+ * <p>Every inlined {@code <changeSet>} that does not already declare
+ * a {@code logicalFilePath} is given one: the {@code
+ * logicalFilePath} of its changelog if there is one, or else the
+ * path by which Liquibase would have known its changelog had it
+ * been {@code <include>}d.  Change set identifiers, and therefore
+ * the rows already recorded in a database's {@code
+ * DATABASECHANGELOG} table, are thus unaffected by flattening.
+ * Liquibase computes change set checksums from the parsed changes,
+ * not from their textual form, so these too are unaffected.</p>
+ *
+ * <p>Changelog-level {@code <property>} elements are copied as-is.
+ * Nested {@code <include>}s are inlined recursively where they can
+ * be resolved; non-relative {@code <include>}s and {@code
+ * <includeAll>}s that cannot be are copied as-is, since Liquibase
+ * resolves them against its classpath no matter which changelog
+ * contains them.  A changelog that cannot be faithfully inlined,
+ * such as one with changelog-level preconditions, is {@code
+ * <include>}d instead.  Each changelog is inlined at most once.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AggregateChangeLogGenerator#setFlatten(boolean)
+ */
+final class ChangeLogFlattener {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  private static final String LS = System.getProperty("line.separator", "\n");
+
+  /**
+   * The namespace of Liquibase changelog elements, which is the
+   * default namespace of the aggregate changelog.
+   */
+  private static final String DATABASE_CHANGE_LOG_NAMESPACE_URI = "http://www.liquibase.org/xml/ns/dbchangelog";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link XMLInputFactory} used to read changelogs.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLInputFactory xmlInputFactory;
+
+  /**
+   * The {@link XMLOutputFactory} used to write inlined changelog
+   * content.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLOutputFactory xmlOutputFactory;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogFlattener}.
+   */
+  ChangeLogFlattener() {
+    super();
+    this.xmlInputFactory = XMLInputFactory.newInstance();
+    this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    this.xmlOutputFactory = XMLOutputFactory.newInstance();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Writes the inlined contents of the changelogs located at the
+   * supplied {@link URL}s, in order, to the supplied {@link Writer},
+   * which is positioned inside the {@code <databaseChangeLog>}
+   * element of an aggregate changelog.
+   *
+   * <p>The supplied {@link Writer} is neither flushed nor closed by
+   * this method.</p>
+   *
+   * @param resources the changelog {@link URL}s to inline; must not
+   * be {@code null}
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IOException if an error occurs while writing
+   */
+  final void flatten(final Collection<? extends URL> resources, final Writer writer) throws IOException {
+    assert resources != null;
+    assert writer != null;
+    final Set<String> visited = new HashSet<String>();
+    try {
+      for (final URL resource : resources) {
+        if (resource != null && visited.add(resource.toExternalForm())) {
+          // Inline into a buffer first so that a changelog that turns
+          // out not to be flattenable partway through can be
+          // included instead.
+          final Set<String> attemptVisited = new HashSet<String>(visited);
+          final StringWriter buffer = new StringWriter();
+          final XMLStreamWriter bufferWriter = this.xmlOutputFactory.createXMLStreamWriter(buffer);
+          final boolean inlined = this.inline(resource, resource.toExternalForm(), bufferWriter, attemptVisited);
+          bufferWriter.flush();
+          if (inlined) {
+            visited.addAll(attemptVisited);
+            writer.write(buffer.toString());
+          } else {
+            final XMLStreamWriter includeWriter = this.xmlOutputFactory.createXMLStreamWriter(writer);
+            includeWriter.writeCharacters("  ");
+            includeWriter.writeEmptyElement("include");
+            includeWriter.writeAttribute("file", resource.toExternalForm());
+            includeWriter.writeCharacters(LS);
+            includeWriter.flush();
+          }
+        }
+      }
+    } catch (final XMLStreamException wrapMe) {
+      throw new IOException(wrapMe);
+    }
+  }
+
+  /**
+   * Copies the change sets, properties and includes of the changelog
+   * located at the supplied {@link URL} to the supplied {@link
+   * XMLStreamWriter}, inlining nested includes, and returns {@code
+   * true} if it could be faithfully inlined.
+   *
+   * @param url the {@link URL} of the changelog; must not be {@code
+   * null}
+   *
+   * @param path the path by which Liquibase would have known the
+   * changelog; must not be {@code null}
+   *
+   * @param out the {@link XMLStreamWriter} to write to; must not be
+   * {@code null}
+   *
+   * @param visited the {@linkplain URL#toExternalForm() external
+   * forms} of the {@link URL}s of the changelogs inlined so far; must
+   * not be {@code null}
+   *
+   * @return {@code true} if the changelog was inlined; {@code false}
+   * if it must be included instead, in which case the contents of
+   * {@code out} are undefined
+   *
+   * @exception IOException if the changelog exists but could not be
+   * read
+   *
+   * @exception XMLStreamException if an error occurs while writing
+   */
+  private final boolean inline(final URL url, final String path, final XMLStreamWriter out, final Set<String> visited) throws IOException, XMLStreamException {
+    assert url != null;
+    assert path != null;
+    assert out != null;
+    assert visited != null;
+    if (!url.getPath().endsWith(".xml")) {
+      return false;
+    }
+    InputStream stream = null;
+    XMLStreamReader reader = null;
+    try {
+      stream = new BufferedInputStream(ChangeLogScanner.openStream(url));
+      reader = this.xmlInputFactory.createXMLStreamReader(stream);
+      while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+
+      }
+      if (!reader.isStartElement() || !"databaseChangeLog".equals(reader.getLocalName())) {
+        return false;
+      }
+      final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        final String prefix = reader.getNamespacePrefix(i);
+        namespaces.put(prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix, reader.getNamespaceURI(i));
+      }
+      final String changeLogLogicalFilePath = reader.getAttributeValue(null, "logicalFilePath");
+      while (reader.hasNext()) {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.END_ELEMENT) {
+          break;
+        } else if (event == XMLStreamConstants.START_ELEMENT) {
+          final String localName = reader.getLocalName();
+          if ("changeSet".equals(localName)) {
+            String logicalFilePath = null;
+            if (reader.getAttributeValue(null, "logicalFilePath") == null) {
+              logicalFilePath = changeLogLogicalFilePath == null ? path : changeLogLogicalFilePath;
+            }
+            copy(reader, out, namespaces, logicalFilePath);
+          } else if ("property".equals(localName)) {
+            copy(reader, out, namespaces, null);
+          } else if ("include".equals(localName)) {
+            final String file = reader.getAttributeValue(null, "file");
+            final String relativeToChangelogFile = reader.getAttributeValue(null, "relativeToChangelogFile");
+            final boolean relative = Boolean.parseBoolean(relativeToChangelogFile);
+            final URL include = ChangeLogIncludeGraph.resolve(url, file, relativeToChangelogFile, false);
+            if (include == null || !file.endsWith(".xml")) {
+              if (relative) {
+                return false;
+              }
+              copy(reader, out, namespaces, null);
+            } else {
+              if (visited.add(include.toExternalForm())) {
+                final String includePath;
+                if (relative) {
+                  includePath = path.substring(0, path.lastIndexOf('/') + 1) + file;
+                } else {
+                  includePath = file;
+                }
+                if (!this.inline(include, includePath, out, visited)) {
+                  return false;
+                }
+              }
+              skip(reader);
+            }
+          } else if ("includeAll".equals(localName)) {
+            if (Boolean.parseBoolean(reader.getAttributeValue(null, "relativeToChangelogFile"))) {
+              return false;
+            }
+            copy(reader, out, namespaces, null);
+          } else {
+            return false;
+          }
+        }
+      }
+      return true;
+    } catch (final FileNotFoundException missing) {
+      // Let Liquibase report it.
+      return false;
+    } catch (final XMLStreamException malformed) {
+      // Let Liquibase report it.
+      return false;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (final XMLStreamException nothingWeCanDo) {
+
+        }
+      }
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Copies the element at which the supplied {@link XMLStreamReader}
+   * is positioned, and everything inside it, to the supplied {@link
+   * XMLStreamWriter} as a child of the aggregate changelog's {@code
+   * <databaseChangeLog>} element, leaving the reader positioned at
+   * its end.
+   *
+   * @param reader the {@link XMLStreamReader} to read from; must not
+   * be {@code null} and must be positioned at a start element
+   *
+   * @param out the {@link XMLStreamWriter} to write to; must not be
+   * {@code null}
+   *
+   * @param namespaces the namespace declarations in effect on the
+   * element's source changelog's root element, indexed by prefix;
+   * must not be {@code null}
+   *
+   * @param logicalFilePath a {@code logicalFilePath} attribute value
+   * to add to the copied element; may be {@code null}
+   *
+   * @exception XMLStreamException if an error occurs
+   */
+  private static final void copy(final XMLStreamReader reader, final XMLStreamWriter out, final Map<String, String> namespaces, final String logicalFilePath) throws XMLStreamException {
+    assert reader != null;
+    assert reader.isStartElement();
+    assert out != null;
+    assert namespaces != null;
+    out.writeCharacters("  ");
+    int depth = 0;
+    int event = XMLStreamConstants.START_ELEMENT;
+    do {
+      switch (event) {
+      case XMLStreamConstants.START_ELEMENT:
+        final String prefix = reader.getPrefix() == null ? XMLConstants.DEFAULT_NS_PREFIX : reader.getPrefix();
+        final String namespaceURI = reader.getNamespaceURI();
+        if (namespaceURI == null || namespaceURI.isEmpty()) {
+          out.writeStartElement(reader.getLocalName());
+        } else {
+          out.writeStartElement(prefix, reader.getLocalName(), namespaceURI);
+        }
+        final Map<String, String> declarations = new LinkedHashMap<String, String>();
+        if (depth == 0) {
+          // Carry over the declarations in scope in the source
+          // changelog that the aggregate changelog does not already
+          // make.
+          for (final Map.Entry<String, String> entry : namespaces.entrySet()) {
+            final String declaredPrefix = entry.getKey();
+            final String declaredNamespaceURI = entry.getValue();
+            if (!(XMLConstants.DEFAULT_NS_PREFIX.equals(declaredPrefix) && DATABASE_CHANGE_LOG_NAMESPACE_URI.equals(declaredNamespaceURI)) &&
+                !("xsi".equals(declaredPrefix) && XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(declaredNamespaceURI))) {
+              declarations.put(declaredPrefix, declaredNamespaceURI);
+            }
+          }
+          if (!namespaces.containsKey(XMLConstants.DEFAULT_NS_PREFIX)) {
+            // The source changelog's unprefixed elements were in no
+            // namespace; keep them that way.
+            declarations.put(XMLConstants.DEFAULT_NS_PREFIX, XMLConstants.NULL_NS_URI);
+          }
+        }
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+          final String declaredPrefix = reader.getNamespacePrefix(i);
+          declarations.put(declaredPrefix == null ? XMLConstants.DEFAULT_NS_PREFIX : declaredPrefix, reader.getNamespaceURI(i) == null ? XMLConstants.NULL_NS_URI : reader.getNamespaceURI(i));
+        }
+        for (final Map.Entry<String, String> declaration : declarations.entrySet()) {
+          if (XMLConstants.DEFAULT_NS_PREFIX.equals(declaration.getKey())) {
+            out.writeDefaultNamespace(declaration.getValue());
+          } else {
+            out.writeNamespace(declaration.getKey(), declaration.getValue());
+          }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+          final String attributeNamespaceURI = reader.getAttributeNamespace(i);
+          if (attributeNamespaceURI == null || attributeNamespaceURI.isEmpty()) {
+            out.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+          } else {
+            out.writeAttribute(reader.getAttributePrefix(i), attributeNamespaceURI, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+          }
+        }
+        if (depth == 0 && logicalFilePath != null) {
+          out.writeAttribute("logicalFilePath", logicalFilePath);
+        }
+        depth++;
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        out.writeEndElement();
+        depth--;
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+        out.writeCharacters(reader.getText());
+        break;
+      case XMLStreamConstants.CDATA:
+        out.writeCData(reader.getText());
+        break;
+      case XMLStreamConstants.COMMENT:
+        out.writeComment(reader.getText());
+        break;
+      default:
+        break;
+      }
+      if (depth > 0) {
+        event = reader.next();
+      }
+    } while (depth > 0);
+    out.writeCharacters(LS);
+  }
+
+  private static final void skip(final XMLStreamReader reader) throws XMLStreamException {
+    assert reader != null;
+    assert reader.isStartElement();
+    int depth = 1;
+    while (depth > 0) {
+      final int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,809 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A graph of Liquibase changelogs and the changelogs that they
+ * {@code <include>} or {@code <includeAll>}, built by streaming
+ * through each changelog with StAX, that can produce a deduplicated
+ * list of changelogs to include in an aggregate changelog.
+ *
+ * <p>A changelog whose {@code <databaseChangeLog>} element contains
+ * nothing but {@code <include>} and {@code <includeAll>} elements,
+ * all of which can be resolved, is an <em>index</em>: it contributes
+ * nothing of its own, and so is replaced by the changelogs it
+ * includes, in document order.  Every other changelog is included
+ * as-is, and everything reachable from it is considered to be
+ * covered by it.  The resulting list names each changelog at most
+ * once, at the point where Liquibase itself would first have reached
+ * it, and never names a changelog that an earlier one in the list
+ * already reaches.  So a changelog shared by several dependencies
+ * that reach it through indices is parsed only once.  Changelogs
+ * that hold change sets of their own are not rewritten, however, so
+ * a changelog that several of them include is still parsed by
+ * Liquibase once for each.</p>
+ *
+ * <p>An {@code <include>} whose {@code relativeToChangelogFile}
+ * attribute is {@code true} is resolved against the {@link URL} of
+ * the changelog containing it.  Any other {@code <include>} names a
+ * classpath resource, and is resolved, as a {@link ClassLoader}
+ * would resolve it, against the first of the roots of the supplied
+ * changelogs that contains it: each archive containing one, and each
+ * directory containing one under a name that is also the name of a
+ * changelog found in an archive.  {@code <includeAll>} directories
+ * are resolved in the same way, and are listed recursively and in
+ * natural order, as Liquibase lists them.  A changelog with an
+ * {@code <include>} or {@code <includeAll>} that cannot be resolved
+ * is never treated as an index; if a {@link Log} has been supplied,
+ * the reason is logged at debug level.</p>
+ *
+ * <p>Because the changelogs reached through an index are included
+ * by their own {@link URL}s rather than by the path written in the
+ * index, change sets in them that do not declare a {@code
+ * logicalFilePath} are identified by Liquibase using that {@link
+ * URL}.</p>
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AggregateChangeLogGenerator#setResolveIncludes(boolean)
+ */
+final class ChangeLogIncludeGraph {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link XMLInputFactory} used to parse changelogs.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final XMLInputFactory xmlInputFactory;
+
+  /**
+   * The {@link Node}s parsed so far, indexed by the {@linkplain
+   * URL#toExternalForm() external form} of their {@link URL}s.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, Node> nodes;
+
+  /**
+   * The {@link Root}s against which classpath includes are resolved,
+   * in order.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #resolve(Collection)
+   */
+  private final List<Root> classpath;
+
+  /**
+   * The {@link Log} to which changelogs that cannot be expanded are
+   * reported.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final Log log;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new, empty {@link ChangeLogIncludeGraph}.
+   */
+  ChangeLogIncludeGraph() {
+    this(null);
+  }
+
+  /**
+   * Creates a new, empty {@link ChangeLogIncludeGraph}.
+   *
+   * @param log the {@link Log} to which changelogs that cannot be
+   * expanded will be reported at debug level; may be {@code null}
+   */
+  ChangeLogIncludeGraph(final Log log) {
+    super();
+    this.xmlInputFactory = XMLInputFactory.newInstance();
+    this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    this.nodes = new HashMap<String, Node>();
+    this.classpath = new ArrayList<Root>();
+    this.log = log;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns a deduplicated list of the changelogs that an aggregate
+   * changelog should include in place of the supplied {@code
+   * roots}, in the order in which Liquibase would first reach them.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The roots of the supplied changelogs become the classpath
+   * against which their classpath includes are resolved.</p>
+   *
+   * @param roots the changelog {@link URL}s that would otherwise be
+   * included, in order; may be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of changelog {@link URL}s
+   *
+   * @exception IOException if a changelog could not be read
+   */
+  final List<URL> resolve(final Collection<? extends URL> roots) throws IOException {
+    final List<URL> returnValue = new ArrayList<URL>();
+    if (roots != null && !roots.isEmpty()) {
+      this.nodes.clear();
+      this.classpath.clear();
+      this.classpath.addAll(getClasspath(roots));
+      final Set<String> visited = new HashSet<String>();
+      for (final URL root : roots) {
+        if (root != null) {
+          this.visit(root, visited, returnValue);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private final void visit(final URL url, final Set<String> visited, final List<URL> urls) throws IOException {
+    assert url != null;
+    assert visited != null;
+    assert urls != null;
+    if (visited.add(url.toExternalForm())) {
+      final Node node = this.getNode(url);
+      assert node != null;
+      if (this.isIndex(node)) {
+        for (final URL include : node.includes) {
+          this.visit(include, visited, urls);
+        }
+      } else {
+        if (node.unexpandable != null && !node.content && this.log != null && this.log.isDebugEnabled()) {
+          this.log.debug("Including changelog " + url + " as-is because " + node.unexpandable);
+        }
+        urls.add(url);
+        this.cover(node, visited);
+      }
+    }
+  }
+
+  private final void cover(final Node node, final Set<String> visited) throws IOException {
+    assert node != null;
+    assert visited != null;
+    for (final URL include : node.includes) {
+      if (include != null && visited.add(include.toExternalForm())) {
+        this.cover(this.getNode(include), visited);
+      }
+    }
+  }
+
+  private final boolean isIndex(final Node node) throws IOException {
+    assert node != null;
+    boolean returnValue = node.index && !node.includes.isEmpty();
+    if (returnValue) {
+      for (final URL include : node.includes) {
+        if (include == null || this.getNode(include).missing) {
+          node.unexpandable = "the changelog " + include + " that it includes does not exist";
+          returnValue = false;
+          break;
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private final Node getNode(final URL url) throws IOException {
+    assert url != null;
+    final String key = url.toExternalForm();
+    Node node = this.nodes.get(key);
+    if (node == null) {
+      node = this.parse(url);
+      assert node != null;
+      this.nodes.put(key, node);
+    }
+    return node;
+  }
+
+  /**
+   * Parses the changelog located at the supplied {@link URL} and
+   * returns a {@link Node} describing it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Changelogs that are not XML files, and XML files that cannot
+   * be parsed, are described by {@link Node}s that are not indices
+   * and that include nothing, so that they are included as-is and
+   * any errors are left for Liquibase to report.</p>
+   *
+   * @param url the {@link URL} of the changelog to parse; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link Node}
+   *
+   * @exception IOException if the changelog exists but could not be
+   * read
+   */
+  private final Node parse(final URL url) throws IOException {
+    assert url != null;
+    final Node node = new Node();
+    if (url.getPath().endsWith(".xml")) {
+      InputStream stream = null;
+      XMLStreamReader reader = null;
+      try {
+        stream = new BufferedInputStream(ChangeLogScanner.openStream(url));
+        reader = this.xmlInputFactory.createXMLStreamReader(stream);
+        int depth = 0;
+        while (reader.hasNext()) {
+          final int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            depth++;
+            final String localName = reader.getLocalName();
+            if (depth == 1) {
+              node.index = "databaseChangeLog".equals(localName);
+            } else if (depth == 2) {
+              if ("include".equals(localName)) {
+                final String file = reader.getAttributeValue(null, "file");
+                final URL include = this.resolveInclude(url, file, reader.getAttributeValue(null, "relativeToChangelogFile"), false);
+                if (include == null) {
+                  node.index = false;
+                  if (node.unexpandable == null) {
+                    node.unexpandable = "its <include> of " + file + " could not be resolved";
+                  }
+                } else {
+                  node.includes.add(include);
+                }
+              } else if ("includeAll".equals(localName)) {
+                final String path = reader.getAttributeValue(null, "path");
+                final URL directory = this.resolveInclude(url, path, reader.getAttributeValue(null, "relativeToChangelogFile"), true);
+                final List<URL> includes = directory == null ? null : list(directory);
+                if (includes == null) {
+                  node.index = false;
+                  if (node.unexpandable == null) {
+                    node.unexpandable = "its <includeAll> of " + path + " could not be resolved";
+                  }
+                } else {
+                  node.includes.addAll(includes);
+                }
+              } else {
+                node.index = false;
+                node.content = true;
+              }
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+          }
+        }
+      } catch (final FileNotFoundException missing) {
+        node.missing = true;
+        node.index = false;
+        node.includes.clear();
+        node.unexpandable = "it does not exist";
+      } catch (final XMLStreamException malformed) {
+        node.index = false;
+        node.includes.clear();
+        node.unexpandable = "it could not be parsed: " + malformed.getMessage();
+      } finally {
+        if (reader != null) {
+          try {
+            reader.close();
+          } catch (final XMLStreamException nothingWeCanDo) {
+
+          }
+        }
+        if (stream != null) {
+          try {
+            stream.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Resolves the supplied {@code path}, found in the changelog
+   * located at the supplied {@code base} {@link URL}, into a {@link
+   * URL}, or returns {@code null} if that cannot be done reliably.
+   *
+   * <p>A {@code path} that is not {@code relativeToChangelogFile} is
+   * resolved against the first {@link Root} on the classpath that
+   * contains it.</p>
+   *
+   * @param base the {@link URL} of the including changelog; must not
+   * be {@code null}
+   *
+   * @param path the path to resolve; may be {@code null}
+   *
+   * @param relativeToChangelogFile the value of the {@code
+   * relativeToChangelogFile} attribute; may be {@code null}
+   *
+   * @param directory whether {@code path} names a directory
+   *
+   * @return a {@link URL}, or {@code null}
+   *
+   * @exception IOException if an archive on the classpath could not
+   * be read
+   */
+  private final URL resolveInclude(final URL base, String path, final String relativeToChangelogFile, final boolean directory) throws IOException {
+    assert base != null;
+    if (Boolean.parseBoolean(relativeToChangelogFile)) {
+      return resolve(base, path, relativeToChangelogFile, directory);
+    }
+    if (path == null || path.isEmpty() || path.contains("${")) {
+      return null;
+    }
+    path = path.replace('\\', '/');
+    while (path.startsWith("/")) {
+      path = path.substring(1);
+    }
+    if (directory && !path.isEmpty() && !path.endsWith("/")) {
+      path = path + "/";
+    }
+    for (final Root root : this.classpath) {
+      if (root.contains(path, directory)) {
+        return root.getURL(path);
+      }
+    }
+    return null;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the {@link Root}s of the supplied changelog {@link URL}s,
+   * in the order in which they are first encountered.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The root of a changelog in an archive is that archive.  The
+   * root of a changelog in a directory is known only if its name
+   * within that directory is also the name of a changelog found in an
+   * archive, since all changelogs are found under the same names;
+   * other changelogs in directories have no root.</p>
+   *
+   * @param urls the changelog {@link URL}s; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link Root}s
+   */
+  private static final List<Root> getClasspath(final Collection<? extends URL> urls) {
+    assert urls != null;
+    final Set<String> entryNames = new HashSet<String>();
+    for (final URL url : urls) {
+      if (url != null && "jar".equals(url.getProtocol())) {
+        final String externalForm = url.toExternalForm();
+        final int separatorIndex = externalForm.indexOf("!/");
+        if (separatorIndex >= 0) {
+          try {
+            entryNames.add(ChangeLogScanner.decodeEntryName(externalForm.substring(separatorIndex + 2)));
+          } catch (final IllegalArgumentException malformed) {
+
+          }
+        }
+      }
+    }
+    final Map<String, Root> roots = new LinkedHashMap<String, Root>();
+    for (final URL url : urls) {
+      if (url != null) {
+        final String protocol = url.getProtocol();
+        if ("jar".equals(protocol)) {
+          final String externalForm = url.toExternalForm();
+          final int separatorIndex = externalForm.indexOf("!/");
+          if (separatorIndex >= 0) {
+            final String prefix = externalForm.substring(0, separatorIndex + 2);
+            if (!roots.containsKey(prefix)) {
+              try {
+                roots.put(prefix, new Root(prefix, new File(new URL(externalForm.substring("jar:".length(), separatorIndex)).toURI()), null));
+              } catch (final MalformedURLException | URISyntaxException | IllegalArgumentException notAFile) {
+
+              }
+            }
+          }
+        } else if ("file".equals(protocol)) {
+          final String path;
+          try {
+            path = new File(url.toURI()).getPath().replace(File.separatorChar, '/');
+          } catch (final URISyntaxException | IllegalArgumentException notAFile) {
+            continue;
+          }
+          for (final String entryName : entryNames) {
+            if (path.endsWith("/" + entryName)) {
+              final File directory = new File(path.substring(0, path.length() - entryName.length()));
+              final String key = directory.getAbsolutePath();
+              if (!roots.containsKey(key)) {
+                roots.put(key, new Root(key, null, directory));
+              }
+              break;
+            }
+          }
+        }
+      }
+    }
+    return new ArrayList<Root>(roots.values());
+  }
+
+
+  /**
+   * Resolves the supplied {@code path}, found in the changelog
+   * located at the supplied {@code base} {@link URL}, into a {@link
+   * URL}, or returns {@code null} if that cannot be done reliably.
+   *
+   * @param base the {@link URL} of the including changelog; must not
+   * be {@code null}
+   *
+   * @param path the path to resolve; may be {@code null}
+   *
+   * @param relativeToChangelogFile the value of the {@code
+   * relativeToChangelogFile} attribute; may be {@code null}
+   *
+   * @param directory whether {@code path} names a directory
+   *
+   * @return a {@link URL}, or {@code null}
+   */
+  static final URL resolve(final URL base, String path, final String relativeToChangelogFile, final boolean directory) {
+    assert base != null;
+    if (path == null || path.isEmpty() || path.contains("${")) {
+      return null;
+    }
+    path = path.replace('\\', '/');
+    if (directory && !path.endsWith("/")) {
+      path = path + "/";
+    }
+    URL returnValue = null;
+    try {
+      if (Boolean.parseBoolean(relativeToChangelogFile)) {
+        returnValue = new URL(base, path);
+      } else if ("jar".equals(base.getProtocol())) {
+        final String externalForm = base.toExternalForm();
+        final int separatorIndex = externalForm.indexOf("!/");
+        if (separatorIndex >= 0) {
+          while (path.startsWith("/")) {
+            path = path.substring(1);
+          }
+          returnValue = new URL(externalForm.substring(0, separatorIndex + 2) + path);
+        }
+      }
+    } catch (final MalformedURLException unresolvable) {
+      returnValue = null;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@link URL}s for the changelogs found, recursively and in
+   * natural order, beneath the directory located at the supplied
+   * {@link URL}, or {@code null} if it cannot be listed.
+   *
+   * @param directory the {@link URL} of a directory; must not be
+   * {@code null} and must end with "{@code /}"
+   *
+   * @return a {@link List} of {@link URL}s, or {@code null}
+   *
+   * @exception IOException if the directory could not be listed
+   */
+  private static final List<URL> list(final URL directory) throws IOException {
+    assert directory != null;
+    List<URL> returnValue = null;
+    final String protocol = directory.getProtocol();
+    if ("file".equals(protocol)) {
+      final File file;
+      try {
+        file = new File(directory.toURI());
+      } catch (final URISyntaxException | IllegalArgumentException unlistable) {
+        return null;
+      }
+      if (file.isDirectory()) {
+        final List<String> names = new ArrayList<String>();
+        list(file, "", names);
+        Collections.sort(names);
+        returnValue = new ArrayList<URL>(names.size());
+        for (final String name : names) {
+          returnValue.add(new URL(directory, name));
+        }
+      }
+    } else if ("jar".equals(protocol)) {
+      final String externalForm = directory.toExternalForm();
+      final int separatorIndex = externalForm.indexOf("!/");
+      if (separatorIndex >= 0) {
+        final String prefix;
+        try {
+          prefix = ChangeLogScanner.decodeEntryName(externalForm.substring(separatorIndex + 2));
+        } catch (final IllegalArgumentException unlistable) {
+          return null;
+        }
+        final File archive;
+        try {
+          archive = new File(new URL(externalForm.substring("jar:".length(), separatorIndex)).toURI());
+        } catch (final URISyntaxException | IllegalArgumentException unlistable) {
+          return null;
+        }
+        final List<String> names = new ArrayList<String>();
+        ZipFile zipFile = null;
+        try {
+          zipFile = new ZipFile(archive);
+          final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+          assert entries != null;
+          while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (entry != null && !entry.isDirectory()) {
+              final String name = entry.getName();
+              if (name.startsWith(prefix) && isChangeLogName(name)) {
+                names.add(name);
+              }
+            }
+          }
+        } finally {
+          if (zipFile != null) {
+            try {
+              zipFile.close();
+            } catch (final IOException nothingWeCanDo) {
+
+            }
+          }
+        }
+        Collections.sort(names);
+        returnValue = new ArrayList<URL>(names.size());
+        final String root = externalForm.substring(0, separatorIndex + 2);
+        for (final String name : names) {
+          returnValue.add(new URL(root + ChangeLogScanner.encodeEntryName(name)));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private static final void list(final File directory, final String prefix, final Collection<String> names) {
+    assert directory != null;
+    assert prefix != null;
+    assert names != null;
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        if (file.isDirectory()) {
+          list(file, prefix + file.getName() + "/", names);
+        } else if (isChangeLogName(file.getName())) {
+          names.add(prefix + file.getName());
+        }
+      }
+    }
+  }
+
+  private static final boolean isChangeLogName(final String name) {
+    return name != null && (name.endsWith(".xml") || name.endsWith(".sql") || name.endsWith(".yaml") || name.endsWith(".yml") || name.endsWith(".json"));
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A description of a single changelog in a {@link
+   * ChangeLogIncludeGraph}.
+   */
+  private static final class Node {
+
+    /**
+     * Whether the changelog consists of nothing but resolvable
+     * {@code <include>} and {@code <includeAll>} elements.
+     */
+    private boolean index;
+
+    /**
+     * Whether the changelog does not exist.
+     */
+    private boolean missing;
+
+    /**
+     * Whether the changelog's {@code <databaseChangeLog>} element
+     * contains anything other than {@code <include>} and {@code
+     * <includeAll>} elements.
+     */
+    private boolean content;
+
+    /**
+     * Why the changelog, if it contains nothing but includes, cannot
+     * be expanded into the changelogs it includes.
+     *
+     * <p>This field may be {@code null}.</p>
+     */
+    private String unexpandable;
+
+    /**
+     * The {@link URL}s of the changelogs included by the changelog,
+     * in document order.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final List<URL> includes;
+
+    private Node() {
+      super();
+      this.includes = new ArrayList<URL>();
+    }
+
+  }
+
+  /**
+   * An archive or directory against which classpath includes are
+   * resolved.
+   */
+  private static final class Root {
+
+    /**
+     * The text that begins the {@link URL} of every changelog in this
+     * {@link Root}, if it is an archive, or its absolute path, if it
+     * is a directory.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private final String prefix;
+
+    /**
+     * The archive, or {@code null} if this {@link Root} is a
+     * directory.
+     */
+    private final File archive;
+
+    /**
+     * The directory, or {@code null} if this {@link Root} is an
+     * archive.
+     */
+    private final File directory;
+
+    /**
+     * The names of the non-directory entries in the {@linkplain
+     * #archive archive}, read when first needed.
+     *
+     * <p>This field may be {@code null}.</p>
+     */
+    private Set<String> entryNames;
+
+    private Root(final String prefix, final File archive, final File directory) {
+      super();
+      assert prefix != null;
+      assert archive != null || directory != null;
+      this.prefix = prefix;
+      this.archive = archive;
+      this.directory = directory;
+    }
+
+    /**
+     * Returns {@code true} if this {@link Root} contains a file, or a
+     * directory, with the supplied name.
+     *
+     * @param name the name in question, relative to this {@link
+     * Root}; must not be {@code null}; must end with "{@code /}" if
+     * {@code directory} is {@code true}
+     *
+     * @param directory whether {@code name} names a directory
+     *
+     * @return {@code true} if this {@link Root} contains {@code name}
+     *
+     * @exception IOException if the archive could not be read
+     */
+    private final boolean contains(final String name, final boolean directory) throws IOException {
+      assert name != null;
+      if (this.directory != null) {
+        final File file = new File(this.directory, name);
+        return directory ? file.isDirectory() : file.isFile();
+      }
+      if (this.entryNames == null) {
+        try {
+          this.entryNames = new HashSet<String>(Arrays.asList(ChangeLogScanner.listArchive(this.archive)));
+        } catch (final ZipException notAnArchive) {
+          this.entryNames = Collections.emptySet();
+        }
+      }
+      if (!directory) {
+        return this.entryNames.contains(name);
+      }
+      for (final String entryName : this.entryNames) {
+        if (entryName.startsWith(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns the {@link URL} of the file or directory in this {@link
+     * Root} with the supplied name.
+     *
+     * @param name the name, relative to this {@link Root}; must not be
+     * {@code null}
+     *
+     * @return a non-{@code null} {@link URL}
+     *
+     * @exception MalformedURLException if the {@link URL} could not
+     * be constructed
+     */
+    private final URL getURL(final String name) throws MalformedURLException {
+      assert name != null;
+      if (this.directory != null) {
+        return new File(this.directory, name).toURI().toURL();
+      }
+      return new URL(this.prefix + ChangeLogScanner.encodeEntryName(name));
+    }
+
+  }
+
+}
@@ -0,0 +1,163 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.util.Collections;
+import java.util.Set;
+
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * A {@link ResourceAccessor} that, in addition to loading resources
+ * from a {@link ClassLoader}, opens absolute {@link URL}s (such as
+ * the {@code jar:} {@link URL}s found in an aggregate changelog) and
+ * absolute filesystem paths directly.
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see CheckSumManifest
+ */
+final class ChangeLogResourceAccessor implements ResourceAccessor {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ClassLoaderResourceAccessor} to which requests for
+   * relative paths are delegated.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ClassLoaderResourceAccessor delegate;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogResourceAccessor}.
+   *
+   * @param classLoader the {@link ClassLoader} from which relative
+   * paths will be loaded; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code classLoader} is
+   * {@code null}
+   */
+  ChangeLogResourceAccessor(final ClassLoader classLoader) {
+    super();
+    if (classLoader == null) {
+      throw new IllegalArgumentException("classLoader", new NullPointerException("classLoader"));
+    }
+    this.delegate = new ClassLoaderResourceAccessor(classLoader);
+  }
+
+
+  /*
+   * ResourceAccessor implementation.
+   */
+
+
+  @Override
+  public final Set<InputStream> getResourcesAsStream(final String path) throws IOException {
+    if (path == null) {
+      return null;
+    }
+    final URL url = toURL(path);
+    if (url != null) {
+      try {
+        return Collections.singleton(ChangeLogScanner.openStream(url));
+      } catch (final FileNotFoundException missing) {
+        return null;
+      }
+    }
+    final File file = new File(path);
+    if (file.isAbsolute() && file.isFile()) {
+      return Collections.<InputStream>singleton(new FileInputStream(file));
+    }
+    return this.delegate.getResourcesAsStream(path);
+  }
+
+  @Override
+  public final Set<String> list(final String relativeTo, final String path, final boolean includeFiles, final boolean includeDirectories, final boolean recursive) throws IOException {
+    return this.delegate.list(relativeTo, path, includeFiles, includeDirectories, recursive);
+  }
+
+  @Override
+  public final ClassLoader toClassLoader() {
+    return this.delegate.toClassLoader();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the supplied {@code path} as a {@link URL} if it is an
+   * absolute {@link URL}, or {@code null} otherwise.
+   *
+   * @param path the path to convert; must not be {@code null}
+   *
+   * @return a {@link URL}, or {@code null}
+   */
+  private static final URL toURL(final String path) {
+    assert path != null;
+    final int colonIndex = path.indexOf(':');
+    // A single letter before the colon is a Windows drive, not a
+    // scheme.
+    if (colonIndex > 1) {
+      try {
+        return new URL(path);
+      } catch (final MalformedURLException notAURL) {
+
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,466 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A persistent record of which changelog resources were found in
+ * which archives, keyed by each archive's path, {@linkplain
+ * File#length() length} and {@linkplain File#lastModified() last
+ * modification time}, so that archives that have not changed since
+ * they were last scanned need not be opened again.
+ *
+ * <p>Instances of this class are safe for use by multiple threads.
+ * Several processes may share one backing file: each {@linkplain
+ * #store() stores} its own updates into whatever the file holds at
+ * the time, under a {@link FileLock}, so that no process's updates
+ * are lost.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setScanIndexFile(File)
+ */
+final class ChangeLogScanIndex {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * A monitor guarding the use of {@link FileLock}s on backing files
+   * within this Java Virtual Machine, where overlapping {@link
+   * FileLock}s are not permitted.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #store()
+   */
+  private static final Object storeMonitor = new Object();
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link File} in which this {@link ChangeLogScanIndex} is
+   * persisted.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final File file;
+
+  /**
+   * The entries of this {@link ChangeLogScanIndex}.
+   *
+   * <p>Each key is formed from an archive's absolute path and the
+   * resource names that were sought in it.  Each value consists of
+   * the archive's length and its last modification time, each
+   * followed by a comma, and then the names of the resources that
+   * were actually found in it, if any.  The path and each name are
+   * {@linkplain #appendEncoded(StringBuilder, String) prefixed with
+   * their lengths}, so they may contain any character.</p>
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Properties entries;
+
+  /**
+   * The entries that have been {@linkplain #put(File, Collection,
+   * Collection) put} into this {@link ChangeLogScanIndex} since it
+   * was {@linkplain #load() loaded} or {@linkplain #store() stored}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, String> updates;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogScanIndex}.
+   *
+   * @param file the {@link File} in which the new index will be
+   * persisted; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code file} is {@code
+   * null}
+   */
+  ChangeLogScanIndex(final File file) {
+    super();
+    if (file == null) {
+      throw new IllegalArgumentException("file", new NullPointerException("file"));
+    }
+    this.file = file;
+    this.entries = new Properties();
+    this.updates = new LinkedHashMap<String, String>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link File} in which this {@link ChangeLogScanIndex}
+   * is persisted.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link File}
+   */
+  final File getFile() {
+    return this.file;
+  }
+
+  /**
+   * Loads this {@link ChangeLogScanIndex} from its {@linkplain
+   * #getFile() backing file}, if that file exists.
+   *
+   * @exception IOException if the backing file could not be read
+   */
+  final synchronized void load() throws IOException {
+    this.entries.clear();
+    this.updates.clear();
+    read(this.file, this.entries);
+  }
+
+  /**
+   * Returns the names of the resources that were found the last time
+   * the supplied {@code archive} was scanned for the supplied {@code
+   * names}, or {@code null} if the archive has never been scanned
+   * for them or has changed since.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param archive the archive in question; must not be {@code null}
+   *
+   * @param names the resource names that are to be sought; must not
+   * be {@code null}
+   *
+   * @return an immutable {@link List} of resource names, possibly
+   * {@linkplain Collection#isEmpty() empty}, or {@code null} if the
+   * archive must be scanned
+   */
+  final synchronized List<String> get(final File archive, final Collection<? extends String> names) {
+    List<String> returnValue = null;
+    final String value = this.entries.getProperty(key(archive, names));
+    if (value != null) {
+      final String prefix = archive.length() + "," + archive.lastModified() + ",";
+      if (value.startsWith(prefix)) {
+        final List<String> found = decode(value, prefix.length());
+        if (found != null) {
+          if (found.isEmpty()) {
+            returnValue = Collections.emptyList();
+          } else {
+            returnValue = Collections.unmodifiableList(found);
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Records the names of the resources that were found when the
+   * supplied {@code archive} was scanned for the supplied {@code
+   * names}.
+   *
+   * @param archive the archive that was scanned; must not be {@code
+   * null}
+   *
+   * @param names the resource names that were sought; must not be
+   * {@code null}
+   *
+   * @param found the resource names that were found; may be {@code
+   * null}
+   */
+  final synchronized void put(final File archive, final Collection<? extends String> names, final Collection<? extends String> found) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(archive.length()).append(',').append(archive.lastModified()).append(',');
+    if (found != null) {
+      for (final String name : found) {
+        if (name != null) {
+          appendEncoded(sb, name);
+        }
+      }
+    }
+    final String key = key(archive, names);
+    final String value = sb.toString();
+    final Object old = this.entries.setProperty(key, value);
+    if (!value.equals(old)) {
+      this.updates.put(key, value);
+    }
+  }
+
+  /**
+   * Writes this {@link ChangeLogScanIndex} to its {@linkplain
+   * #getFile() backing file} if it has been modified since it was
+   * {@linkplain #load() loaded}.
+   *
+   * <p>While an exclusive {@link FileLock} is held on a lock file
+   * alongside the backing file, the backing file is read again, this
+   * {@link ChangeLogScanIndex}'s updates are merged into what it
+   * holds, entries for archives that no longer exist are dropped,
+   * and the result is written to a temporary file in the same
+   * directory which is then moved into place.  Concurrent writers
+   * therefore never lose each other's updates, and concurrent
+   * readers, which take no lock, never see a partially written
+   * index.</p>
+   *
+   * @exception IOException if the index could not be written
+   */
+  final synchronized void store() throws IOException {
+    if (!this.updates.isEmpty()) {
+      final File parent = this.file.getAbsoluteFile().getParentFile();
+      if (parent != null) {
+        parent.mkdirs();
+      }
+      synchronized (storeMonitor) {
+        final FileChannel lockChannel = FileChannel.open(new File(this.file.getPath() + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+          final FileLock lock = lockChannel.lock();
+          try {
+            final Properties merged = new Properties();
+            read(this.file, merged);
+            merged.putAll(this.updates);
+            prune(merged);
+            write(merged, this.file);
+            this.entries.clear();
+            this.entries.putAll(merged);
+            this.updates.clear();
+          } finally {
+            lock.release();
+          }
+        } finally {
+          lockChannel.close();
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Loads the supplied {@link Properties} from the supplied {@link
+   * File}, if it exists.
+   *
+   * @param file the {@link File} to read; must not be {@code null}
+   *
+   * @param properties the {@link Properties} to load; must not be
+   * {@code null}
+   *
+   * @exception IOException if {@code file} could not be read
+   */
+  private static final void read(final File file, final Properties properties) throws IOException {
+    assert file != null;
+    assert properties != null;
+    if (file.isFile()) {
+      InputStream stream = null;
+      try {
+        stream = new BufferedInputStream(new FileInputStream(file));
+        properties.load(stream);
+      } catch (final FileNotFoundException deletedInTheMeantime) {
+        properties.clear();
+      } finally {
+        if (stream != null) {
+          try {
+            stream.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the supplied {@link Properties} to a temporary file
+   * alongside the supplied {@link File} and then moves it into
+   * place.
+   *
+   * @param properties the {@link Properties} to write; must not be
+   * {@code null}
+   *
+   * @param file the {@link File} to replace; must not be {@code null}
+   *
+   * @exception IOException if {@code file} could not be written
+   */
+  private static final void write(final Properties properties, final File file) throws IOException {
+    assert properties != null;
+    assert file != null;
+    final File temporaryFile = ChangeLogFiles.createTemporaryFile(file.toPath()).toFile();
+    boolean moved = false;
+    try {
+      OutputStream stream = null;
+      try {
+        stream = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+        properties.store(stream, "maven-liquibase changelog scan index; do not edit");
+        stream.flush();
+      } finally {
+        if (stream != null) {
+          try {
+            stream.close();
+          } catch (final IOException nothingWeCanDo) {
+
+          }
+        }
+      }
+      ChangeLogFiles.moveIntoPlace(temporaryFile.toPath(), file.toPath());
+      moved = true;
+    } finally {
+      if (!moved) {
+        temporaryFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Removes from the supplied {@link Properties} those entries whose
+   * keys cannot be understood, such as those written by earlier
+   * versions of this class, and those whose archives no longer
+   * exist, such as superseded artifact versions that have been
+   * removed from a local repository.
+   *
+   * @param properties the {@link Properties} to prune; must not be
+   * {@code null}
+   */
+  private static final void prune(final Properties properties) {
+    assert properties != null;
+    final Iterator<Object> iterator = properties.keySet().iterator();
+    while (iterator.hasNext()) {
+      final List<String> parts = decode(String.valueOf(iterator.next()), 0);
+      if (parts == null || parts.isEmpty() || !new File(parts.get(0)).isFile()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static final String key(final File archive, final Collection<? extends String> names) {
+    final StringBuilder sb = new StringBuilder();
+    appendEncoded(sb, archive.getAbsolutePath());
+    for (final String name : names) {
+      if (name != null) {
+        appendEncoded(sb, name);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Appends the supplied {@link String} to the supplied {@link
+   * StringBuilder} preceded by its length and a colon, so that it
+   * may be {@linkplain #decode(String, int) recovered} whatever
+   * characters it contains.
+   *
+   * @param sb the {@link StringBuilder} to append to; must not be
+   * {@code null}
+   *
+   * @param s the {@link String} to append; must not be {@code null}
+   */
+  private static final void appendEncoded(final StringBuilder sb, final String s) {
+    assert sb != null;
+    assert s != null;
+    sb.append(s.length()).append(':').append(s);
+  }
+
+  /**
+   * Decodes the {@linkplain #appendEncoded(StringBuilder, String)
+   * length-prefixed} {@link String}s found in the supplied {@link
+   * String} from the supplied index onwards.
+   *
+   * <p>This method may return {@code null} if the supplied {@link
+   * String} is not properly encoded.</p>
+   *
+   * @param s the {@link String} to decode; must not be {@code null}
+   *
+   * @param start the index at which to begin decoding
+   *
+   * @return a {@link List} of decoded {@link String}s, or {@code
+   * null}
+   */
+  private static final List<String> decode(final String s, int start) {
+    assert s != null;
+    final List<String> returnValue = new ArrayList<String>();
+    final int length = s.length();
+    while (start < length) {
+      final int colon = s.indexOf(':', start);
+      if (colon <= start) {
+        return null;
+      }
+      final int size;
+      try {
+        size = Integer.parseInt(s.substring(start, colon));
+      } catch (final NumberFormatException malformed) {
+        return null;
+      }
+      if (size < 0 || size > length - colon - 1) {
+        return null;
+      }
+      start = colon + 1 + size;
+      returnValue.add(s.substring(colon + 1, start));
+    }
+    return returnValue;
+  }
+
+}
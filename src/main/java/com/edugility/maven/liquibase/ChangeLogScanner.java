@@ -0,0 +1,418 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds changelog resources in archives and directories by name or
+ * by {@linkplain ResourceNamePattern glob}, without creating a
+ * {@link ClassLoader} and without depending on Maven.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor
+ *
+ * @see ClasspathChangeLogAggregator
+ */
+final class ChangeLogScanner {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The ASCII characters that {@link #encodeEntryName(String)}
+   * percent-encodes: those reserved in a path segment or excluded
+   * from URIs altogether by <a
+   * href="https://www.ietf.org/rfc/rfc2396.txt">RFC 2396</a>, other
+   * than "{@code /}".
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final String ENCODED_CHARACTERS = "=;?# <>%\"{}|\\^[]`";
+
+  /**
+   * The hexadecimal digits, in lower case, used to percent-encode
+   * characters, as the JDK uses them.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final char[] HEXADECIMAL_DIGITS = "0123456789abcdef".toCharArray();
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChangeLogScanner}.
+   */
+  private ChangeLogScanner() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Opens the supplied {@link File}, which must denote a zip-format
+   * archive such as a jar file, exactly once, enumerates its entries,
+   * closes it, and returns the names of its non-directory entries,
+   * sorted in natural order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The names returned can be turned into {@code jar:} {@link
+   * URL}s identical to those that a {@link URLClassLoader} would have
+   * returned from its {@link URLClassLoader#getResource(String)}
+   * method, but no {@link ClassLoader} is created in the process.</p>
+   *
+   * @param archive the archive to list; must not be {@code null}
+   *
+   * @return a non-{@code null}, sorted array of entry names
+   *
+   * @exception ZipException if {@code archive} is not a zip-format
+   * archive
+   *
+   * @exception IOException if the archive could not be read
+   *
+   * @see #select(String[], Collection)
+   */
+  static final String[] listArchive(final File archive) throws IOException {
+    final List<String> entryNames = new ArrayList<String>();
+    ZipFile zipFile = null;
+    try {
+      zipFile = new ZipFile(archive);
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (entry != null && !entry.isDirectory()) {
+          entryNames.add(entry.getName());
+        }
+      }
+    } finally {
+      if (zipFile != null) {
+        try {
+          zipFile.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+    final String[] returnValue = entryNames.toArray(new String[entryNames.size()]);
+    Arrays.sort(returnValue);
+    return returnValue;
+  }
+
+  /**
+   * Returns those of the supplied archive entry names that correspond
+   * to the supplied {@code names}, in {@code names} iteration order,
+   * with the matches of each {@linkplain ResourceNamePattern glob} in
+   * natural order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param entryNames the sorted names of an archive's non-directory
+   * entries, as returned by {@link #listArchive(File)}; must not be
+   * {@code null}
+   *
+   * @param names the resource names or globs to look for; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link Collection} of entry names
+   */
+  static final Collection<? extends String> select(final String[] entryNames, final Collection<? extends String> names) {
+    final Collection<String> returnValue = new LinkedHashSet<String>();
+    for (final String name : names) {
+      if (name != null) {
+        if (ResourceNamePattern.isPattern(name)) {
+          final ResourceNamePattern pattern = new ResourceNamePattern(name);
+          for (final String entryName : entryNames) {
+            if (pattern.matches(entryName)) {
+              returnValue.add(entryName);
+            }
+          }
+        } else if (Arrays.binarySearch(entryNames, name) >= 0) {
+          returnValue.add(name);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the relative names of the readable regular files beneath
+   * the supplied {@code directory} that correspond to the supplied
+   * {@code names}, in {@code names} iteration order, with the matches
+   * of each {@linkplain ResourceNamePattern glob} sorted in natural
+   * order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param directory the directory to search; must not be {@code
+   * null}
+   *
+   * @param names the resource names or globs to look for; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link Collection} of relative names
+   *
+   * @exception IOException if the directory could not be traversed
+   */
+  static final Collection<? extends String> findInDirectory(final File directory, final Collection<? extends String> names) throws IOException {
+    final Collection<String> returnValue = new LinkedHashSet<String>();
+    for (final String name : names) {
+      if (name != null) {
+        if (ResourceNamePattern.isPattern(name)) {
+          returnValue.addAll(new ResourceNamePattern(name).list(directory));
+        } else {
+          final File changeLogFile = new File(directory, name);
+          if (changeLogFile.isFile() && changeLogFile.canRead()) {
+            returnValue.add(name);
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the {@code jar:} {@link URL}s of the named entries in the
+   * supplied archive, in iteration order, exactly as a {@link
+   * URLClassLoader} would return them from its {@link
+   * URLClassLoader#getResource(String)} method.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @param entryNames the names of entries in the archive, as
+   * returned by {@link #select(String[], Collection)}; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link URL}s
+   *
+   * @exception MalformedURLException if a {@link URL} could not be
+   * constructed
+   *
+   * @see #encodeEntryName(String)
+   */
+  static final List<URL> toURLs(final File archive, final Collection<? extends String> entryNames) throws MalformedURLException {
+    final String prefix = toURLPrefix(archive);
+    final List<URL> returnValue = new ArrayList<URL>(entryNames.size());
+    for (final String entryName : entryNames) {
+      returnValue.add(new URL(prefix + encodeEntryName(entryName)));
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the text that begins the {@code jar:} {@link URL} of
+   * every entry in the supplied archive, up to and including the
+   * "{@code !/}" separator.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param archive the archive; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link String}
+   *
+   * @exception MalformedURLException if the archive's {@link File}
+   * could not be expressed as a {@link URL}
+   */
+  static final String toURLPrefix(final File archive) throws MalformedURLException {
+    return "jar:" + archive.toURI().toURL().toExternalForm() + "!/";
+  }
+
+  /**
+   * Opens an {@link InputStream} reading from the supplied {@link
+   * URL} with {@linkplain URLConnection#setUseCaches(boolean) caching
+   * disabled}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>{@link URL#openStream()} on a {@code jar:} {@link URL} opens
+   * the archive through a cache that keeps it open for the life of
+   * the Java Virtual Machine, even after the stream is closed, which
+   * under a long-lived Maven process leaks a file handle per archive
+   * and, on Windows, keeps the archive locked.  With caching
+   * disabled, closing the stream returned by this method closes the
+   * archive.</p>
+   *
+   * @param url the {@link URL} to read; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception IOException if the {@link URL} could not be opened
+   */
+  static final InputStream openStream(final URL url) throws IOException {
+    final URLConnection connection = url.openConnection();
+    connection.setUseCaches(false);
+    return connection.getInputStream();
+  }
+
+  /**
+   * Percent-encodes the supplied archive entry name for use as the
+   * part of a {@code jar:} {@link URL} that follows "{@code !/}", in
+   * the same way that a {@link URLClassLoader} does.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Characters outside of ASCII are encoded as their UTF-8 bytes,
+   * as are ASCII control characters and the characters that <a
+   * href="https://www.ietf.org/rfc/rfc2396.txt">RFC 2396</a> reserves
+   * in or excludes from a path segment, so that, for example, a
+   * "{@code #}" in an entry name does not become a fragment.
+   * Characters outside the Basic Multilingual Plane are encoded as
+   * the four UTF-8 bytes of their code points.</p>
+   *
+   * @param entryName the entry name to encode; must not be {@code
+   * null}
+   *
+   * @return the encoded entry name; never {@code null}
+   *
+   * @see #decodeEntryName(String)
+   */
+  static final String encodeEntryName(final String entryName) {
+    StringBuilder sb = null;
+    final int length = entryName.length();
+    for (int i = 0; i < length; i++) {
+      final char c = entryName.charAt(i);
+      final boolean encode;
+      if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '/') {
+        encode = false;
+      } else {
+        encode = c < 0x20 || c >= 0x7F || ENCODED_CHARACTERS.indexOf(c) >= 0;
+      }
+      if (encode) {
+        if (sb == null) {
+          sb = new StringBuilder(length + 16);
+          sb.append(entryName, 0, i);
+        }
+        final int end;
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(entryName.charAt(i + 1))) {
+          end = i + 2;
+        } else {
+          end = i + 1;
+        }
+        for (final byte b : entryName.substring(i, end).getBytes(UTF_8)) {
+          sb.append('%').append(HEXADECIMAL_DIGITS[(b >> 4) & 0xF]).append(HEXADECIMAL_DIGITS[b & 0xF]);
+        }
+        i = end - 1;
+      } else if (sb != null) {
+        sb.append(c);
+      }
+    }
+    if (sb == null) {
+      return entryName;
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Reverses the encoding performed by {@link
+   * #encodeEntryName(String)}, returning the archive entry name that
+   * the supplied part of a {@code jar:} {@link URL} denotes.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param encodedEntryName the encoded entry name; must not be
+   * {@code null}
+   *
+   * @return the decoded entry name; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code encodedEntryName}
+   * contains a malformed percent-encoded sequence
+   */
+  static final String decodeEntryName(final String encodedEntryName) {
+    if (encodedEntryName.indexOf('%') < 0) {
+      return encodedEntryName;
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(encodedEntryName.length());
+    final int length = encodedEntryName.length();
+    int i = 0;
+    while (i < length) {
+      final char c = encodedEntryName.charAt(i);
+      if (c == '%') {
+        final int high = i + 2 < length ? Character.digit(encodedEntryName.charAt(i + 1), 16) : -1;
+        final int low = high < 0 ? -1 : Character.digit(encodedEntryName.charAt(i + 2), 16);
+        if (low < 0) {
+          throw new IllegalArgumentException("Malformed percent-encoded sequence at index " + i + " in " + encodedEntryName);
+        }
+        bytes.write((high << 4) | low);
+        i += 3;
+      } else {
+        int end = i + 1;
+        while (end < length && encodedEntryName.charAt(end) != '%') {
+          end++;
+        }
+        final byte[] run = encodedEntryName.substring(i, end).getBytes(UTF_8);
+        bytes.write(run, 0, run.length);
+        i = end;
+      }
+    }
+    return new String(bytes.toByteArray(), UTF_8);
+  }
+
+}
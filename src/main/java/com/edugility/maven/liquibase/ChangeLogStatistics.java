@@ -0,0 +1,295 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A collection of named phase timings and named counters gathered
+ * while Liquibase changelogs are discovered and aggregated, such as
+ * the time spent scanning artifacts or rendering the aggregate
+ * changelog and the number of archives opened or bytes written.
+ *
+ * <p>Timings and counters are reported in the order in which they
+ * were first recorded.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setStatisticsFileEnabled(boolean)
+ *
+ * @see AggregateChangeLogGenerator#generate(java.util.Collection,
+ * ChangeLogStatistics)
+ */
+public final class ChangeLogStatistics {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The total time in nanoseconds spent in each phase, indexed by
+   * phase name.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on this {@link ChangeLogStatistics}.</p>
+   */
+  private final Map<String, Long> timings;
+
+  /**
+   * The value of each counter, indexed by counter name.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on this {@link ChangeLogStatistics}.</p>
+   */
+  private final Map<String, Long> counters;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new, empty {@link ChangeLogStatistics}.
+   */
+  public ChangeLogStatistics() {
+    super();
+    this.timings = new LinkedHashMap<String, Long>();
+    this.counters = new LinkedHashMap<String, Long>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Adds the time elapsed since the supplied {@linkplain
+   * System#nanoTime() start time} to the total recorded for the
+   * named phase.
+   *
+   * @param phase the name of the phase; must not be {@code null}
+   *
+   * @param startNanos the value of {@link System#nanoTime()} when the
+   * phase began
+   *
+   * @exception IllegalArgumentException if {@code phase} is {@code
+   * null}
+   */
+  public void time(final String phase, final long startNanos) {
+    this.addTime(phase, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Adds the supplied number of nanoseconds to the total recorded for
+   * the named phase.
+   *
+   * @param phase the name of the phase; must not be {@code null}
+   *
+   * @param nanos the number of nanoseconds to add
+   *
+   * @exception IllegalArgumentException if {@code phase} is {@code
+   * null}
+   */
+  public synchronized void addTime(final String phase, final long nanos) {
+    if (phase == null) {
+      throw new IllegalArgumentException("phase", new NullPointerException("phase"));
+    }
+    final Long old = this.timings.get(phase);
+    this.timings.put(phase, Long.valueOf(old == null ? nanos : old.longValue() + nanos));
+  }
+
+  /**
+   * Adds one to the named counter.
+   *
+   * @param counter the name of the counter; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code counter} is {@code
+   * null}
+   */
+  public void increment(final String counter) {
+    this.add(counter, 1L);
+  }
+
+  /**
+   * Adds the supplied amount to the named counter.
+   *
+   * @param counter the name of the counter; must not be {@code null}
+   *
+   * @param amount the amount to add
+   *
+   * @exception IllegalArgumentException if {@code counter} is {@code
+   * null}
+   */
+  public synchronized void add(final String counter, final long amount) {
+    if (counter == null) {
+      throw new IllegalArgumentException("counter", new NullPointerException("counter"));
+    }
+    final Long old = this.counters.get(counter);
+    this.counters.put(counter, Long.valueOf(old == null ? amount : old.longValue() + amount));
+  }
+
+  /**
+   * Returns the total time recorded for the named phase in the
+   * supplied {@link TimeUnit}.
+   *
+   * @param phase the name of the phase; may be {@code null}
+   *
+   * @param unit the {@link TimeUnit} in which to express the result;
+   * must not be {@code null}
+   *
+   * @return the total time recorded, or {@code 0} if none has been
+   */
+  public synchronized long getTime(final String phase, final TimeUnit unit) {
+    final Long nanos = this.timings.get(phase);
+    return nanos == null ? 0L : unit.convert(nanos.longValue(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the value of the named counter.
+   *
+   * @param counter the name of the counter; may be {@code null}
+   *
+   * @return the value of the counter, or {@code 0} if it has never
+   * been incremented
+   */
+  public synchronized long getCount(final String counter) {
+    final Long count = this.counters.get(counter);
+    return count == null ? 0L : count.longValue();
+  }
+
+  /**
+   * Writes these statistics as a JSON object to the supplied {@link
+   * Writer}, with phase timings expressed in milliseconds.
+   *
+   * <p>The supplied {@link Writer} is neither flushed nor closed by
+   * this method.</p>
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   */
+  public void writeJson(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    final Map<String, Long> timings;
+    final Map<String, Long> counters;
+    synchronized (this) {
+      timings = new LinkedHashMap<String, Long>(this.timings);
+      counters = new LinkedHashMap<String, Long>(this.counters);
+    }
+    writer.write("{\n  \"timestamp\": ");
+    writer.write(Long.toString(System.currentTimeMillis()));
+    writer.write(",\n  \"timingsMillis\": {");
+    boolean first = true;
+    for (final Map.Entry<String, Long> entry : timings.entrySet()) {
+      writer.write(first ? "\n    " : ",\n    ");
+      first = false;
+      writeJsonString(writer, entry.getKey());
+      writer.write(": ");
+      writer.write(Double.toString(entry.getValue().longValue() / 1000000.0));
+    }
+    writer.write(first ? "},\n  \"counters\": {" : "\n  },\n  \"counters\": {");
+    first = true;
+    for (final Map.Entry<String, Long> entry : counters.entrySet()) {
+      writer.write(first ? "\n    " : ",\n    ");
+      first = false;
+      writeJsonString(writer, entry.getKey());
+      writer.write(": ");
+      writer.write(entry.getValue().toString());
+    }
+    writer.write(first ? "}\n}\n" : "\n  }\n}\n");
+  }
+
+  /**
+   * Returns a one-line summary of these statistics suitable for
+   * logging, with phase timings expressed in milliseconds.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public synchronized String toString() {
+    final StringBuilder sb = new StringBuilder();
+    for (final Map.Entry<String, Long> entry : this.timings.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(entry.getKey()).append(' ').append(TimeUnit.NANOSECONDS.toMillis(entry.getValue().longValue())).append(" ms");
+    }
+    for (final Map.Entry<String, Long> entry : this.counters.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(entry.getKey()).append(' ').append(entry.getValue());
+    }
+    return sb.toString();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final void writeJsonString(final Writer writer, final String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format("\\u%04x", Integer.valueOf(c)));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+
+}
@@ -0,0 +1,482 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.net.URL;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import liquibase.change.CheckSum;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
+
+/**
+ * An immutable record of the {@linkplain ChangeSet#generateCheckSum()
+ * checksums} of the change sets in a Liquibase changelog, computed
+ * once at build time and stored {@linkplain #getManifestFile(File)
+ * next to} an aggregate changelog, so that the change sets recorded
+ * in a database can be validated at runtime without recomputing
+ * them.
+ *
+ * <p>Each entry is keyed by a change set's {@linkplain
+ * ChangeSet#getFilePath() file path}, {@linkplain ChangeSet#getId()
+ * identifier} and {@linkplain ChangeSet#getAuthor() author}, exactly
+ * as Liquibase keys the rows of its {@code DATABASECHANGELOG}
+ * table.</p>
+ *
+ * <p>A typical use at runtime looks like this:</p>
+ *
+ * <blockquote><pre>CheckSumManifest manifest = CheckSumManifest.read(manifestUrl);
+ *List&lt;RanChangeSet&gt; mismatches = manifest.getMismatches(database.getRanChangeSetList());
+ *if (mismatches.isEmpty()) {
+ *  // Nothing recorded in the database has changed.
+ *}</pre></blockquote>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setCheckSumManifestEnabled(boolean)
+ */
+public final class CheckSumManifest {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final String HEADER = "# Liquibase change set checksums: checksum, file path, id, author";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link CheckSum}s in this {@link CheckSumManifest}, indexed by
+   * {@linkplain #key(String, String, String) key}, in changelog
+   * order.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Map<String, CheckSum> checkSums;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  private CheckSumManifest(final Map<String, CheckSum> checkSums) {
+    super();
+    assert checkSums != null;
+    this.checkSums = checkSums;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the number of change sets recorded in this {@link
+   * CheckSumManifest}.
+   *
+   * @return the number of change sets, zero or more
+   */
+  public int size() {
+    return this.checkSums.size();
+  }
+
+  /**
+   * Returns the recorded {@link CheckSum} for the change set with the
+   * supplied file path, identifier and author.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param filePath the change set's file path; may be {@code null}
+   *
+   * @param id the change set's identifier; may be {@code null}
+   *
+   * @param author the change set's author; may be {@code null}
+   *
+   * @return a {@link CheckSum}, or {@code null} if no such change set
+   * is recorded
+   */
+  public CheckSum getCheckSum(final String filePath, final String id, final String author) {
+    return this.checkSums.get(key(filePath, id, author));
+  }
+
+  /**
+   * Returns the recorded {@link CheckSum} for the supplied {@link
+   * ChangeSet} without {@linkplain ChangeSet#generateCheckSum()
+   * computing} it.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param changeSet the {@link ChangeSet} in question; may be {@code
+   * null} in which case {@code null} will be returned
+   *
+   * @return a {@link CheckSum}, or {@code null} if no such change set
+   * is recorded
+   */
+  public CheckSum getCheckSum(final ChangeSet changeSet) {
+    if (changeSet == null) {
+      return null;
+    }
+    return this.getCheckSum(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor());
+  }
+
+  /**
+   * Returns those of the supplied {@link RanChangeSet}s, such as
+   * those recorded in a database's {@code DATABASECHANGELOG} table,
+   * that are recorded in this {@link CheckSumManifest} with a
+   * different {@link CheckSum}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>{@link RanChangeSet}s that are not recorded in this {@link
+   * CheckSumManifest}, or whose {@linkplain
+   * RanChangeSet#getLastCheckSum() last checksum} is {@code null} (as
+   * Liquibase records it when a checksum is to be recomputed), are
+   * never considered mismatches.</p>
+   *
+   * @param ranChangeSets the {@link RanChangeSet}s to check; may be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link List} of mismatched {@link
+   * RanChangeSet}s
+   */
+  public List<RanChangeSet> getMismatches(final Collection<? extends RanChangeSet> ranChangeSets) {
+    List<RanChangeSet> returnValue = null;
+    if (ranChangeSets != null && !ranChangeSets.isEmpty()) {
+      for (final RanChangeSet ranChangeSet : ranChangeSets) {
+        if (ranChangeSet != null) {
+          final CheckSum lastCheckSum = ranChangeSet.getLastCheckSum();
+          if (lastCheckSum != null) {
+            final CheckSum checkSum = this.getCheckSum(ranChangeSet.getChangeLog(), ranChangeSet.getId(), ranChangeSet.getAuthor());
+            if (checkSum != null && !checkSum.equals(lastCheckSum)) {
+              if (returnValue == null) {
+                returnValue = new ArrayList<RanChangeSet>();
+              }
+              returnValue.add(ranChangeSet);
+            }
+          }
+        }
+      }
+    }
+    if (returnValue == null) {
+      returnValue = Collections.emptyList();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Writes this {@link CheckSumManifest} to the supplied {@link
+   * Writer}, one change set per line.
+   *
+   * <p>The supplied {@link Writer} is neither flushed nor closed by
+   * this method.</p>
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @see #read(InputStream)
+   */
+  public void write(final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    writer.write(HEADER);
+    writer.write('\n');
+    for (final Map.Entry<String, CheckSum> entry : this.checkSums.entrySet()) {
+      writer.write(String.valueOf(entry.getValue()));
+      writer.write('\t');
+      writer.write(entry.getKey());
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Stores this {@link CheckSumManifest} in the supplied {@link File}
+   * atomically, unless the {@link File} already contains it.
+   *
+   * @param file the {@link File} to write; must not be {@code null}
+   *
+   * @return {@code true} if the {@link File} was written; {@code
+   * false} if it already contained this {@link CheckSumManifest}
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalArgumentException if {@code file} is {@code
+   * null}
+   *
+   * @see #getManifestFile(File)
+   */
+  public boolean store(final File file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file", new NullPointerException("file"));
+    }
+    final StringWriter buffer = new StringWriter();
+    this.write(buffer);
+    final byte[] bytes = buffer.toString().getBytes(UTF_8);
+    if (file.isFile() && file.length() == bytes.length && Arrays.equals(bytes, Files.readAllBytes(file.toPath()))) {
+      return false;
+    }
+    ChangeLogFiles.write(bytes, file.toPath());
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return this.checkSums.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (other == this) {
+      return true;
+    } else if (other instanceof CheckSumManifest) {
+      return this.checkSums.equals(((CheckSumManifest)other).checkSums);
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.checkSums.toString();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Creates a new {@link CheckSumManifest} by {@linkplain
+   * ChangeSet#generateCheckSum() computing} the checksum of every
+   * {@link ChangeSet} in the supplied {@link DatabaseChangeLog}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param changeLog the {@link DatabaseChangeLog} to summarize; must
+   * not be {@code null}
+   *
+   * @return a non-{@code null} {@link CheckSumManifest}
+   *
+   * @exception IllegalArgumentException if {@code changeLog} is
+   * {@code null}
+   */
+  public static CheckSumManifest of(final DatabaseChangeLog changeLog) {
+    if (changeLog == null) {
+      throw new IllegalArgumentException("changeLog", new NullPointerException("changeLog"));
+    }
+    final Map<String, CheckSum> checkSums = new LinkedHashMap<String, CheckSum>();
+    final List<ChangeSet> changeSets = changeLog.getChangeSets();
+    if (changeSets != null) {
+      for (final ChangeSet changeSet : changeSets) {
+        if (changeSet != null) {
+          checkSums.put(key(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()), changeSet.generateCheckSum());
+        }
+      }
+    }
+    return new CheckSumManifest(Collections.unmodifiableMap(checkSums));
+  }
+
+  /**
+   * Reads a {@link CheckSumManifest} previously {@linkplain
+   * #write(Writer) written} to the supplied {@link URL}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param url the {@link URL} to read; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link CheckSumManifest}
+   *
+   * @exception IOException if an error occurs
+   *
+   * @exception IllegalArgumentException if {@code url} is {@code
+   * null}
+   */
+  public static CheckSumManifest read(final URL url) throws IOException {
+    if (url == null) {
+      throw new IllegalArgumentException("url", new NullPointerException("url"));
+    }
+    InputStream stream = null;
+    try {
+      stream = ChangeLogScanner.openStream(url);
+      return read(stream);
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a {@link CheckSumManifest} previously {@linkplain
+   * #write(Writer) written} to the supplied {@link InputStream}, which
+   * is not closed.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param stream the {@link InputStream} to read; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link CheckSumManifest}
+   *
+   * @exception IOException if an error occurs or the manifest is
+   * malformed
+   *
+   * @exception IllegalArgumentException if {@code stream} is {@code
+   * null}
+   */
+  public static CheckSumManifest read(final InputStream stream) throws IOException {
+    if (stream == null) {
+      throw new IllegalArgumentException("stream", new NullPointerException("stream"));
+    }
+    final Map<String, CheckSum> checkSums = new LinkedHashMap<String, CheckSum>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        final int tabIndex = line.indexOf('\t');
+        if (tabIndex < 0) {
+          throw new IOException("Malformed checksum manifest line: " + line);
+        }
+        checkSums.put(line.substring(tabIndex + 1), CheckSum.parse(line.substring(0, tabIndex)));
+      }
+    }
+    return new CheckSumManifest(Collections.unmodifiableMap(checkSums));
+  }
+
+  /**
+   * Returns the {@link File} in which the {@link CheckSumManifest} for
+   * the supplied aggregate changelog {@link File} is stored.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param aggregateChangeLogFile the aggregate changelog {@link
+   * File}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link File}
+   *
+   * @exception IllegalArgumentException if {@code
+   * aggregateChangeLogFile} is {@code null}
+   */
+  public static File getManifestFile(final File aggregateChangeLogFile) {
+    if (aggregateChangeLogFile == null) {
+      throw new IllegalArgumentException("aggregateChangeLogFile", new NullPointerException("aggregateChangeLogFile"));
+    }
+    return new File(aggregateChangeLogFile.getPath() + ".checksums");
+  }
+
+  /**
+   * Returns the key under which a change set is recorded: its file
+   * path, identifier and author, separated by tabs, with any tabs,
+   * line breaks and backslashes within them escaped.
+   *
+   * @param filePath the change set's file path; may be {@code null}
+   *
+   * @param id the change set's identifier; may be {@code null}
+   *
+   * @param author the change set's author; may be {@code null}
+   *
+   * @return a non-{@code null} key
+   */
+  private static final String key(final String filePath, final String id, final String author) {
+    return escape(filePath) + '\t' + escape(id) + '\t' + escape(author);
+  }
+
+  private static final String escape(final String value) {
+    if (value == null) {
+      return "";
+    }
+    final StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      default:
+        sb.append(c);
+        break;
+      }
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,360 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+
+import java.net.URL;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import java.util.zip.ZipException;
+
+/**
+ * Finds Liquibase changelog fragments on a classpath of archives and
+ * directories and aggregates them into a single changelog in memory,
+ * exactly as a {@link LiquibaseChangeLogArtifactsProcessor} would,
+ * but without Maven.
+ *
+ * <p>This is useful where a classpath has already been resolved,
+ * for example when a test harness wants an aggregate changelog as it
+ * starts up:</p>
+ *
+ * <blockquote><pre>final String changeLog = new ClasspathChangeLogAggregator().aggregate(paths);</pre></blockquote>
+ *
+ * <p>Classpath elements are scanned in order, and the changelogs
+ * found in each are included in the order in which they are found.
+ * Changelogs in archives are included by way of {@code jar:} {@link
+ * URL}s, and changelogs in directories by way of {@code file:}
+ * {@link URL}s, just as a {@link LiquibaseChangeLogArtifactsProcessor}
+ * includes them.  The aggregate changelog is rendered by an {@link
+ * AggregateChangeLogGenerator}, which may be configured as usual.
+ * Neither this class nor the classes it uses depend on Maven.</p>
+ *
+ * <p>This class can also be run from the command line; see {@link
+ * #main(String[])}.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #aggregate(Collection)
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor
+ */
+public class ClasspathChangeLogAggregator {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The classpath resource names, or {@linkplain ResourceNamePattern
+   * globs}, of changelog fragments.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getChangeLogResourceNames()
+   *
+   * @see #setChangeLogResourceNames(Collection)
+   */
+  private Collection<String> changeLogResourceNames;
+
+  /**
+   * The {@link AggregateChangeLogGenerator} that will render the
+   * aggregate changelog.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getChangeLogGenerator()
+   *
+   * @see #setChangeLogGenerator(AggregateChangeLogGenerator)
+   */
+  private AggregateChangeLogGenerator changeLogGenerator;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ClasspathChangeLogAggregator} that looks for
+   * {@code META-INF/liquibase/changelog.xml} resources.
+   */
+  public ClasspathChangeLogAggregator() {
+    super();
+    this.setChangeLogGenerator(new AggregateChangeLogGenerator());
+    this.setChangeLogResourceNames(Collections.singleton("META-INF/liquibase/changelog.xml"));
+  }
+
+
+  /*
+   * Properties.
+   */
+
+
+  /**
+   * Returns the classpath resource names, or {@linkplain
+   * ResourceNamePattern globs}, of the changelog fragments that this
+   * {@link ClasspathChangeLogAggregator} will look for.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link Collection} of resource names, or {@code null}
+   *
+   * @see #setChangeLogResourceNames(Collection)
+   *
+   * @see LiquibaseChangeLogArtifactsProcessor#getChangeLogResourceNames()
+   */
+  public Collection<String> getChangeLogResourceNames() {
+    return this.changeLogResourceNames;
+  }
+
+  /**
+   * Sets the classpath resource names, or {@linkplain
+   * ResourceNamePattern globs}, of the changelog fragments that this
+   * {@link ClasspathChangeLogAggregator} will look for.
+   *
+   * @param changeLogResourceNames the resource names; may be {@code
+   * null}
+   *
+   * @see #getChangeLogResourceNames()
+   */
+  public void setChangeLogResourceNames(final Collection<String> changeLogResourceNames) {
+    this.changeLogResourceNames = changeLogResourceNames;
+  }
+
+  /**
+   * Returns the {@link AggregateChangeLogGenerator} that will render
+   * the aggregate changelog.
+   *
+   * <p>This method may return {@code null}, in which case a new
+   * {@link AggregateChangeLogGenerator} will be used.</p>
+   *
+   * @return an {@link AggregateChangeLogGenerator}, or {@code null}
+   *
+   * @see #setChangeLogGenerator(AggregateChangeLogGenerator)
+   */
+  public AggregateChangeLogGenerator getChangeLogGenerator() {
+    return this.changeLogGenerator;
+  }
+
+  /**
+   * Sets the {@link AggregateChangeLogGenerator} that will render the
+   * aggregate changelog.
+   *
+   * @param changeLogGenerator the {@link
+   * AggregateChangeLogGenerator}; may be {@code null}
+   *
+   * @see #getChangeLogGenerator()
+   */
+  public void setChangeLogGenerator(final AggregateChangeLogGenerator changeLogGenerator) {
+    this.changeLogGenerator = changeLogGenerator;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns {@link URL}s for the {@linkplain
+   * #getChangeLogResourceNames() changelog fragments} found in the
+   * supplied classpath elements, in classpath order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Elements that do not exist, and regular files that are not
+   * zip-format archives, are skipped.</p>
+   *
+   * @param classpath the archives and directories to scan; may be
+   * {@code null}; {@code null} elements are skipped
+   *
+   * @return a non-{@code null} {@link List} of changelog {@link URL}s
+   *
+   * @exception IOException if a classpath element could not be read
+   */
+  public List<URL> findChangeLogs(final Collection<? extends Path> classpath) throws IOException {
+    final List<URL> returnValue = new ArrayList<URL>();
+    final Collection<? extends String> names = this.getChangeLogResourceNames();
+    if (classpath != null && names != null && !names.isEmpty()) {
+      for (final Path element : classpath) {
+        if (element != null) {
+          final File file = element.toFile();
+          if (Files.isDirectory(element)) {
+            for (final String resourceName : ChangeLogScanner.findInDirectory(file, names)) {
+              returnValue.add(new File(file, resourceName).toURI().toURL());
+            }
+          } else if (Files.isRegularFile(element)) {
+            String[] entryNames = null;
+            try {
+              entryNames = ChangeLogScanner.listArchive(file);
+            } catch (final ZipException notAnArchive) {
+              // Such classpath elements simply contain no changelogs.
+            }
+            if (entryNames != null) {
+              returnValue.addAll(ChangeLogScanner.toURLs(file, ChangeLogScanner.select(entryNames, names)));
+            }
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * {@linkplain #findChangeLogs(Collection) Finds} the changelog
+   * fragments in the supplied classpath elements and returns the
+   * source of an aggregate changelog that includes them, rendered
+   * by this {@link ClasspathChangeLogAggregator}'s {@linkplain
+   * #getChangeLogGenerator() generator}.
+   *
+   * <p>This method may return {@code null} if no changelog fragments
+   * were found.  Nothing is written to disk.</p>
+   *
+   * @param classpath the archives and directories to scan; may be
+   * {@code null}; {@code null} elements are skipped
+   *
+   * @return the source of the aggregate changelog, or {@code null}
+   *
+   * @exception IOException if a classpath element could not be read
+   * or the aggregate changelog could not be rendered
+   *
+   * @see AggregateChangeLogGenerator#generate(Collection, java.io.Writer)
+   */
+  public String aggregate(final Collection<? extends Path> classpath) throws IOException {
+    final List<URL> changeLogs = this.findChangeLogs(classpath);
+    if (changeLogs.isEmpty()) {
+      return null;
+    }
+    AggregateChangeLogGenerator generator = this.getChangeLogGenerator();
+    if (generator == null) {
+      generator = new AggregateChangeLogGenerator();
+    }
+    final StringWriter writer = new StringWriter();
+    generator.generate(changeLogs, writer);
+    return writer.toString();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Aggregates the changelog fragments found on a classpath and
+   * writes the aggregate changelog to standard output or to a file.
+   *
+   * <p>Usage:</p>
+   *
+   * <blockquote><pre>java com.edugility.maven.liquibase.ClasspathChangeLogAggregator [-n resourceName]... [-o outputFile] classpath...</pre></blockquote>
+   *
+   * <p>Each {@code classpath} argument may name a single archive or
+   * directory, or several separated by the {@linkplain
+   * File#pathSeparator path separator}.  Each {@code -n} option adds
+   * a changelog resource name or {@linkplain ResourceNamePattern
+   * glob} to look for; if none is given, {@code
+   * META-INF/liquibase/changelog.xml} is used.  The process exits
+   * with a status of {@code 1} if no changelog fragments were found
+   * and {@code 2} if the arguments were not understood.</p>
+   *
+   * @param args the command line arguments; may be {@code null}
+   *
+   * @exception IOException if the classpath could not be read or the
+   * aggregate changelog could not be written
+   */
+  public static void main(final String[] args) throws IOException {
+    final ClasspathChangeLogAggregator aggregator = new ClasspathChangeLogAggregator();
+    final List<String> names = new ArrayList<String>();
+    final List<Path> classpath = new ArrayList<Path>();
+    Path output = null;
+    if (args != null) {
+      final Pattern pathSeparator = Pattern.compile(Pattern.quote(File.pathSeparator));
+      for (int i = 0; i < args.length; i++) {
+        final String arg = args[i];
+        if ("-n".equals(arg) && i + 1 < args.length) {
+          names.add(args[++i]);
+        } else if ("-o".equals(arg) && i + 1 < args.length) {
+          output = Paths.get(args[++i]);
+        } else if (arg != null && !arg.isEmpty() && !arg.startsWith("-")) {
+          for (final String element : pathSeparator.split(arg)) {
+            if (!element.isEmpty()) {
+              classpath.add(Paths.get(element));
+            }
+          }
+        } else {
+          usage(System.err);
+          System.exit(2);
+        }
+      }
+    }
+    if (classpath.isEmpty()) {
+      usage(System.err);
+      System.exit(2);
+    }
+    if (!names.isEmpty()) {
+      aggregator.setChangeLogResourceNames(names);
+    }
+    final String changeLog = aggregator.aggregate(classpath);
+    if (changeLog == null) {
+      System.err.println("No changelogs named " + aggregator.getChangeLogResourceNames() + " were found");
+      System.exit(1);
+    }
+    if (output == null) {
+      System.out.print(changeLog);
+      System.out.flush();
+    } else {
+      final AggregateChangeLogGenerator generator = aggregator.getChangeLogGenerator();
+      String characterSet = generator == null ? null : generator.getCharacterSet();
+      if (characterSet == null) {
+        characterSet = "UTF-8";
+      }
+      Files.write(output, changeLog.getBytes(characterSet));
+    }
+  }
+
+  private static final void usage(final PrintStream stream) {
+    stream.println("Usage: java " + ClasspathChangeLogAggregator.class.getName() + " [-n resourceName]... [-o outputFile] classpath...");
+  }
+
+}
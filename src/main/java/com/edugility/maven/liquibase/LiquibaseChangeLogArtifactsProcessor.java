@@ -27,22 +27,50 @@
  */
 package com.edugility.maven.liquibase;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 
+import java.nio.file.ClosedWatchServiceException;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.zip.ZipException;
 
 import com.edugility.maven.ArtifactsProcessingException;
 import com.edugility.maven.ArtifactsProcessor;
 
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.DatabaseChangeLog;
+
+import liquibase.exception.LiquibaseException;
+
+import liquibase.parser.ChangeLogParserFactory;
+
+import liquibase.resource.ResourceAccessor;
+
 import org.apache.maven.artifact.Artifact;
 
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
 import org.apache.maven.plugin.logging.Log;
 
 import org.apache.maven.model.Build;
@@ -97,6 +125,229 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
    */
   private AggregateChangeLogGenerator changeLogGenerator;
 
+  /**
+   * Additional {@link AggregateChangeLogGenerator}s that will
+   * generate aggregate changelogs from the same changelog fragments.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getAdditionalChangeLogGenerators()
+   *
+   * @see #setAdditionalChangeLogGenerators(Collection)
+   */
+  private Collection<AggregateChangeLogGenerator> additionalChangeLogGenerators;
+
+  /**
+   * The maximum number of aggregate changelogs that will be rendered
+   * concurrently.
+   *
+   * @see #getGenerationParallelism()
+   *
+   * @see #setGenerationParallelism(int)
+   */
+  private int generationParallelism;
+
+  /**
+   * The maximum number of artifacts that will be scanned for
+   * changelog fragments concurrently.
+   *
+   * @see #getScanParallelism()
+   *
+   * @see #setScanParallelism(int)
+   */
+  private int scanParallelism;
+
+  /**
+   * Whether a persistent index of previous artifact scans will be
+   * consulted and maintained.
+   *
+   * @see #isScanIndexEnabled()
+   *
+   * @see #setScanIndexEnabled(boolean)
+   */
+  private boolean scanIndexEnabled;
+
+  /**
+   * Whether the names of the entries in each archive scanned will be
+   * remembered for the rest of the build.
+   *
+   * @see #isArchiveEntryCacheEnabled()
+   *
+   * @see #setArchiveEntryCacheEnabled(boolean)
+   */
+  private boolean archiveEntryCacheEnabled;
+
+  /**
+   * Whether artifacts will be scanned, and their changelogs included,
+   * in dependency order.
+   *
+   * @see #isDependencyOrderEnabled()
+   *
+   * @see #setDependencyOrderEnabled(boolean)
+   */
+  private boolean dependencyOrderEnabled;
+
+  /**
+   * Whether changelogs found in archives will be copied to the
+   * filesystem and included from there.
+   *
+   * @see #isExtractChangeLogs()
+   *
+   * @see #setExtractChangeLogs(boolean)
+   */
+  private boolean extractChangeLogs;
+
+  /**
+   * The directory into which changelogs found in archives will be
+   * copied.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getChangeLogExtractionDirectory()
+   *
+   * @see #setChangeLogExtractionDirectory(File)
+   */
+  private File changeLogExtractionDirectory;
+
+  /**
+   * Whether a {@link ChangeLogCache} shared by all Maven processes on
+   * this host will be used.
+   *
+   * @see #isSharedCacheEnabled()
+   *
+   * @see #setSharedCacheEnabled(boolean)
+   */
+  private boolean sharedCacheEnabled;
+
+  /**
+   * The root directory of the shared {@link ChangeLogCache}.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getSharedCacheDirectory()
+   *
+   * @see #setSharedCacheDirectory(File)
+   */
+  private File sharedCacheDirectory;
+
+  /**
+   * The size in bytes beyond which the shared {@link ChangeLogCache}
+   * will be trimmed.
+   *
+   * @see #getSharedCacheMaximumSize()
+   *
+   * @see #setSharedCacheMaximumSize(long)
+   */
+  private long sharedCacheMaximumSize;
+
+  /**
+   * The {@link File} in which a persistent index of previous artifact
+   * scans is kept.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getScanIndexFile()
+   *
+   * @see #setScanIndexFile(File)
+   */
+  private File scanIndexFile;
+
+  /**
+   * Whether the current project's output directories will continue to
+   * be watched for changelog fragments after {@link
+   * #process(MavenProject, Collection, Log)} returns.
+   *
+   * @see #isWatchProjectDirectories()
+   *
+   * @see #setWatchProjectDirectories(boolean)
+   */
+  private boolean watchProjectDirectories;
+
+  /**
+   * The {@link ArtifactFilter} that decides which {@link Artifact}s
+   * are worth scanning for changelog fragments.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getArtifactFilter()
+   *
+   * @see #setArtifactFilter(ArtifactFilter)
+   */
+  private ArtifactFilter artifactFilter;
+
+  /**
+   * Whether a {@link CheckSumManifest} will be written next to the
+   * aggregate changelog.
+   *
+   * @see #isCheckSumManifestEnabled()
+   *
+   * @see #setCheckSumManifestEnabled(boolean)
+   */
+  private boolean checkSumManifestEnabled;
+
+  /**
+   * Whether {@link ChangeLogStatistics} gathered during {@link
+   * #process(MavenProject, Collection, Log)} will be written to a
+   * JSON file.
+   *
+   * @see #isStatisticsFileEnabled()
+   *
+   * @see #setStatisticsFileEnabled(boolean)
+   */
+  private boolean statisticsFileEnabled;
+
+  /**
+   * The {@link File} to which {@link ChangeLogStatistics} will be
+   * written as JSON.
+   *
+   * <p>This field may be {@code null}.</p>
+   *
+   * @see #getStatisticsFile()
+   *
+   * @see #setStatisticsFile(File)
+   */
+  private File statisticsFile;
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The {@link ChangeLogDirectoryWatcher}s started by {@link
+   * LiquibaseChangeLogArtifactsProcessor} instances in this Java
+   * Virtual Machine, indexed by the {@linkplain
+   * ChangeLogDirectoryWatcher#getDirectories() project directories}
+   * that each one watches, so that there is at most one per project.
+   *
+   * <p>This field is never {@code null}.  Access to it must be
+   * synchronized on it.</p>
+   *
+   * @see #setWatchProjectDirectories(boolean)
+   */
+  private static final Map<List<File>, ChangeLogDirectoryWatcher> watchers = new HashMap<List<File>, ChangeLogDirectoryWatcher>();
+
+  /**
+   * Whether a shutdown hook that {@linkplain #closeWatchers() closes}
+   * all {@linkplain #watchers watchers} has been added.
+   *
+   * <p>Access to this field must be synchronized on {@link
+   * #watchers}.</p>
+   */
+  private static boolean watcherShutdownHookAdded;
+
+  /**
+   * The {@link ArchiveEntryCache} shared by all {@link
+   * LiquibaseChangeLogArtifactsProcessor} instances in this Java
+   * Virtual Machine, holding at most about 16 MB of entry names.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #setArchiveEntryCacheEnabled(boolean)
+   */
+  private static final ArchiveEntryCache archiveEntries = new ArchiveEntryCache(16L * 1024L * 1024L);
+
 
   /*
    * Constructors.
@@ -110,6 +361,13 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
     super();
     this.setChangeLogGenerator(new AggregateChangeLogGenerator());
     this.setChangeLogResourceNames(Collections.singleton("META-INF/liquibase/changelog.xml"));
+    this.setScanParallelism(1);
+    this.setGenerationParallelism(1);
+    this.setScanIndexEnabled(true);
+    this.setArchiveEntryCacheEnabled(true);
+    this.setDependencyOrderEnabled(true);
+    this.setSharedCacheMaximumSize(256L * 1024L * 1024L);
+    this.setArtifactFilter(new ChangeLogArtifactFilter());
   }
 
 
@@ -146,6 +404,84 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
     this.changeLogGenerator = changeLogGenerator;
   }
 
+  /**
+   * Returns the {@link AggregateChangeLogGenerator}s, in addition to
+   * the {@linkplain #getChangeLogGenerator() principal one}, that
+   * will generate aggregate changelogs from the changelog fragments
+   * that are found.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * <p>This is useful when one aggregate changelog is needed per
+   * tenant or profile, each with its own {@linkplain
+   * AggregateChangeLogGenerator#getAggregateChangeLogFile() file},
+   * {@linkplain AggregateChangeLogGenerator#getProperties()
+   * properties} and {@linkplain
+   * AggregateChangeLogGenerator#getTemplate() template}: artifacts
+   * are scanned only once, and all of the aggregate changelogs are
+   * then {@linkplain AggregateChangeLogGenerator#generateAll(Collection,
+   * Collection, int, ChangeLogStatistics) generated together}, up to
+   * {@linkplain #getGenerationParallelism() several at a time}.</p>
+   *
+   * @return a {@link Collection} of {@link
+   * AggregateChangeLogGenerator}s, or {@code null}
+   *
+   * @see #setAdditionalChangeLogGenerators(Collection)
+   */
+  public Collection<AggregateChangeLogGenerator> getAdditionalChangeLogGenerators() {
+    return this.additionalChangeLogGenerators;
+  }
+
+  /**
+   * Sets the {@link AggregateChangeLogGenerator}s, in addition to
+   * the {@linkplain #getChangeLogGenerator() principal one}, that
+   * will generate aggregate changelogs from the changelog fragments
+   * that are found.
+   *
+   * @param additionalChangeLogGenerators the additional {@link
+   * AggregateChangeLogGenerator}s; may be {@code null}
+   *
+   * @see #getAdditionalChangeLogGenerators()
+   */
+  public void setAdditionalChangeLogGenerators(final Collection<AggregateChangeLogGenerator> additionalChangeLogGenerators) {
+    this.additionalChangeLogGenerators = additionalChangeLogGenerators;
+  }
+
+  /**
+   * Returns the maximum number of aggregate changelogs that this
+   * {@link LiquibaseChangeLogArtifactsProcessor} will render
+   * concurrently when there are {@linkplain
+   * #getAdditionalChangeLogGenerators() additional generators}.
+   *
+   * <p>By default, this method returns {@code 1}.  A return value
+   * less than {@code 1} means that the number of {@linkplain
+   * Runtime#availableProcessors() available processors} will be used
+   * instead.</p>
+   *
+   * @return the maximum number of aggregate changelogs to render
+   * concurrently
+   *
+   * @see #setGenerationParallelism(int)
+   */
+  public int getGenerationParallelism() {
+    return this.generationParallelism;
+  }
+
+  /**
+   * Sets the maximum number of aggregate changelogs that this {@link
+   * LiquibaseChangeLogArtifactsProcessor} will render concurrently.
+   *
+   * @param generationParallelism the maximum number of aggregate
+   * changelogs to render concurrently; if less than {@code 1}, the
+   * number of {@linkplain Runtime#availableProcessors() available
+   * processors} will be used
+   *
+   * @see #getGenerationParallelism()
+   */
+  public void setGenerationParallelism(final int generationParallelism) {
+    this.generationParallelism = generationParallelism;
+  }
+
   /**
    * Returns the relative names of resources representing Liquibase
    * changelog fragments that this {@link
@@ -156,6 +492,15 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
    * <p>Typically, this method returns a singleton {@link Collection}
    * containing the text {@code META-INF/liquibase/changelog.xml}.</p>
    *
+   * <p>Any element may instead be a glob, such as {@code
+   * META-INF/liquibase/*}{@code /changelog-*.xml}, in which case every
+   * matching resource is found.  {@code *} and {@code ?} match within
+   * a single {@code /}-separated segment, {@code **} matches across
+   * segments, and {@code [...]} and <code>{a,b}</code> are also
+   * supported.  The matches of each glob are included in sorted
+   * order, so the order of the generated {@code <include>} elements
+   * is deterministic.</p>
+   *
    * @return a {@link Collection} of relative resource names
    * representing Liquibase changelog fragments, or {@code null}
    *
@@ -178,128 +523,1125 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
     this.changeLogResourceNames = changeLogResourceNames;
   }
 
-
-  /*
-   * ArtifactsProcessor implementation.
+  /**
+   * Returns the maximum number of artifacts that this {@link
+   * LiquibaseChangeLogArtifactsProcessor} will scan for changelog
+   * fragments concurrently.
+   *
+   * <p>By default, this method returns {@code 1}, meaning that
+   * artifacts are scanned one after the other on the calling
+   * thread.</p>
+   *
+   * <p>A return value less than {@code 1} means that the number of
+   * {@linkplain Runtime#availableProcessors() available processors}
+   * will be used instead.</p>
+   *
+   * <p>Regardless of the value returned by this method, the order of
+   * the changelog fragments that are found always mirrors the order
+   * of the artifacts supplied to the {@link #process(MavenProject,
+   * Collection, Log)} method, so the order of the {@code <include>}
+   * elements in the generated changelog is unaffected.</p>
+   *
+   * @return the maximum number of artifacts to scan concurrently
+   *
+   * @see #setScanParallelism(int)
    */
-
+  public int getScanParallelism() {
+    return this.scanParallelism;
+  }
 
   /**
-   * Harvests {@code jar:} {@link URL}s from the supplied resolved
-   * {@link Artifact}s and lists them in topological order as {@code
-   * <include>} elements inside a generated Liquibase changelog file.
+   * Sets the maximum number of artifacts that this {@link
+   * LiquibaseChangeLogArtifactsProcessor} will scan for changelog
+   * fragments concurrently.
    *
-   * <p>This method never returns {@code null}.</p>
+   * @param scanParallelism the new value; if less than {@code 1} then
+   * the number of {@linkplain Runtime#availableProcessors() available
+   * processors} will be used instead
    *
-   * @param project the {@link MavenProject} currently in effect; will
-   * not be {@code null}
+   * @see #getScanParallelism()
+   */
+  public void setScanParallelism(final int scanParallelism) {
+    this.scanParallelism = scanParallelism;
+  }
+
+  /**
+   * Returns {@code true} if this {@link
+   * LiquibaseChangeLogArtifactsProcessor} will record which changelog
+   * fragments were found in which artifacts in a persistent index,
+   * and will answer subsequent scans of unchanged artifacts from that
+   * index without opening them.
    *
-   * @param artifacts a {@link Collection} of {@link Artifact}s
-   * representing the full, transitive set of resolved dependencies of
-   * the supplied {@link MavenProject}; will not be {@code null}
+   * <p>By default, this method returns {@code true}.</p>
    *
-   * @param log a {@link Log} for logging to a Maven console; may be
-   * {@code null}
+   * <p>An artifact is considered unchanged if its path, {@linkplain
+   * File#length() length} and {@linkplain File#lastModified() last
+   * modification time} are the same as they were when it was last
+   * scanned for the same {@linkplain #getChangeLogResourceNames()
+   * changelog resource names}.  Directory artifacts are never
+   * indexed.</p>
    *
-   * @return the supplied artifacts
+   * @return {@code true} if a persistent scan index is in use; {@code
+   * false} otherwise
    *
-   * @exception ArtifactsProcessingException if an error occurs
+   * @see #setScanIndexEnabled(boolean)
    *
-   * @see ArtifactsProcessor
+   * @see #getScanIndexFile()
    */
-  @Override
-  public Collection<? extends Artifact> process(final MavenProject project, final Collection<? extends Artifact> artifacts, final Log log) throws ArtifactsProcessingException {
-    final Collection<? extends URL> changeLogUrls = this.gatherUrls(project, artifacts, log);
-    if (changeLogUrls != null && !changeLogUrls.isEmpty()) {
-      this.generateChangeLog(project, changeLogUrls, log);
-    }
-    return artifacts;
+  public boolean isScanIndexEnabled() {
+    return this.scanIndexEnabled;
   }
 
+  /**
+   * Sets whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will make use of a persistent index of previous artifact scans.
+   *
+   * @param scanIndexEnabled whether a persistent scan index will be
+   * used
+   *
+   * @see #isScanIndexEnabled()
+   */
+  public void setScanIndexEnabled(final boolean scanIndexEnabled) {
+    this.scanIndexEnabled = scanIndexEnabled;
+  }
 
-  /*
-   * Private methods.
+  /**
+   * Returns whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will remember, in memory and for as long as the Java Virtual
+   * Machine runs, the names of all of the entries in each archive it
+   * opens.  At most about 16 MB of entry names are remembered in all;
+   * beyond that, those of the least recently used archives are
+   * forgotten.
+   *
+   * <p>By default, this method returns {@code true}.</p>
+   *
+   * <p>The memory is shared by all {@link
+   * LiquibaseChangeLogArtifactsProcessor}s, so when several
+   * executions in a build scan the same artifacts for different
+   * {@linkplain #getChangeLogResourceNames() changelog resource
+   * names}, each archive is opened only by the first of them.  An
+   * archive whose {@linkplain File#length() length} or {@linkplain
+   * File#lastModified() last modification time} has changed is
+   * opened again.  Unlike the {@linkplain #isScanIndexEnabled() scan
+   * index}, nothing is written to disk.</p>
+   *
+   * @return {@code true} if archive entry names will be remembered;
+   * {@code false} otherwise
+   *
+   * @see #setArchiveEntryCacheEnabled(boolean)
    */
+  public boolean isArchiveEntryCacheEnabled() {
+    return this.archiveEntryCacheEnabled;
+  }
 
+  /**
+   * Sets whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will remember the names of all of the entries in each archive it
+   * opens, for as long as the Java Virtual Machine runs and within a
+   * fixed bound on the memory they occupy.
+   *
+   * @param archiveEntryCacheEnabled whether archive entry names will
+   * be remembered
+   *
+   * @see #isArchiveEntryCacheEnabled()
+   */
+  public void setArchiveEntryCacheEnabled(final boolean archiveEntryCacheEnabled) {
+    this.archiveEntryCacheEnabled = archiveEntryCacheEnabled;
+  }
 
-  private final Collection<? extends URL> gatherUrls(final MavenProject project, final Collection<? extends Artifact> artifacts, final Log log) throws ArtifactsProcessingException {
-    final Collection<? extends URL> artifactUrls = this.gatherArtifactUrls(project, artifacts, log);
-    final int artifactUrlsSize = artifactUrls == null ? 0 : artifactUrls.size();
+  /**
+   * Returns whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will include the changelogs found in {@link Artifact}s in
+   * dependency order, so that the changelogs of an {@link Artifact}
+   * are always included before those of any {@link Artifact} that
+   * depends upon it.
+   *
+   * <p>By default, this method returns {@code true}.</p>
+   *
+   * <p>Dependency order is worked out from each {@link Artifact}'s
+   * {@linkplain Artifact#getDependencyTrail() dependency trail} by an
+   * {@link ArtifactDependencyGraph}.  {@link Artifact}s that do not
+   * depend upon one another, and {@link Artifact}s without dependency
+   * trails, keep the order in which they were supplied to the {@link
+   * #process(MavenProject, Collection, Log)} method.  Changelogs found
+   * in the current {@link MavenProject} itself are always included
+   * last.</p>
+   *
+   * @return {@code true} if changelogs will be included in dependency
+   * order; {@code false} if they will be included in the order in
+   * which their {@link Artifact}s were supplied
+   *
+   * @see #setDependencyOrderEnabled(boolean)
+   */
+  public boolean isDependencyOrderEnabled() {
+    return this.dependencyOrderEnabled;
+  }
 
-    final Collection<? extends URL> projectUrls = this.gatherProjectUrls(project, log);
-    final int projectUrlsSize = projectUrls == null ? 0 : projectUrls.size();
+  /**
+   * Sets whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will include the changelogs found in {@link Artifact}s in
+   * dependency order.
+   *
+   * @param dependencyOrderEnabled whether changelogs will be included
+   * in dependency order
+   *
+   * @see #isDependencyOrderEnabled()
+   */
+  public void setDependencyOrderEnabled(final boolean dependencyOrderEnabled) {
+    this.dependencyOrderEnabled = dependencyOrderEnabled;
+  }
 
-    final Collection<URL> returnValue = new ArrayList<URL>(artifactUrlsSize + projectUrlsSize);
-    if (artifactUrlsSize > 0) {
-      returnValue.addAll(artifactUrls);
-    }
-    if (projectUrlsSize > 0) {
-      returnValue.addAll(projectUrls);
-    }
-    return returnValue;
+  /**
+   * Returns whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will copy the changelogs it finds in archives, together with the
+   * entries alongside them, into the {@linkplain
+   * #getChangeLogExtractionDirectory() changelog extraction
+   * directory} and include them from there by way of {@code file:}
+   * {@link URL}s instead of {@code jar:} {@link URL}s.
+   *
+   * <p>By default, this method returns {@code false}.</p>
+   *
+   * <p>Entries from each {@link Artifact} are copied into a
+   * subdirectory named {@code <groupId>/<artifactId>}, or {@code
+   * <groupId>/<artifactId>-<classifier>} if the {@link Artifact} has
+   * a classifier, and are copied only when their contents have
+   * changed.  See {@link ChangeLogExtractor} for details.</p>
+   *
+   * <p>Note that Liquibase identifies a change set in part by the
+   * path of the changelog it was included from, unless that changelog
+   * declares a {@code logicalFilePath}.</p>
+   *
+   * @return {@code true} if changelogs will be extracted; {@code
+   * false} otherwise
+   *
+   * @see #setExtractChangeLogs(boolean)
+   */
+  public boolean isExtractChangeLogs() {
+    return this.extractChangeLogs;
   }
 
-  private final Collection<? extends URL> gatherArtifactUrls(final MavenProject project, final Collection<? extends Artifact> artifacts, final Log log) throws ArtifactsProcessingException {
-    Collection<URL> returnValue = null;
-    if (artifacts != null && !artifacts.isEmpty()) {
-      final Collection<? extends String> names = this.getChangeLogResourceNames();
-      if (names != null && !names.isEmpty()) {
-        for (final Artifact artifact : artifacts) {
-          if (artifact != null && artifact.isResolved() && (project == null || !artifact.equals(project.getArtifact()))) {
-            final File artifactFile = artifact.getFile();
-            if (artifactFile != null && artifactFile.canRead()) {
-              for (final String name : names) {
-                if (name != null) {
-                  URL url = null;
-                  try {
-                    url = artifactFile.toURI().toURL();
-                  } catch (final MalformedURLException wrapMe) {
-                    throw new ArtifactsProcessingException(wrapMe);
-                  }
-                  final URLClassLoader loader = new URLClassLoader(new URL[] { url }, Thread.currentThread().getContextClassLoader());
-                  final URL jarUrlToChangeLog = loader.getResource(name);
-                  if (jarUrlToChangeLog != null) {
-                    if (returnValue == null) {
-                      returnValue = new ArrayList<URL>(artifacts.size() * names.size());
-                    }
-                    returnValue.add(jarUrlToChangeLog);
-                  }
-                }
-              }
-            }
-          }
-        }
-      }
-    }
-    return returnValue;
+  /**
+   * Sets whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will copy the changelogs it finds in archives to the filesystem
+   * and include them from there.
+   *
+   * @param extractChangeLogs whether changelogs will be extracted
+   *
+   * @see #isExtractChangeLogs()
+   */
+  public void setExtractChangeLogs(final boolean extractChangeLogs) {
+    this.extractChangeLogs = extractChangeLogs;
   }
 
-  private final Collection<? extends URL> gatherProjectUrls(final MavenProject project, final Log log) throws ArtifactsProcessingException {
-    Collection<URL> urls = null;
+  /**
+   * Returns the directory into which changelogs found in archives will
+   * be copied if {@linkplain #isExtractChangeLogs() extraction} is
+   * enabled.
+   *
+   * <p>This method may return {@code null}, in which case a directory
+   * named {@code liquibase-changelogs} in the current {@link
+   * MavenProject}'s {@linkplain Build#getDirectory() build directory}
+   * will be used.</p>
+   *
+   * @return the changelog extraction directory, or {@code null}
+   *
+   * @see #setChangeLogExtractionDirectory(File)
+   */
+  public File getChangeLogExtractionDirectory() {
+    return this.changeLogExtractionDirectory;
+  }
+
+  /**
+   * Sets the directory into which changelogs found in archives will
+   * be copied if {@linkplain #isExtractChangeLogs() extraction} is
+   * enabled.
+   *
+   * @param changeLogExtractionDirectory the new directory; may be
+   * {@code null}
+   *
+   * @see #getChangeLogExtractionDirectory()
+   */
+  public void setChangeLogExtractionDirectory(final File changeLogExtractionDirectory) {
+    this.changeLogExtractionDirectory = changeLogExtractionDirectory;
+  }
+
+  /**
+   * Returns whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will use a {@link ChangeLogCache} shared by all Maven processes
+   * on this host to record the entries of each archive it scans and,
+   * if changelogs are being {@linkplain #isExtractChangeLogs()
+   * extracted}, the changelogs extracted from it.
+   *
+   * <p>By default, this method returns {@code false}.</p>
+   *
+   * <p>The cache is content-addressed: archives are identified by
+   * the SHA-256 digest of their contents, so projects that depend on
+   * the same artifacts share cache entries, wherever those artifacts
+   * were resolved from.  Concurrent builds coordinate their use of
+   * the cache with file locks.  Once a build is done with the cache,
+   * the least recently used entries are evicted until it is no larger
+   * than its {@linkplain #getSharedCacheMaximumSize() maximum
+   * size}.  Should the cache prove unusable, archives are read
+   * directly instead.</p>
+   *
+   * @return {@code true} if the shared cache will be used; {@code
+   * false} otherwise
+   *
+   * @see #setSharedCacheEnabled(boolean)
+   *
+   * @see ChangeLogCache
+   */
+  public boolean isSharedCacheEnabled() {
+    return this.sharedCacheEnabled;
+  }
+
+  /**
+   * Sets whether this {@link LiquibaseChangeLogArtifactsProcessor}
+   * will use a {@link ChangeLogCache} shared by all Maven processes
+   * on this host.
+   *
+   * @param sharedCacheEnabled whether the shared cache will be used
+   *
+   * @see #isSharedCacheEnabled()
+   */
+  public void setSharedCacheEnabled(final boolean sharedCacheEnabled) {
+    this.sharedCacheEnabled = sharedCacheEnabled;
+  }
+
+  /**
+   * Returns the root directory of the shared {@link ChangeLogCache}.
+   *
+   * <p>This method may return {@code null}, in which case a directory
+   * named {@code liquibase-cache} in the {@code .m2} directory in the
+   * user's home directory will be used.</p>
+   *
+   * @return the shared cache directory, or {@code null}
+   *
+   * @see #setSharedCacheDirectory(File)
+   *
+   * @see #isSharedCacheEnabled()
+   */
+  public File getSharedCacheDirectory() {
+    return this.sharedCacheDirectory;
+  }
+
+  /**
+   * Sets the root directory of the shared {@link ChangeLogCache}.
+   *
+   * @param sharedCacheDirectory the new directory; may be {@code
+   * null}
+   *
+   * @see #getSharedCacheDirectory()
+   */
+  public void setSharedCacheDirectory(final File sharedCacheDirectory) {
+    this.sharedCacheDirectory = sharedCacheDirectory;
+  }
+
+  /**
+   * Returns the size in bytes beyond which the shared {@link
+   * ChangeLogCache} will be trimmed.
+   *
+   * <p>By default, this method returns 256 megabytes.</p>
+   *
+   * @return the maximum size of the shared cache in bytes
+   *
+   * @see #setSharedCacheMaximumSize(long)
+   *
+   * @see #isSharedCacheEnabled()
+   */
+  public long getSharedCacheMaximumSize() {
+    return this.sharedCacheMaximumSize;
+  }
+
+  /**
+   * Sets the size in bytes beyond which the shared {@link
+   * ChangeLogCache} will be trimmed.
+   *
+   * @param sharedCacheMaximumSize the maximum size of the shared
+   * cache in bytes; must not be less than {@code 0}
+   *
+   * @exception IllegalArgumentException if {@code
+   * sharedCacheMaximumSize} is less than {@code 0}
+   *
+   * @see #getSharedCacheMaximumSize()
+   */
+  public void setSharedCacheMaximumSize(final long sharedCacheMaximumSize) {
+    if (sharedCacheMaximumSize < 0L) {
+      throw new IllegalArgumentException("sharedCacheMaximumSize < 0: " + sharedCacheMaximumSize);
+    }
+    this.sharedCacheMaximumSize = sharedCacheMaximumSize;
+  }
+
+  /**
+   * Returns the {@link File} in which this {@link
+   * LiquibaseChangeLogArtifactsProcessor} keeps its persistent index
+   * of previous artifact scans.
+   *
+   * <p>This method may return {@code null}, in which case a file
+   * named {@code maven-liquibase-scan-index.properties} in the
+   * current {@link MavenProject}'s {@linkplain Build#getDirectory()
+   * build directory} will be used instead.  Pointing this property at
+   * a location shared by several projects, such as one beneath {@code
+   * ~/.m2}, lets them share one another's scan results; concurrent
+   * builds merge their updates into it under a file lock, and entries
+   * for archives that no longer exist are dropped as it is
+   * written.</p>
+   *
+   * @return the {@link File} housing the scan index, or {@code null}
+   *
+   * @see #setScanIndexFile(File)
+   *
+   * @see #isScanIndexEnabled()
+   */
+  public File getScanIndexFile() {
+    return this.scanIndexFile;
+  }
+
+  /**
+   * Sets the {@link File} in which this {@link
+   * LiquibaseChangeLogArtifactsProcessor} keeps its persistent index
+   * of previous artifact scans.
+   *
+   * @param scanIndexFile the new {@link File}; may be {@code null}
+   *
+   * @see #getScanIndexFile()
+   */
+  public void setScanIndexFile(final File scanIndexFile) {
+    this.scanIndexFile = scanIndexFile;
+  }
+
+  /**
+   * Returns {@code true} if, once the aggregate changelog has been
+   * generated, this {@link LiquibaseChangeLogArtifactsProcessor} will
+   * keep watching the current {@link MavenProject}'s {@linkplain
+   * Build#getOutputDirectory() output} and {@linkplain
+   * Build#getTestOutputDirectory() test output} directories in the
+   * background and regenerate the aggregate changelog whenever a
+   * changelog fragment appears in, disappears from or changes within
+   * them.
+   *
+   * <p>By default, this method returns {@code false}.</p>
+   *
+   * <p>This is useful only when the Java Virtual Machine outlives the
+   * build, as it does in an IDE or a Maven daemon.  Watching is
+   * performed by a {@link ChangeLogDirectoryWatcher} on a daemon
+   * thread.  At most one such watcher is kept per project; subsequent
+   * builds of that project take the changelogs in its directories
+   * from the watcher instead of probing the directories again, and
+   * reuse it as long as the changelog resource names and aggregate
+   * changelog file stay the same, replacing it otherwise.  All
+   * watchers are closed when the Java Virtual Machine shuts
+   * down.</p>
+   *
+   * @return {@code true} if project directories will be watched;
+   * {@code false} otherwise
+   *
+   * @see #setWatchProjectDirectories(boolean)
+   *
+   * @see ChangeLogDirectoryWatcher
+   */
+  public boolean isWatchProjectDirectories() {
+    return this.watchProjectDirectories;
+  }
+
+  /**
+   * Sets whether, once the aggregate changelog has been generated,
+   * this {@link LiquibaseChangeLogArtifactsProcessor} will keep
+   * watching the current {@link MavenProject}'s output directories in
+   * the background.
+   *
+   * @param watchProjectDirectories whether project directories will
+   * be watched
+   *
+   * @see #isWatchProjectDirectories()
+   */
+  public void setWatchProjectDirectories(final boolean watchProjectDirectories) {
+    this.watchProjectDirectories = watchProjectDirectories;
+  }
+
+
+  /**
+   * Returns the {@link ArtifactFilter} that decides, before any
+   * artifact file is opened, which {@link Artifact}s are worth
+   * scanning for changelog fragments.
+   *
+   * <p>This method may return {@code null}, in which case every
+   * resolved, readable {@link Artifact} is scanned.  By default it
+   * returns a {@link ChangeLogArtifactFilter} that excludes only
+   * {@code pom} artifacts.</p>
+   *
+   * <p>Because this property is declared in terms of an interface, a
+   * Maven plugin configuration must name the implementation to use,
+   * e.g. {@code <artifactFilter
+   * implementation="com.edugility.maven.liquibase.ChangeLogArtifactFilter">}.</p>
+   *
+   * @return an {@link ArtifactFilter}, or {@code null}
+   *
+   * @see #setArtifactFilter(ArtifactFilter)
+   *
+   * @see ChangeLogArtifactFilter
+   */
+  public ArtifactFilter getArtifactFilter() {
+    return this.artifactFilter;
+  }
+
+  /**
+   * Sets the {@link ArtifactFilter} that decides which {@link
+   * Artifact}s are worth scanning for changelog fragments.
+   *
+   * @param artifactFilter the new {@link ArtifactFilter}; may be
+   * {@code null} in which case every resolved, readable {@link
+   * Artifact} will be scanned
+   *
+   * @see #getArtifactFilter()
+   */
+  public void setArtifactFilter(final ArtifactFilter artifactFilter) {
+    this.artifactFilter = artifactFilter;
+  }
+
+
+  /**
+   * Returns {@code true} if, once the aggregate changelog has been
+   * generated, it will be parsed and a {@link CheckSumManifest}
+   * recording the checksum of every change set reachable from it
+   * will be {@linkplain CheckSumManifest#store(File) stored}
+   * {@linkplain CheckSumManifest#getManifestFile(File) next to it}.
+   *
+   * <p>By default, this method returns {@code false}.</p>
+   *
+   * <p>Relative changelog paths are resolved against the current
+   * {@link MavenProject}'s output directories and the supplied
+   * artifacts, much as they would be against a test classpath.</p>
+   *
+   * @return {@code true} if a {@link CheckSumManifest} will be
+   * written; {@code false} otherwise
+   *
+   * @see #setCheckSumManifestEnabled(boolean)
+   *
+   * @see CheckSumManifest
+   */
+  public boolean isCheckSumManifestEnabled() {
+    return this.checkSumManifestEnabled;
+  }
+
+  /**
+   * Sets whether a {@link CheckSumManifest} will be written next to
+   * the aggregate changelog.
+   *
+   * @param checkSumManifestEnabled whether a {@link
+   * CheckSumManifest} will be written
+   *
+   * @see #isCheckSumManifestEnabled()
+   */
+  public void setCheckSumManifestEnabled(final boolean checkSumManifestEnabled) {
+    this.checkSumManifestEnabled = checkSumManifestEnabled;
+  }
+
+
+  /**
+   * Returns {@code true} if the {@link ChangeLogStatistics} gathered
+   * during {@link #process(MavenProject, Collection, Log)}, which are
+   * always summarized in the Maven log, will also be written as JSON
+   * to the {@linkplain #getStatisticsFile() statistics file}, for
+   * example so that a continuous integration server can track them
+   * over time.
+   *
+   * <p>By default, this method returns {@code false}.</p>
+   *
+   * @return {@code true} if statistics will be written to a file;
+   * {@code false} otherwise
+   *
+   * @see #setStatisticsFileEnabled(boolean)
+   *
+   * @see ChangeLogStatistics#writeJson(java.io.Writer)
+   */
+  public boolean isStatisticsFileEnabled() {
+    return this.statisticsFileEnabled;
+  }
+
+  /**
+   * Sets whether the {@link ChangeLogStatistics} gathered during
+   * {@link #process(MavenProject, Collection, Log)} will also be
+   * written as JSON to the {@linkplain #getStatisticsFile()
+   * statistics file}.
+   *
+   * @param statisticsFileEnabled whether statistics will be written
+   * to a file
+   *
+   * @see #isStatisticsFileEnabled()
+   */
+  public void setStatisticsFileEnabled(final boolean statisticsFileEnabled) {
+    this.statisticsFileEnabled = statisticsFileEnabled;
+  }
+
+  /**
+   * Returns the {@link File} to which {@link ChangeLogStatistics}
+   * will be written as JSON if {@linkplain
+   * #isStatisticsFileEnabled() enabled}.
+   *
+   * <p>This method may return {@code null}, in which case a file
+   * named {@code maven-liquibase-statistics.json} in the current
+   * {@link MavenProject}'s {@linkplain Build#getDirectory() build
+   * directory} will be used.</p>
+   *
+   * @return the statistics {@link File}, or {@code null}
+   *
+   * @see #setStatisticsFile(File)
+   */
+  public File getStatisticsFile() {
+    return this.statisticsFile;
+  }
+
+  /**
+   * Sets the {@link File} to which {@link ChangeLogStatistics} will
+   * be written as JSON if {@linkplain #isStatisticsFileEnabled()
+   * enabled}.
+   *
+   * @param statisticsFile the new statistics {@link File}; may be
+   * {@code null}
+   *
+   * @see #getStatisticsFile()
+   */
+  public void setStatisticsFile(final File statisticsFile) {
+    this.statisticsFile = statisticsFile;
+  }
+
+
+  /*
+   * ArtifactsProcessor implementation.
+   */
+
+
+  /**
+   * Harvests {@code jar:} {@link URL}s from the supplied resolved
+   * {@link Artifact}s and lists them in topological order as {@code
+   * <include>} elements inside a generated Liquibase changelog file.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param project the {@link MavenProject} currently in effect; will
+   * not be {@code null}
+   *
+   * @param artifacts a {@link Collection} of {@link Artifact}s
+   * representing the full, transitive set of resolved dependencies of
+   * the supplied {@link MavenProject}; will not be {@code null}
+   *
+   * @param log a {@link Log} for logging to a Maven console; may be
+   * {@code null}
+   *
+   * @return the supplied artifacts
+   *
+   * @exception ArtifactsProcessingException if an error occurs
+   *
+   * @see ArtifactsProcessor
+   */
+  @Override
+  public Collection<? extends Artifact> process(final MavenProject project, final Collection<? extends Artifact> artifacts, final Log log) throws ArtifactsProcessingException {
+    final long start = System.nanoTime();
+    final ChangeLogStatistics statistics = new ChangeLogStatistics();
+    final Collection<? extends URL> artifactUrls = this.gatherArtifactUrls(project, artifacts, log, statistics);
+    final Collection<? extends URL> changeLogUrls = this.gatherUrls(project, artifactUrls, log, statistics);
+    if (changeLogUrls != null && !changeLogUrls.isEmpty()) {
+      final Collection<? extends File> changeLogFiles = this.generateChangeLogs(project, changeLogUrls, log, statistics);
+      if (this.isCheckSumManifestEnabled()) {
+        for (final File changeLogFile : changeLogFiles) {
+          this.writeCheckSumManifest(project, artifacts, changeLogFile, log, statistics);
+        }
+      }
+    }
+    if (this.isWatchProjectDirectories()) {
+      this.watch(project, artifactUrls, log);
+    }
+    statistics.time("total", start);
+    this.report(project, statistics, log);
+    return artifacts;
+  }
+
+
+  /*
+   * Private methods.
+   */
+
+
+  private final Collection<? extends URL> gatherUrls(final MavenProject project, final Collection<? extends URL> artifactUrls, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    final int artifactUrlsSize = artifactUrls == null ? 0 : artifactUrls.size();
+
+    final long start = System.nanoTime();
+    final Collection<? extends URL> projectUrls = this.gatherProjectUrls(project, log, statistics);
+    final int projectUrlsSize = projectUrls == null ? 0 : projectUrls.size();
+    statistics.time("projectScan", start);
+    statistics.add("changeLogsFound", artifactUrlsSize + projectUrlsSize);
+
+    final Collection<URL> returnValue = new ArrayList<URL>(artifactUrlsSize + projectUrlsSize);
+    if (artifactUrlsSize > 0) {
+      returnValue.addAll(artifactUrls);
+    }
+    if (projectUrlsSize > 0) {
+      returnValue.addAll(projectUrls);
+    }
+    return returnValue;
+  }
+
+  private final Collection<? extends URL> gatherArtifactUrls(final MavenProject project, final Collection<? extends Artifact> artifacts, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    final long start = System.nanoTime();
+    Collection<URL> returnValue = null;
+    if (artifacts != null && !artifacts.isEmpty()) {
+      final Collection<? extends String> names = this.getChangeLogResourceNames();
+      if (names != null && !names.isEmpty()) {
+        final ArtifactFilter filter = this.getArtifactFilter();
+        final Collection<? extends Artifact> orderedArtifacts;
+        if (this.isDependencyOrderEnabled()) {
+          orderedArtifacts = new ArtifactDependencyGraph(artifacts).sort();
+        } else {
+          orderedArtifacts = artifacts;
+        }
+        final List<Artifact> scannedArtifacts = new ArrayList<Artifact>(artifacts.size());
+        final List<File> artifactFiles = new ArrayList<File>(artifacts.size());
+        int filtered = 0;
+        int unavailable = 0;
+        for (final Artifact artifact : orderedArtifacts) {
+          if (artifact != null && (project == null || !artifact.equals(project.getArtifact()))) {
+            final File artifactFile = artifact.isResolved() ? artifact.getFile() : null;
+            if (artifactFile == null || !artifactFile.canRead()) {
+              unavailable++;
+              if (log != null && log.isDebugEnabled()) {
+                log.debug("Skipping " + artifact + " as it is unresolved or its file is unreadable");
+              }
+            } else if (filter == null || filter.include(artifact)) {
+              scannedArtifacts.add(artifact);
+              artifactFiles.add(artifactFile);
+            } else {
+              filtered++;
+              if (log != null && log.isDebugEnabled()) {
+                log.debug("Skipping " + artifact + " as it was excluded by " + filter);
+              }
+            }
+          }
+        }
+        statistics.add("artifactsScanned", artifactFiles.size());
+        statistics.add("artifactsFiltered", filtered);
+        statistics.add("artifactsUnavailable", unavailable);
+        if (log != null && log.isInfoEnabled()) {
+          log.info("Scanning " + artifactFiles.size() + " of " + artifacts.size() + " artifact(s) for changelogs (" + filtered + " filtered, " + unavailable + " unavailable)");
+        }
+        if (!artifactFiles.isEmpty()) {
+          final ChangeLogScanIndex index = this.loadScanIndex(project, log);
+          final ChangeLogCache cache = this.getSharedCache();
+          int parallelism = this.getScanParallelism();
+          if (parallelism < 1) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+          }
+          parallelism = Math.min(parallelism, artifactFiles.size());
+          final Collection<? extends Collection<? extends URL>> results;
+          if (parallelism > 1) {
+            results = this.scanConcurrently(artifactFiles, names, parallelism, index, cache, log, statistics);
+          } else {
+            final Collection<Collection<? extends URL>> sequentialResults = new ArrayList<Collection<? extends URL>>(artifactFiles.size());
+            for (final File artifactFile : artifactFiles) {
+              sequentialResults.add(this.scan(artifactFile, names, index, cache, log, statistics));
+            }
+            results = sequentialResults;
+          }
+          assert results != null;
+          this.storeScanIndex(index, log);
+          final File extractionDirectory = this.getExtractionDirectory(project);
+          final ChangeLogExtractor extractor;
+          if (extractionDirectory == null) {
+            extractor = null;
+          } else {
+            extractor = new ChangeLogExtractor(statistics, cache);
+          }
+          final long extractionStart = System.nanoTime();
+          int i = 0;
+          for (Collection<? extends URL> urls : results) {
+            final File artifactFile = artifactFiles.get(i);
+            final Artifact artifact = scannedArtifacts.get(i);
+            i++;
+            if (extractor != null && urls != null && !urls.isEmpty() && !artifactFile.isDirectory()) {
+              String subdirectoryName = artifact.getArtifactId();
+              final String classifier = artifact.getClassifier();
+              if (classifier != null && !classifier.isEmpty()) {
+                subdirectoryName = subdirectoryName + "-" + classifier;
+              }
+              try {
+                urls = extractor.extract(artifactFile, urls, new File(new File(extractionDirectory, artifact.getGroupId()), subdirectoryName));
+              } catch (final IOException wrapMe) {
+                throw new ArtifactsProcessingException(wrapMe);
+              }
+            }
+            if (urls != null && !urls.isEmpty()) {
+              if (returnValue == null) {
+                returnValue = new ArrayList<URL>(artifactFiles.size() * names.size());
+              }
+              returnValue.addAll(urls);
+            }
+          }
+          if (extractor != null) {
+            statistics.time("extraction", extractionStart);
+          }
+          if (cache != null) {
+            final long evictionStart = System.nanoTime();
+            try {
+              cache.evict();
+            } catch (final IOException notFatal) {
+              // The cache is only an optimization; the build can proceed.
+              if (log != null && log.isWarnEnabled()) {
+                log.warn("Could not trim shared changelog cache " + cache.getRoot(), notFatal);
+              }
+            }
+            statistics.time("sharedCacheEviction", evictionStart);
+          }
+        }
+      }
+    }
+    statistics.time("artifactScan", start);
+    return returnValue;
+  }
+
+  /**
+   * Scans each of the supplied {@link File}s for the supplied
+   * resource {@code names} using a pool of at most {@code
+   * parallelism} threads and returns the results in the same order
+   * as the {@link File}s were supplied.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param artifactFiles the {@link File}s to scan; must not be
+   * {@code null}
+   *
+   * @param names the resource names to look for; must not be {@code
+   * null}
+   *
+   * @param parallelism the number of threads to use; must be greater
+   * than {@code 1}
+   *
+   * @param index a {@link ChangeLogScanIndex} to consult and update;
+   * may be {@code null}
+   *
+   * @param cache a shared {@link ChangeLogCache} to consult and
+   * update; may be {@code null}
+   *
+   * @param log a {@link Log} for logging to a Maven console; may be
+   * {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record counters; must not be {@code null}
+   *
+   * @return a {@link List} of scan results, one per supplied {@link
+   * File}, in the same order; never {@code null}
+   *
+   * @exception ArtifactsProcessingException if any scan failed or
+   * the calling thread was interrupted
+   */
+  private final List<? extends Collection<? extends URL>> scanConcurrently(final List<? extends File> artifactFiles, final Collection<? extends String> names, final int parallelism, final ChangeLogScanIndex index, final ChangeLogCache cache, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    final List<Collection<? extends URL>> returnValue = new ArrayList<Collection<? extends URL>>(artifactFiles.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      final List<Future<Collection<? extends URL>>> futures = new ArrayList<Future<Collection<? extends URL>>>(artifactFiles.size());
+      for (final File artifactFile : artifactFiles) {
+        futures.add(executor.submit(new Callable<Collection<? extends URL>>() {
+            @Override
+            public final Collection<? extends URL> call() throws ArtifactsProcessingException {
+              return scan(artifactFile, names, index, cache, log, statistics);
+            }
+          }));
+      }
+      // Futures are harvested in submission order so that the
+      // results mirror the dependency order regardless of which scan
+      // finished first.
+      for (final Future<Collection<? extends URL>> future : futures) {
+        returnValue.add(future.get());
+      }
+    } catch (final ExecutionException executionException) {
+      final Throwable cause = executionException.getCause();
+      if (cause instanceof ArtifactsProcessingException) {
+        throw (ArtifactsProcessingException)cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else if (cause instanceof Error) {
+        throw (Error)cause;
+      } else {
+        throw new ArtifactsProcessingException(cause);
+      }
+    } catch (final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new ArtifactsProcessingException(interruptedException);
+    } finally {
+      executor.shutdownNow();
+    }
+    return returnValue;
+  }
+
+  private final Collection<? extends URL> scan(final File artifactFile, final Collection<? extends String> names, final ChangeLogScanIndex index, final ChangeLogCache cache, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    Collection<? extends URL> returnValue = null;
+    if (artifactFile.isDirectory()) {
+      statistics.increment("directoriesScanned");
+      returnValue = this.scanDirectory(artifactFile, names);
+    } else {
+      Collection<? extends String> entryNames = null;
+      if (index != null) {
+        entryNames = index.get(artifactFile, names);
+      }
+      if (entryNames == null) {
+        String[] archiveEntryNames = null;
+        if (this.isArchiveEntryCacheEnabled()) {
+          archiveEntryNames = archiveEntries.get(artifactFile);
+        }
+        if (archiveEntryNames == null) {
+          if (cache != null) {
+            try {
+              archiveEntryNames = cache.getEntryNames(artifactFile, statistics);
+            } catch (final IOException notFatal) {
+              // The cache is only an optimization; read the archive.
+              if (log != null && log.isWarnEnabled()) {
+                log.warn("Could not use shared changelog cache " + cache.getRoot() + " for " + artifactFile, notFatal);
+              }
+            }
+          }
+          if (archiveEntryNames == null) {
+            statistics.increment("archivesOpened");
+            archiveEntryNames = this.listArchive(artifactFile, log);
+          }
+          if (this.isArchiveEntryCacheEnabled()) {
+            archiveEntries.put(artifactFile, archiveEntryNames);
+          }
+        } else {
+          statistics.increment("archiveEntryCacheHits");
+        }
+        entryNames = ChangeLogScanner.select(archiveEntryNames, names);
+        if (index != null) {
+          index.put(artifactFile, names, entryNames);
+        }
+      } else {
+        statistics.increment("scanIndexHits");
+        if (log != null && log.isDebugEnabled()) {
+          log.debug("Answered scan of " + artifactFile + " from the scan index");
+        }
+      }
+      if (entryNames != null && !entryNames.isEmpty()) {
+        try {
+          returnValue = ChangeLogScanner.toURLs(artifactFile, entryNames);
+        } catch (final MalformedURLException wrapMe) {
+          throw new ArtifactsProcessingException(wrapMe);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the directory into which changelogs found in archives
+   * should be copied, or {@code null} if they should not be copied.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param project the current {@link MavenProject}; may be {@code
+   * null}
+   *
+   * @return the changelog extraction directory, or {@code null}
+   *
+   * @see #isExtractChangeLogs()
+   */
+  private final File getExtractionDirectory(final MavenProject project) {
+    File returnValue = null;
+    if (this.isExtractChangeLogs()) {
+      returnValue = this.getChangeLogExtractionDirectory();
+      if (returnValue == null && project != null) {
+        final Build build = project.getBuild();
+        if (build != null) {
+          final String directoryName = build.getDirectory();
+          if (directoryName != null) {
+            returnValue = new File(directoryName, "liquibase-changelogs");
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the shared {@link ChangeLogCache} to use, or {@code null}
+   * if it is not {@linkplain #isSharedCacheEnabled() enabled}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return a {@link ChangeLogCache}, or {@code null}
+   */
+  private final ChangeLogCache getSharedCache() {
+    ChangeLogCache returnValue = null;
+    if (this.isSharedCacheEnabled()) {
+      File directory = this.getSharedCacheDirectory();
+      if (directory == null) {
+        directory = ChangeLogCache.getDefaultRoot();
+      }
+      returnValue = new ChangeLogCache(directory, this.getSharedCacheMaximumSize());
+    }
+    return returnValue;
+  }
+
+  private final ChangeLogScanIndex loadScanIndex(final MavenProject project, final Log log) {
+    ChangeLogScanIndex returnValue = null;
+    if (this.isScanIndexEnabled()) {
+      File indexFile = this.getScanIndexFile();
+      if (indexFile == null && project != null) {
+        final Build build = project.getBuild();
+        if (build != null) {
+          final String directoryName = build.getDirectory();
+          if (directoryName != null) {
+            indexFile = new File(directoryName, "maven-liquibase-scan-index.properties");
+          }
+        }
+      }
+      if (indexFile != null) {
+        returnValue = new ChangeLogScanIndex(indexFile);
+        try {
+          returnValue.load();
+        } catch (final IOException | IllegalArgumentException corruptOrUnreadable) {
+          // The index is only an optimization; start afresh.
+          if (log != null && log.isWarnEnabled()) {
+            log.warn("Ignoring unreadable scan index " + indexFile, corruptOrUnreadable);
+          }
+          returnValue = new ChangeLogScanIndex(indexFile);
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private final void storeScanIndex(final ChangeLogScanIndex index, final Log log) {
+    if (index != null) {
+      try {
+        index.store();
+      } catch (final IOException notFatal) {
+        // The index is only an optimization; the build can proceed.
+        if (log != null && log.isWarnEnabled()) {
+          log.warn("Could not write scan index " + index.getFile(), notFatal);
+        }
+      }
+    }
+  }
+
+  /**
+   * Opens the supplied {@link File}, which must denote a zip-format
+   * archive such as a jar file, exactly once, enumerates its entries,
+   * closes it, and returns the names of its non-directory entries,
+   * sorted in natural order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The names returned can be turned into {@code jar:} {@link
+   * URL}s identical to those that a {@link URLClassLoader} would have
+   * returned from its {@link URLClassLoader#getResource(String)}
+   * method, but no {@link ClassLoader} is created in the process.</p>
+   *
+   * @param archive the archive to list; must not be {@code null}
+   *
+   * @param log a {@link Log} for logging to a Maven console; may be
+   * {@code null}
+   *
+   * @return a non-{@code null}, sorted array of entry names, which
+   * will be empty if {@code archive} is not a zip-format archive
+   *
+   * @exception ArtifactsProcessingException if the archive could not
+   * be read
+   *
+   * @see ChangeLogScanner#select(String[], Collection)
+   */
+  private final String[] listArchive(final File archive, final Log log) throws ArtifactsProcessingException {
+    try {
+      return ChangeLogScanner.listArchive(archive);
+    } catch (final ZipException notAnArchive) {
+      // Not every resolved artifact is a zip file (poms, native
+      // libraries and so on); such artifacts simply contain no
+      // changelogs.
+      if (log != null && log.isDebugEnabled()) {
+        log.debug("Skipping " + archive + " because it is not a zip-format archive", notAnArchive);
+      }
+      return new String[0];
+    } catch (final IOException wrapMe) {
+      throw new ArtifactsProcessingException(wrapMe);
+    }
+  }
+
+
+  /**
+   * Returns {@code file:} {@link URL}s for the readable regular files
+   * beneath the supplied {@code directory}, such as a reactor
+   * sibling's {@code target/classes} directory, that correspond to
+   * the supplied {@code names}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * <p>The directory is consulted directly on the filesystem, exactly
+   * as the current project's output directories are; the {@link
+   * URL}s returned are identical to those that a {@link
+   * URLClassLoader} would have returned from its {@link
+   * URLClassLoader#getResource(String)} method, but no {@link
+   * ClassLoader} is created in the process.</p>
+   *
+   * @param directory the directory to scan; must not be {@code null}
+   *
+   * @param names the resource names or globs to look for; must not be
+   * {@code null}
+   *
+   * @return a {@link Collection} of {@link URL}s, or {@code null}
+   *
+   * @exception ArtifactsProcessingException if the directory could
+   * not be traversed
+   */
+  private final Collection<? extends URL> scanDirectory(final File directory, final Collection<? extends String> names) throws ArtifactsProcessingException {
+    final Collection<? extends String> resourceNames;
+    try {
+      resourceNames = ChangeLogScanner.findInDirectory(directory, names);
+    } catch (final IOException wrapMe) {
+      throw new ArtifactsProcessingException(wrapMe);
+    }
+    Collection<? extends URL> returnValue = null;
+    if (!resourceNames.isEmpty()) {
+      returnValue = this.toFileUrls(directory, resourceNames);
+    }
+    return returnValue;
+  }
+
+  private final Collection<? extends URL> gatherProjectUrls(final MavenProject project, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    Collection<URL> urls = null;
     if (project != null) {
       final Build build = project.getBuild();
       if (build != null) {
         final Collection<? extends String> names = this.getChangeLogResourceNames();
+        final ChangeLogDirectoryWatcher watcher = this.isWatchProjectDirectories() ? this.getWatcher(project, log) : null;
+        if (watcher != null) {
+          try {
+            final List<URL> watchedUrls = watcher.getDiscoveredUrls();
+            statistics.increment("projectScanWatcherHits");
+            if (log != null && log.isDebugEnabled()) {
+              log.debug("Answered scan of " + watcher.getDirectories() + " from the directory watcher");
+            }
+            return watchedUrls.isEmpty() ? null : watchedUrls;
+          } catch (final IOException | ClosedWatchServiceException notFatal) {
+            // Fall back to probing the directories below.
+            if (log != null && log.isDebugEnabled()) {
+              log.debug("Could not use the directory watcher for " + watcher.getDirectories(), notFatal);
+            }
+          }
+        }
         if (names != null && !names.isEmpty()) {
           final String[] directoryNames = new String[] { build.getOutputDirectory(), build.getTestOutputDirectory() };
           for (final String directoryName : directoryNames) {
             if (directoryName != null) {
               final File directory = new File(directoryName);
               if (directory.isDirectory()) {
-                for (final String resourceName : names) {
-                  if (resourceName != null) {
-                    final File changeLogFile = new File(directory, resourceName);
-                    if (changeLogFile.isFile() && changeLogFile.canRead()) {
-                      if (urls == null) {
-                        urls = new ArrayList<URL>(2 * names.size());
-                      }
-                      try {
-                        urls.add(changeLogFile.toURI().toURL());
-                      } catch (final MalformedURLException wrapMe) {
-                        throw new ArtifactsProcessingException(wrapMe);
-                      }
-                    }
+                final Collection<? extends String> resourceNames;
+                try {
+                  resourceNames = ChangeLogScanner.findInDirectory(directory, names);
+                } catch (final IOException wrapMe) {
+                  throw new ArtifactsProcessingException(wrapMe);
+                }
+                if (!resourceNames.isEmpty()) {
+                  if (urls == null) {
+                    urls = new ArrayList<URL>(2 * resourceNames.size());
                   }
+                  urls.addAll(this.toFileUrls(directory, resourceNames));
                 }
               }
             }
@@ -310,22 +1652,92 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
     return urls;
   }
 
-  private final File generateChangeLog(final MavenProject project, final Collection<? extends URL> urls, final Log log) throws ArtifactsProcessingException {
-    File returnValue = null;
+  private final Collection<? extends URL> toFileUrls(final File directory, final Collection<? extends String> resourceNames) throws ArtifactsProcessingException {
+    final Collection<URL> returnValue = new ArrayList<URL>(resourceNames.size());
+    try {
+      for (final String resourceName : resourceNames) {
+        returnValue.add(new File(directory, resourceName).toURI().toURL());
+      }
+    } catch (final MalformedURLException wrapMe) {
+      throw new ArtifactsProcessingException(wrapMe);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Generates the aggregate changelog of the {@linkplain
+   * #getChangeLogGenerator() principal generator} and of each of the
+   * {@linkplain #getAdditionalChangeLogGenerators() additional
+   * generators} from the supplied {@link URL}s, and returns the
+   * aggregate changelog files.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param project the current {@link MavenProject}; may be {@code
+   * null}
+   *
+   * @param urls the changelog {@link URL}s to include; may be {@code
+   * null}
+   *
+   * @param log a {@link Log} for logging to a Maven console; may be
+   * {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} in which to
+   * record timings and counters; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Collection} of aggregate
+   * changelog files, the principal one first
+   *
+   * @exception ArtifactsProcessingException if generation failed
+   */
+  private final Collection<? extends File> generateChangeLogs(final MavenProject project, final Collection<? extends URL> urls, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    Collection<? extends File> returnValue = Collections.emptyList();
     if (urls != null && !urls.isEmpty()) {
       AggregateChangeLogGenerator generator = this.getChangeLogGenerator();
       if (generator == null) {
         generator = new AggregateChangeLogGenerator();
       }
-      final File changeLogFile = generator.getAggregateChangeLogFile();
-      if (changeLogFile != null) {
-        final File parent = changeLogFile.getParentFile();
-        if (parent != null) {
-          parent.mkdirs();
+      final List<AggregateChangeLogGenerator> generators = new ArrayList<AggregateChangeLogGenerator>();
+      generators.add(generator);
+      final Collection<? extends AggregateChangeLogGenerator> additionalGenerators = this.getAdditionalChangeLogGenerators();
+      if (additionalGenerators != null) {
+        for (final AggregateChangeLogGenerator additionalGenerator : additionalGenerators) {
+          if (additionalGenerator != null) {
+            generators.add(additionalGenerator);
+          }
+        }
+      }
+      for (final AggregateChangeLogGenerator g : generators) {
+        final File changeLogFile = g.getAggregateChangeLogFile();
+        if (changeLogFile != null) {
+          final File parent = changeLogFile.getParentFile();
+          if (parent != null) {
+            parent.mkdirs();
+          }
         }
       }
       try {
-        returnValue = generator.generate(urls);
+        final long upToDateCount = statistics.getCount("aggregateChangeLogUpToDate");
+        if (generators.size() == 1) {
+          final File changeLogFile = generator.generate(urls, statistics, log);
+          returnValue = Collections.singletonList(changeLogFile);
+          if (log != null && log.isInfoEnabled()) {
+            if (statistics.getCount("aggregateChangeLogUpToDate") > upToDateCount) {
+              log.info("Aggregate changelog " + changeLogFile + " is up to date");
+            } else {
+              log.info("Generated aggregate changelog " + changeLogFile + " including " + urls.size() + " changelog(s)");
+            }
+          }
+        } else {
+          returnValue = AggregateChangeLogGenerator.generateAll(urls, generators, this.getGenerationParallelism(), statistics, log);
+          if (log != null && log.isInfoEnabled()) {
+            final long upToDate = statistics.getCount("aggregateChangeLogUpToDate") - upToDateCount;
+            log.info("Generated " + (returnValue.size() - upToDate) + " of " + returnValue.size() + " aggregate changelog(s) including " + urls.size() + " changelog(s); " + upToDate + " up to date");
+          }
+          if (log != null && log.isDebugEnabled()) {
+            log.debug("Aggregate changelogs: " + returnValue);
+          }
+        }
       } catch (final IOException wrapMe) {
         throw new ArtifactsProcessingException(wrapMe);
       }
@@ -333,4 +1745,307 @@ public class LiquibaseChangeLogArtifactsProcessor implements ArtifactsProcessor
     return returnValue;
   }
 
+  private final void writeCheckSumManifest(final MavenProject project, final Collection<? extends Artifact> artifacts, final File changeLogFile, final Log log, final ChangeLogStatistics statistics) throws ArtifactsProcessingException {
+    assert changeLogFile != null;
+    final long start = System.nanoTime();
+    final List<URL> classpath = new ArrayList<URL>();
+    URLClassLoader loader = null;
+    try {
+      if (project != null) {
+        final Build build = project.getBuild();
+        if (build != null) {
+          final String[] directoryNames = new String[] { build.getTestOutputDirectory(), build.getOutputDirectory() };
+          for (final String directoryName : directoryNames) {
+            if (directoryName != null) {
+              classpath.add(new File(directoryName).toURI().toURL());
+            }
+          }
+        }
+      }
+      if (artifacts != null) {
+        for (final Artifact artifact : artifacts) {
+          if (artifact != null && artifact.isResolved()) {
+            final File artifactFile = artifact.getFile();
+            if (artifactFile != null) {
+              classpath.add(artifactFile.toURI().toURL());
+            }
+          }
+        }
+      }
+      loader = new URLClassLoader(classpath.toArray(new URL[classpath.size()]), null);
+      final ResourceAccessor resourceAccessor = new ChangeLogResourceAccessor(loader);
+      final String path = changeLogFile.getAbsolutePath();
+      final DatabaseChangeLog changeLog = ChangeLogParserFactory.getInstance().getParser(path, resourceAccessor).parse(path, new ChangeLogParameters(), resourceAccessor);
+      final CheckSumManifest manifest = CheckSumManifest.of(changeLog);
+      final File manifestFile = CheckSumManifest.getManifestFile(changeLogFile);
+      final boolean written = manifest.store(manifestFile);
+      statistics.time("checkSumManifest", start);
+      statistics.add("changeSetsCheckSummed", manifest.size());
+      if (log != null && log.isInfoEnabled()) {
+        if (written) {
+          log.info("Wrote checksum manifest " + manifestFile + " for " + manifest.size() + " change set(s)");
+        } else {
+          log.info("Checksum manifest " + manifestFile + " is up to date");
+        }
+      }
+    } catch (final IOException | LiquibaseException wrapMe) {
+      throw new ArtifactsProcessingException(wrapMe);
+    } finally {
+      if (loader != null) {
+        try {
+          loader.close();
+        } catch (final IOException nothingWeCanDo) {
+
+        }
+      }
+    }
+  }
+
+  /**
+   * Summarizes the supplied {@link ChangeLogStatistics} in the
+   * supplied {@link Log} and, if {@linkplain
+   * #isStatisticsFileEnabled() enabled}, writes them to the
+   * {@linkplain #getStatisticsFile() statistics file}.
+   *
+   * <p>Failure to write the statistics file is logged but is not
+   * otherwise fatal.</p>
+   *
+   * @param project the {@link MavenProject} currently in effect; may
+   * be {@code null}
+   *
+   * @param statistics the {@link ChangeLogStatistics} to report; must
+   * not be {@code null}
+   *
+   * @param log a {@link Log} for logging to a Maven console; may be
+   * {@code null}
+   */
+  private final void report(final MavenProject project, final ChangeLogStatistics statistics, final Log log) {
+    assert statistics != null;
+    if (log != null && log.isInfoEnabled()) {
+      log.info("Changelog processing statistics: " + statistics);
+    }
+    if (this.isStatisticsFileEnabled()) {
+      File file = this.getStatisticsFile();
+      if (file == null && project != null) {
+        final Build build = project.getBuild();
+        if (build != null) {
+          final String directoryName = build.getDirectory();
+          if (directoryName != null) {
+            file = new File(directoryName, "maven-liquibase-statistics.json");
+          }
+        }
+      }
+      if (file != null) {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+          parent.mkdirs();
+        }
+        Writer writer = null;
+        try {
+          writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+          statistics.writeJson(writer);
+          writer.flush();
+        } catch (final IOException notFatal) {
+          // Statistics are informational only; the build can proceed.
+          if (log != null && log.isWarnEnabled()) {
+            log.warn("Could not write statistics file " + file, notFatal);
+          }
+        } finally {
+          if (writer != null) {
+            try {
+              writer.close();
+            } catch (final IOException nothingWeCanDo) {
+
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the live {@link ChangeLogDirectoryWatcher} for the
+   * supplied {@link MavenProject} if there is one and it watches the
+   * {@linkplain #getWatchedDirectories(MavenProject) same
+   * directories} for the same {@linkplain
+   * #getChangeLogResourceNames() changelog resource names} and
+   * maintains the same aggregate changelog file that this {@link
+   * LiquibaseChangeLogArtifactsProcessor} would use, or {@code null}
+   * otherwise.
+   *
+   * <p>Any failure the watcher encountered while regenerating the
+   * aggregate changelog since the last build is reported to the
+   * supplied {@link Log}.</p>
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param project the {@link MavenProject} in question; must not be
+   * {@code null}
+   *
+   * @param log a {@link Log} for logging to a Maven console; may be
+   * {@code null}
+   *
+   * @return a {@link ChangeLogDirectoryWatcher}, or {@code null}
+   */
+  private final ChangeLogDirectoryWatcher getWatcher(final MavenProject project, final Log log) {
+    assert project != null;
+    final List<File> directories = getWatchedDirectories(project);
+    final ChangeLogDirectoryWatcher watcher;
+    synchronized (watchers) {
+      watcher = watchers.get(directories);
+    }
+    ChangeLogDirectoryWatcher returnValue = null;
+    if (watcher != null && !watcher.isClosed() && this.isWatchedBy(watcher)) {
+      final Exception failure = watcher.takeFailure();
+      if (failure != null && log != null && log.isWarnEnabled()) {
+        log.warn("The directory watcher for " + directories + " could not regenerate the aggregate changelog", failure);
+      }
+      returnValue = watcher;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link
+   * ChangeLogDirectoryWatcher} looks for this {@link
+   * LiquibaseChangeLogArtifactsProcessor}'s {@linkplain
+   * #getChangeLogResourceNames() changelog resource names} and
+   * maintains the same aggregate changelog file as its {@linkplain
+   * #getChangeLogGenerator() generator}.
+   *
+   * @param watcher the {@link ChangeLogDirectoryWatcher} in question;
+   * must not be {@code null}
+   *
+   * @return {@code true} if {@code watcher} can serve this {@link
+   * LiquibaseChangeLogArtifactsProcessor}; {@code false} otherwise
+   */
+  private final boolean isWatchedBy(final ChangeLogDirectoryWatcher watcher) {
+    assert watcher != null;
+    final Collection<? extends String> names = this.getChangeLogResourceNames();
+    final List<String> nameList = new ArrayList<String>();
+    if (names != null) {
+      for (final String name : names) {
+        if (name != null) {
+          nameList.add(name);
+        }
+      }
+    }
+    AggregateChangeLogGenerator generator = this.getChangeLogGenerator();
+    if (generator == null) {
+      generator = new AggregateChangeLogGenerator();
+    }
+    final File changeLogFile = generator.getAggregateChangeLogFile();
+    final File watchedChangeLogFile = watcher.getGenerator().getAggregateChangeLogFile();
+    return nameList.equals(watcher.getChangeLogResourceNames()) && changeLogFile != null && watchedChangeLogFile != null && changeLogFile.getAbsoluteFile().equals(watchedChangeLogFile.getAbsoluteFile());
+  }
+
+  private final void watch(final MavenProject project, final Collection<? extends URL> artifactUrls, final Log log) throws ArtifactsProcessingException {
+    if (project != null) {
+      final Collection<? extends String> names = this.getChangeLogResourceNames();
+      final List<File> directories = getWatchedDirectories(project);
+      if (names != null && !names.isEmpty() && !directories.isEmpty()) {
+        AggregateChangeLogGenerator generator = this.getChangeLogGenerator();
+        if (generator == null) {
+          generator = new AggregateChangeLogGenerator();
+        }
+        final File changeLogFile = generator.getAggregateChangeLogFile();
+        if (changeLogFile != null) {
+          ChangeLogDirectoryWatcher watcher = this.getWatcher(project, log);
+          if (watcher != null) {
+            // Keep the existing watcher, but have it regenerate the
+            // aggregate changelog the way this build did.
+            watcher.setGenerator(generator);
+            watcher.setLeadingUrls(artifactUrls);
+          } else {
+            try {
+              watcher = new ChangeLogDirectoryWatcher(generator, artifactUrls, directories, names);
+            } catch (final IOException wrapMe) {
+              throw new ArtifactsProcessingException(wrapMe);
+            }
+            final ChangeLogDirectoryWatcher oldWatcher;
+            synchronized (watchers) {
+              oldWatcher = watchers.put(directories, watcher);
+              if (!watcherShutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread("Liquibase changelog watcher shutdown") {
+                    @Override
+                    public final void run() {
+                      closeWatchers();
+                    }
+                  });
+                watcherShutdownHookAdded = true;
+              }
+            }
+            if (oldWatcher != null) {
+              try {
+                oldWatcher.close();
+              } catch (final IOException nothingWeCanDo) {
+
+              }
+            }
+            final Thread thread = new Thread(watcher, "Liquibase changelog watcher for " + changeLogFile);
+            thread.setDaemon(true);
+            thread.start();
+            if (log != null && log.isInfoEnabled()) {
+              log.info("Watching " + directories + " for changes to " + names);
+            }
+          }
+        }
+      }
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the absolute {@linkplain Build#getOutputDirectory()
+   * output} and {@linkplain Build#getTestOutputDirectory() test
+   * output} directories of the supplied {@link MavenProject}, in that
+   * order.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param project the {@link MavenProject} in question; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link File}s
+   */
+  private static final List<File> getWatchedDirectories(final MavenProject project) {
+    assert project != null;
+    final List<File> returnValue = new ArrayList<File>(2);
+    final Build build = project.getBuild();
+    if (build != null) {
+      final String[] directoryNames = new String[] { build.getOutputDirectory(), build.getTestOutputDirectory() };
+      for (final String directoryName : directoryNames) {
+        if (directoryName != null) {
+          returnValue.add(new File(directoryName).toPath().toAbsolutePath().normalize().toFile());
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * {@linkplain ChangeLogDirectoryWatcher#close() Closes} and forgets
+   * all {@link ChangeLogDirectoryWatcher}s started in this Java
+   * Virtual Machine.
+   */
+  static final void closeWatchers() {
+    final Collection<ChangeLogDirectoryWatcher> closing;
+    synchronized (watchers) {
+      closing = new ArrayList<ChangeLogDirectoryWatcher>(watchers.values());
+      watchers.clear();
+    }
+    for (final ChangeLogDirectoryWatcher watcher : closing) {
+      try {
+        watcher.close();
+      } catch (final IOException nothingWeCanDo) {
+
+      }
+    }
+  }
+
 }
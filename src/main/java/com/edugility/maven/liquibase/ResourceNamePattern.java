@@ -0,0 +1,419 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.regex.Pattern;
+
+/**
+ * A glob pattern that matches {@code /}-separated relative resource
+ * names, such as {@code META-INF/liquibase/*}{@code /changelog-*.xml}.
+ *
+ * <p>The following constructs are recognized:</p>
+ *
+ * <ul>
+ *
+ * <li>{@code *} matches zero or more characters within a single name
+ * segment, or one or more if it makes up the whole segment</li>
+ *
+ * <li>{@code **}, when it makes up a whole name segment, matches zero
+ * or more whole segments, so {@code META-INF/**}{@code /changelog.xml}
+ * matches both {@code META-INF/changelog.xml} and {@code
+ * META-INF/a/b/changelog.xml}, while a trailing {@code **} matches
+ * one or more whole segments; anywhere else it behaves like {@code
+ * *}</li>
+ *
+ * <li>{@code ?} matches exactly one character within a single name
+ * segment</li>
+ *
+ * <li>{@code [...]} matches one character, other than {@code /},
+ * from a set, as in a regular expression; a leading {@code !}
+ * negates the set, and a {@code ]} immediately after the opening
+ * {@code [} or {@code [!} is part of the set</li>
+ *
+ * <li><code>{a,b}</code> matches any one of the comma-separated
+ * alternatives</li>
+ *
+ * </ul>
+ *
+ * <p>Matching is performed on resource names as they appear in zip
+ * archives, so it behaves identically on every platform.  No
+ * construct matches an empty name segment, so a name such as {@code
+ * META-INF//changelog.xml} is never matched.</p>
+ *
+ * <p>Instances of this class are immutable and safe for use by
+ * multiple threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see LiquibaseChangeLogArtifactsProcessor#setChangeLogResourceNames(java.util.Collection)
+ */
+final class ResourceNamePattern {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The glob from which this {@link ResourceNamePattern} was
+   * compiled.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final String glob;
+
+  /**
+   * The leading portion of the {@linkplain #glob glob}, ending in a
+   * {@code /}, that contains no glob constructs; possibly empty.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final String base;
+
+  /**
+   * The regular expression equivalent to the {@linkplain #glob glob}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Pattern pattern;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ResourceNamePattern}.
+   *
+   * @param glob the glob to compile; must not be {@code null}
+   *
+   * @exception IllegalArgumentException if {@code glob} is {@code
+   * null}
+   */
+  ResourceNamePattern(final String glob) {
+    super();
+    if (glob == null) {
+      throw new IllegalArgumentException("glob", new NullPointerException("glob"));
+    }
+    this.glob = glob;
+    int firstMetacharacter = glob.length();
+    for (int i = 0; i < glob.length(); i++) {
+      if (isMetacharacter(glob.charAt(i))) {
+        firstMetacharacter = i;
+        break;
+      }
+    }
+    this.base = glob.substring(0, glob.lastIndexOf('/', firstMetacharacter - 1) + 1);
+    this.pattern = Pattern.compile(toRegularExpression(glob));
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the glob from which this {@link ResourceNamePattern} was
+   * compiled.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the glob; never {@code null}
+   */
+  final String getGlob() {
+    return this.glob;
+  }
+
+  /**
+   * Returns the longest leading portion of this {@link
+   * ResourceNamePattern}'s glob that ends with a {@code /} and
+   * contains no glob constructs.
+   *
+   * <p>Every resource name {@linkplain #matches(String) matched} by
+   * this {@link ResourceNamePattern} begins with the return value of
+   * this method, so only the directory it denotes need be searched
+   * for matches.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the literal base of this pattern, possibly empty; never
+   * {@code null}
+   */
+  final String getBase() {
+    return this.base;
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@code /}-separated resource
+   * name is matched by this {@link ResourceNamePattern}.
+   *
+   * @param name the name to test; may be {@code null} in which case
+   * {@code false} will be returned
+   *
+   * @return {@code true} if {@code name} matches; {@code false}
+   * otherwise
+   */
+  final boolean matches(final String name) {
+    return name != null && name.startsWith(this.base) && this.pattern.matcher(name).matches();
+  }
+
+  /**
+   * Returns the names, relative to the supplied {@code directory} and
+   * {@code /}-separated, of all readable regular files beneath it
+   * that this {@link ResourceNamePattern} {@linkplain
+   * #matches(String) matches}, sorted in natural order.
+   *
+   * <p>Only the directory denoted by this pattern's {@linkplain
+   * #getBase() base} is traversed.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param directory the directory to search; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null}, sorted {@link List} of matching
+   * relative names
+   *
+   * @exception IOException if the directory could not be traversed
+   */
+  final List<String> list(final File directory) throws IOException {
+    final List<String> returnValue = new ArrayList<String>();
+    final Path root = directory.toPath();
+    final Path start = this.base.isEmpty() ? root : root.resolve(this.base);
+    if (Files.isDirectory(start)) {
+      Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+          @Override
+          public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+            if (attributes.isRegularFile()) {
+              final StringBuilder name = new StringBuilder();
+              for (final Path segment : root.relativize(file)) {
+                if (name.length() > 0) {
+                  name.append('/');
+                }
+                name.append(segment.toString());
+              }
+              final String relativeName = name.toString();
+              if (matches(relativeName) && Files.isReadable(file)) {
+                returnValue.add(relativeName);
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    }
+    Collections.sort(returnValue);
+    return returnValue;
+  }
+
+  /**
+   * Returns a hashcode for this {@link ResourceNamePattern}.
+   *
+   * @return a hashcode
+   */
+  @Override
+  public final int hashCode() {
+    return this.glob.hashCode();
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link Object} is a {@link
+   * ResourceNamePattern} compiled from the same glob as this one.
+   *
+   * @param other the {@link Object} to test; may be {@code null}
+   *
+   * @return {@code true} if {@code other} is equal to this {@link
+   * ResourceNamePattern}; {@code false} otherwise
+   */
+  @Override
+  public final boolean equals(final Object other) {
+    return other instanceof ResourceNamePattern && this.glob.equals(((ResourceNamePattern)other).glob);
+  }
+
+  /**
+   * Returns the glob from which this {@link ResourceNamePattern} was
+   * compiled.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the glob; never {@code null}
+   */
+  @Override
+  public final String toString() {
+    return this.glob;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns {@code true} if the supplied resource name contains any
+   * glob constructs and should therefore be treated as a {@link
+   * ResourceNamePattern} rather than as a literal name.
+   *
+   * @param name the resource name to test; may be {@code null}
+   *
+   * @return {@code true} if {@code name} is a glob; {@code false}
+   * otherwise
+   */
+  static final boolean isPattern(final String name) {
+    if (name != null) {
+      for (int i = 0; i < name.length(); i++) {
+        if (isMetacharacter(name.charAt(i))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static final boolean isMetacharacter(final char c) {
+    return c == '*' || c == '?' || c == '[' || c == '{';
+  }
+
+  /**
+   * Translates the supplied glob into an equivalent regular
+   * expression.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param glob the glob to translate; must not be {@code null}
+   *
+   * @return a regular expression; never {@code null}
+   *
+   * @exception IllegalArgumentException if {@code glob} contains an
+   * unterminated {@code [...]} or <code>{...}</code> construct
+   */
+  static final String toRegularExpression(final String glob) {
+    final StringBuilder sb = new StringBuilder(glob.length() * 2);
+    final int length = glob.length();
+    boolean inGroup = false;
+    boolean inClass = false;
+    for (int i = 0; i < length; i++) {
+      final char c = glob.charAt(i);
+      if (inClass) {
+        if (c == ']') {
+          inClass = false;
+          sb.append(']');
+        } else if (c == '\\' || c == '[' || c == '&') {
+          sb.append('\\').append(c);
+        } else {
+          sb.append(c);
+        }
+        continue;
+      }
+      switch (c) {
+      case '*':
+        int end = i;
+        while (end + 1 < length && glob.charAt(end + 1) == '*') {
+          end++;
+        }
+        final boolean segmentStart = i == 0 || glob.charAt(i - 1) == '/';
+        final boolean segmentEnd = end + 1 == length || glob.charAt(end + 1) == '/';
+        if (!segmentStart || !segmentEnd) {
+          // Part of a segment.
+          sb.append("[^/]*");
+        } else if (end == i) {
+          // A whole segment.
+          sb.append("[^/]+");
+        } else if (end + 1 == length) {
+          // A trailing "**": one or more whole segments.
+          sb.append("(?:[^/]+/)*[^/]+");
+        } else {
+          // "**/": zero or more whole directory segments.
+          sb.append("(?:[^/]+/)*");
+          end++;
+        }
+        i = end;
+        break;
+      case '?':
+        sb.append("[^/]");
+        break;
+      case '[':
+        inClass = true;
+        // The class never matches a segment separator.
+        sb.append("(?!/)[");
+        if (i + 1 < length && glob.charAt(i + 1) == '!') {
+          sb.append('^');
+          i++;
+        }
+        if (i + 1 < length && glob.charAt(i + 1) == ']') {
+          sb.append("\\]");
+          i++;
+        }
+        break;
+      case '{':
+        inGroup = true;
+        sb.append("(?:");
+        break;
+      case '}':
+        if (inGroup) {
+          inGroup = false;
+          sb.append(')');
+        } else {
+          sb.append("\\}");
+        }
+        break;
+      case ',':
+        sb.append(inGroup ? "|" : ",");
+        break;
+      default:
+        if ("\\.^$+()|]".indexOf(c) >= 0) {
+          sb.append('\\');
+        }
+        sb.append(c);
+        break;
+      }
+    }
+    if (inClass || inGroup) {
+      throw new IllegalArgumentException("Unterminated glob construct: " + glob);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,242 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escapes text for inclusion in XML attribute values and character
+ * data.
+ *
+ * <p>The characters {@code &}, {@code <}, {@code >}, {@code "} and
+ * {@code '} are replaced with their predefined entity references, and
+ * tab, carriage return and line feed characters are replaced with
+ * character references so that they survive attribute value
+ * normalization.  All other characters are left as they are.</p>
+ *
+ * <p>Text that needs no escaping is returned as is, and text that
+ * does is escaped in runs, so escaping allocates nothing in the
+ * common case.  An instance is made available to {@linkplain
+ * AggregateChangeLogGenerator#getTemplate() templates} under the name
+ * {@code xml}, and may be used like this:</p>
+ *
+ * <blockquote><pre>&lt;include file="@{xml.escape(url)}"/&gt;</pre></blockquote>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see #escape(Object)
+ *
+ * @see AggregateChangeLogGenerator#getTemplate()
+ */
+public final class XMLEscaper {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The sole instance of this class.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final XMLEscaper INSTANCE = new XMLEscaper();
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link XMLEscaper}.
+   *
+   * @see #getInstance()
+   */
+  private XMLEscaper() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the supplied {@link Object}'s {@linkplain
+   * String#valueOf(Object) string representation} with all
+   * characters that are not permitted in an XML attribute value
+   * escaped.
+   *
+   * <p>If no characters need escaping, the string representation
+   * itself is returned.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param value the {@link Object} to escape; may be {@code null} in
+   * which case "{@code null}" is returned
+   *
+   * @return an escaped {@link String}; never {@code null}
+   */
+  public final String escape(final Object value) {
+    final String text = String.valueOf(value);
+    final int length = text.length();
+    int i = 0;
+    while (i < length && replacementFor(text.charAt(i)) == null) {
+      i++;
+    }
+    if (i == length) {
+      return text;
+    }
+    final StringBuilder sb = new StringBuilder(length + 16);
+    sb.append(text, 0, i);
+    for (; i < length; i++) {
+      final char c = text.charAt(i);
+      final String replacement = replacementFor(c);
+      if (replacement == null) {
+        sb.append(c);
+      } else {
+        sb.append(replacement);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the supplied {@link CharSequence} to the supplied {@link
+   * Writer} with all characters that are not permitted in an XML
+   * attribute value escaped.
+   *
+   * <p>Runs of characters that need no escaping are written as they
+   * are without being copied.</p>
+   *
+   * @param text the {@link CharSequence} to escape; may be {@code
+   * null} in which case "{@code null}" is written
+   *
+   * @param writer the {@link Writer} to write to; must not be {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code writer} is {@code
+   * null}
+   *
+   * @exception IOException if an error occurs while writing
+   */
+  public final void escape(CharSequence text, final Writer writer) throws IOException {
+    if (writer == null) {
+      throw new IllegalArgumentException("writer", new NullPointerException("writer"));
+    }
+    if (text == null) {
+      text = "null";
+    }
+    final int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      final String replacement = replacementFor(text.charAt(i));
+      if (replacement != null) {
+        if (i > start) {
+          writer.append(text, start, i);
+        }
+        writer.write(replacement);
+        start = i + 1;
+      }
+    }
+    if (start < length) {
+      writer.append(text, start, length);
+    }
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * XMLEscaper}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public final String toString() {
+    return "XMLEscaper";
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the sole {@link XMLEscaper}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link XMLEscaper}
+   */
+  public static final XMLEscaper getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the text that should replace the supplied character in
+   * an XML attribute value, or {@code null} if the character may
+   * appear as it is.
+   *
+   * @param c the character to check
+   *
+   * @return the replacement text, or {@code null}
+   */
+  private static final String replacementFor(final char c) {
+    switch (c) {
+    case '&':
+      return "&amp;";
+    case '<':
+      return "&lt;";
+    case '>':
+      return "&gt;";
+    case '"':
+      return "&quot;";
+    case '\'':
+      return "&apos;";
+    case '\t':
+      return "&#9;";
+    case '\n':
+      return "&#10;";
+    case '\r':
+      return "&#13;";
+    default:
+      return null;
+    }
+  }
+
+}
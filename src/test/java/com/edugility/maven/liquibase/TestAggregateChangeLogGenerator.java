@@ -0,0 +1,244 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.net.URL;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the {@link AggregateChangeLogGenerator}'s direct
+ * rendering of the stock {@code changeLogTemplate.xml} template
+ * produces exactly what MVEL produces from the same template.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see AggregateChangeLogGenerator#getTemplate()
+ */
+public class TestAggregateChangeLogGenerator {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * A temporary directory for aggregate changelogs.
+   */
+  private File directory;
+
+  /**
+   * A counter used to give each aggregate changelog its own file.
+   */
+  private int files;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link TestAggregateChangeLogGenerator}.
+   */
+  public TestAggregateChangeLogGenerator() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Before
+  public void createDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("TestAggregateChangeLogGenerator").toFile();
+  }
+
+  @After
+  public void deleteDirectory() {
+    if (this.directory != null) {
+      final File[] children = this.directory.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          child.delete();
+        }
+      }
+      this.directory.delete();
+    }
+  }
+
+  @Test
+  public void testOneInclude() throws IOException {
+    this.assertFastPathMatchesMvel(null, null, Collections.singletonList(new URL("file:/changelog.xml")));
+  }
+
+  @Test
+  public void testSeveralIncludes() throws IOException {
+    this.assertFastPathMatchesMvel(null, "3.4", urls());
+  }
+
+  @Test
+  public void testNullProperties() throws IOException {
+    for (final String version : Arrays.asList(null, "3.4")) {
+      this.assertFastPathMatchesMvel(null, version, urls());
+    }
+  }
+
+  @Test
+  public void testEmptyProperties() throws IOException {
+    for (final String version : Arrays.asList(null, "3.4")) {
+      this.assertFastPathMatchesMvel(new Properties(), version, urls());
+    }
+  }
+
+  @Test
+  public void testDefaultedProperties() throws IOException {
+    final Properties defaults = new Properties();
+    defaults.setProperty("defaulted", "fromDefaults");
+    defaults.setProperty("overridden", "fromDefaults");
+    final Properties properties = new Properties(defaults);
+    properties.setProperty("overridden", "fromProperties");
+    properties.setProperty("plain", "value");
+    for (final String version : Arrays.asList(null, "3.4")) {
+      this.assertFastPathMatchesMvel(properties, version, urls());
+    }
+  }
+
+  @Test
+  public void testValuesNeedingEscaping() throws Exception {
+    final Properties properties = new Properties();
+    properties.setProperty("ampersand", "a&b");
+    properties.setProperty("quotes", "\"double\" and 'single'");
+    properties.setProperty("newlines", "line one\nline two\r\nline three");
+    properties.setProperty("markup", "<tag attribute=\"x\"/>\t&amp;");
+    properties.setProperty("key&with\"specials", "value");
+    final List<URL> urls = new ArrayList<URL>(urls());
+    urls.add(new URL("file:/a%20b/changelog.xml?x=1&y=\"2\""));
+    String rendered = null;
+    for (final String version : Arrays.asList(null, "3.4")) {
+      rendered = this.assertFastPathMatchesMvel(properties, version, urls);
+    }
+
+    // The escaped values must survive a round trip through an XML
+    // parser.
+    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(rendered)));
+    final NodeList propertyElements = document.getElementsByTagName("property");
+    final Properties parsed = new Properties();
+    for (int i = 0; i < propertyElements.getLength(); i++) {
+      final Element element = (Element)propertyElements.item(i);
+      parsed.setProperty(element.getAttribute("name"), element.getAttribute("value"));
+    }
+    assertEquals(properties, parsed);
+    final NodeList includeElements = document.getElementsByTagName("include");
+    assertEquals(urls.size(), includeElements.getLength());
+    assertEquals(urls.get(urls.size() - 1).toExternalForm(), ((Element)includeElements.item(urls.size() - 1)).getAttribute("file"));
+  }
+
+  /**
+   * Renders the supplied inputs once by way of the stock template's
+   * direct rendering and once by way of MVEL, asserts that the
+   * results are identical, and returns them.
+   */
+  private final String assertFastPathMatchesMvel(final Properties properties, final String version, final List<URL> urls) throws IOException {
+    final String fast = this.render(properties, version, urls, false);
+    final String mvel = this.render(properties, version, urls, true);
+    assertEquals(mvel, fast);
+    return fast;
+  }
+
+  private final String render(final Properties properties, final String version, final List<URL> urls, final boolean mvel) throws IOException {
+    final AggregateChangeLogGenerator generator = new AggregateChangeLogGenerator();
+    generator.setProperties(properties);
+    generator.setDatabaseChangeLogXsdVersion(version);
+    if (mvel) {
+      // A template that differs from the stock one only by a comment
+      // renders identically but is never given to the fast path.
+      generator.setTemplate("@comment{Not the stock template}" + generator.getTemplate());
+    }
+    final File file = new File(this.directory, "changelog" + (this.files++) + ".xml");
+    generator.setAggregateChangeLogFile(file);
+    final ChangeLogStatistics statistics = new ChangeLogStatistics();
+    generator.generate(urls, statistics);
+    assertEquals(mvel ? 0L : 1L, statistics.getCount("defaultTemplateFastPath"));
+    return new String(Files.readAllBytes(file.toPath()), UTF_8);
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final List<URL> urls() throws IOException {
+    return Arrays.asList(new URL("file:/a/changelog.xml"),
+                         new URL("jar:file:/repository/b.jar!/META-INF/liquibase/changelog.xml"),
+                         new URL("file:/c/changelog.xml"));
+  }
+
+}
@@ -0,0 +1,204 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the {@link ArchiveEntryCache} class.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ArchiveEntryCache
+ */
+public class TestArchiveEntryCache {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The entry names recorded for every archive in these tests.
+   */
+  private static final String[] ENTRY_NAMES = { "META-INF/MANIFEST.MF", "META-INF/liquibase/changelog.xml", "com/example/Example.class" };
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * A temporary directory for archives.
+   */
+  private File directory;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link TestArchiveEntryCache}.
+   */
+  public TestArchiveEntryCache() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Before
+  public void createDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("TestArchiveEntryCache").toFile();
+  }
+
+  @After
+  public void deleteDirectory() {
+    if (this.directory != null) {
+      final File[] children = this.directory.listFiles();
+      if (children != null) {
+        for (final File child : children) {
+          child.delete();
+        }
+      }
+      this.directory.delete();
+    }
+  }
+
+  @Test
+  public void testRecordedArchiveIsReturned() throws IOException {
+    final ArchiveEntryCache cache = new ArchiveEntryCache(1024L * 1024L);
+    final File a = this.archive("a.jar", "a");
+    assertNull(cache.get(a));
+    cache.put(a, ENTRY_NAMES);
+    assertSame(ENTRY_NAMES, cache.get(a));
+    assertEquals(ArchiveEntryCache.sizeOf(ENTRY_NAMES), cache.size());
+  }
+
+  @Test
+  public void testChangedArchiveIsNotReturned() throws IOException {
+    final ArchiveEntryCache cache = new ArchiveEntryCache(1024L * 1024L);
+    final File a = this.archive("a.jar", "a");
+    cache.put(a, ENTRY_NAMES);
+    this.archive("a.jar", "a longer archive");
+    assertNull(cache.get(a));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedArchivesAreEvicted() throws IOException {
+    final long size = ArchiveEntryCache.sizeOf(ENTRY_NAMES);
+    final ArchiveEntryCache cache = new ArchiveEntryCache(2L * size);
+    final File a = this.archive("a.jar", "a");
+    final File b = this.archive("b.jar", "b");
+    final File c = this.archive("c.jar", "c");
+    cache.put(a, ENTRY_NAMES);
+    cache.put(b, ENTRY_NAMES);
+    assertSame(ENTRY_NAMES, cache.get(a));
+    cache.put(c, ENTRY_NAMES);
+    assertNull(cache.get(b));
+    assertSame(ENTRY_NAMES, cache.get(a));
+    assertSame(ENTRY_NAMES, cache.get(c));
+    assertEquals(2L * size, cache.size());
+  }
+
+  @Test
+  public void testSizeIsBoundedByBytesNotNames() throws IOException {
+    final String[] shortNames = { "a", "b", "c", "d" };
+    final StringBuilder longName = new StringBuilder("META-INF/");
+    while (longName.length() < 200) {
+      longName.append("deeply/nested/");
+    }
+    final String[] longNames = { longName.append("changelog.xml").toString() };
+    final ArchiveEntryCache cache = new ArchiveEntryCache(ArchiveEntryCache.sizeOf(shortNames));
+    final File a = this.archive("a.jar", "a");
+    final File b = this.archive("b.jar", "b");
+    cache.put(a, shortNames);
+    assertSame(shortNames, cache.get(a));
+    // One name, but more bytes than the four short ones.
+    cache.put(b, longNames);
+    assertNull(cache.get(b));
+    assertSame(shortNames, cache.get(a));
+  }
+
+  @Test
+  public void testArchiveLargerThanCacheIsNotRecorded() throws IOException {
+    final ArchiveEntryCache cache = new ArchiveEntryCache(ArchiveEntryCache.sizeOf(ENTRY_NAMES) - 1L);
+    final File a = this.archive("a.jar", "a");
+    cache.put(a, ENTRY_NAMES);
+    assertNull(cache.get(a));
+    assertEquals(0L, cache.size());
+  }
+
+  @Test
+  public void testReplacedArchiveIsCountedOnce() throws IOException {
+    final ArchiveEntryCache cache = new ArchiveEntryCache(1024L * 1024L);
+    final File a = this.archive("a.jar", "a");
+    cache.put(a, ENTRY_NAMES);
+    final String[] replacement = { "only/entry.xml" };
+    cache.put(a, replacement);
+    assertArrayEquals(replacement, cache.get(a));
+    assertEquals(ArchiveEntryCache.sizeOf(replacement), cache.size());
+    cache.clear();
+    assertNull(cache.get(a));
+    assertEquals(0L, cache.size());
+  }
+
+  private final File archive(final String name, final String contents) throws IOException {
+    final File archive = new File(this.directory, name);
+    Files.write(archive.toPath(), contents.getBytes(UTF_8));
+    return archive;
+  }
+
+}
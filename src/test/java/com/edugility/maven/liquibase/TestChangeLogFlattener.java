@@ -0,0 +1,278 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import java.net.URL;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests the {@link ChangeLogFlattener} class.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogFlattener#flatten(java.util.Collection, java.io.Writer)
+ */
+public class TestChangeLogFlattener {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The namespace of Liquibase changelog elements.
+   */
+  private static final String DATABASE_CHANGE_LOG_NAMESPACE_URI = "http://www.liquibase.org/xml/ns/dbchangelog";
+
+  /**
+   * The namespace of an imaginary Liquibase extension.
+   */
+  private static final String EXTENSION_NAMESPACE_URI = "http://www.example.com/xml/ns/extension";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * A temporary directory for changelogs.
+   */
+  private File directory;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link TestChangeLogFlattener}.
+   */
+  public TestChangeLogFlattener() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Before
+  public void createDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("TestChangeLogFlattener").toFile();
+  }
+
+  @After
+  public void deleteDirectory() throws IOException {
+    if (this.directory != null) {
+      Files.walkFileTree(this.directory.toPath(), new SimpleFileVisitor<Path>() {
+          @Override
+          public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public final FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+            Files.delete(directory);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    }
+  }
+
+  @Test
+  public void testInlinedChangeSetsKeepTheirIdentity() throws Exception {
+    final URL plain = this.file("plain.xml", changeLog(null, "<changeSet id=\"1\" author=\"alice\"><comment>one</comment></changeSet>"));
+    final URL declared = this.file("declared.xml", changeLog("db/declared.xml", "<changeSet id=\"2\" author=\"bob\"><comment>two</comment></changeSet>"));
+    final URL own = this.file("own.xml", changeLog("db/ignored.xml", "<changeSet id=\"3\" author=\"carol\" logicalFilePath=\"db/own.xml\"><comment>three</comment></changeSet>"));
+    final Document document = flatten(Arrays.asList(plain, declared, own));
+    final NodeList changeSets = document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "changeSet");
+    assertEquals(3, changeSets.getLength());
+    assertChangeSet((Element)changeSets.item(0), "1", "alice", plain.toExternalForm());
+    assertChangeSet((Element)changeSets.item(1), "2", "bob", "db/declared.xml");
+    assertChangeSet((Element)changeSets.item(2), "3", "carol", "db/own.xml");
+    assertEquals(0, document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "include").getLength());
+  }
+
+  @Test
+  public void testNestedRelativeIncludeIsInlinedUnderItsOwnPath() throws Exception {
+    this.file("nested/child.xml", changeLog(null, "<changeSet id=\"child\" author=\"alice\"/>"));
+    final URL parent = this.file("parent.xml", changeLog(null, "<changeSet id=\"parent\" author=\"alice\"/>", "<include file=\"nested/child.xml\" relativeToChangelogFile=\"true\"/>"));
+    final NodeList changeSets = flatten(Collections.singletonList(parent)).getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "changeSet");
+    assertEquals(2, changeSets.getLength());
+    assertChangeSet((Element)changeSets.item(0), "parent", "alice", parent.toExternalForm());
+    final String parentPath = parent.toExternalForm();
+    assertChangeSet((Element)changeSets.item(1), "child", "alice", parentPath.substring(0, parentPath.lastIndexOf('/') + 1) + "nested/child.xml");
+  }
+
+  @Test
+  public void testNamespacesAreCarriedOver() throws Exception {
+    final URL url = this.file("extension.xml",
+                              "<databaseChangeLog xmlns=\"" + DATABASE_CHANGE_LOG_NAMESPACE_URI + "\" xmlns:ext=\"" + EXTENSION_NAMESPACE_URI + "\">\n" +
+                              "  <changeSet id=\"1\" author=\"alice\"><ext:custom value=\"x\"/></changeSet>\n" +
+                              "</databaseChangeLog>\n");
+    final Document document = flatten(Collections.singletonList(url));
+    final NodeList custom = document.getElementsByTagNameNS(EXTENSION_NAMESPACE_URI, "custom");
+    assertEquals(1, custom.getLength());
+    assertEquals("x", ((Element)custom.item(0)).getAttribute("value"));
+  }
+
+  @Test
+  public void testChangeLogInNoNamespaceStaysInNoNamespace() throws Exception {
+    final URL url = this.file("unqualified.xml", "<databaseChangeLog>\n  <changeSet id=\"1\" author=\"alice\"/>\n</databaseChangeLog>\n");
+    final Document document = flatten(Collections.singletonList(url));
+    assertEquals(0, document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "changeSet").getLength());
+    assertEquals(1, document.getElementsByTagNameNS("", "changeSet").getLength());
+  }
+
+  @Test
+  public void testChangeLogThatCannotBeInlinedIsIncluded() throws Exception {
+    final URL inlined = this.file("inlined.xml", changeLog(null, "<changeSet id=\"1\" author=\"alice\"/>"));
+    final URL preconditions = this.file("preconditions.xml", changeLog(null, "<preConditions><dbms type=\"h2\"/></preConditions>", "<changeSet id=\"2\" author=\"alice\"/>"));
+    final URL missing = new File(this.directory, "missing.xml").toURI().toURL();
+    final URL sql = this.file("formatted.sql", "--liquibase formatted sql\n");
+    final Document document = flatten(Arrays.asList(inlined, preconditions, missing, sql));
+    final NodeList changeSets = document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "changeSet");
+    assertEquals(1, changeSets.getLength());
+    assertChangeSet((Element)changeSets.item(0), "1", "alice", inlined.toExternalForm());
+    final NodeList includes = document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "include");
+    assertEquals(3, includes.getLength());
+    assertEquals(preconditions.toExternalForm(), ((Element)includes.item(0)).getAttribute("file"));
+    assertEquals(missing.toExternalForm(), ((Element)includes.item(1)).getAttribute("file"));
+    assertEquals(sql.toExternalForm(), ((Element)includes.item(2)).getAttribute("file"));
+    assertEquals(0, document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "preConditions").getLength());
+  }
+
+  @Test
+  public void testChangeLogWithUninlinableIncludeIsIncludedWhole() throws Exception {
+    this.file("child.xml", changeLog(null, "<preConditions><dbms type=\"h2\"/></preConditions>"));
+    final URL parent = this.file("parent.xml", changeLog(null, "<changeSet id=\"1\" author=\"alice\"/>", "<include file=\"child.xml\" relativeToChangelogFile=\"true\"/>"));
+    final Document document = flatten(Collections.singletonList(parent));
+    assertEquals(0, document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "changeSet").getLength());
+    final NodeList includes = document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "include");
+    assertEquals(1, includes.getLength());
+    assertEquals(parent.toExternalForm(), ((Element)includes.item(0)).getAttribute("file"));
+  }
+
+  @Test
+  public void testEachChangeLogIsInlinedOnce() throws Exception {
+    final URL shared = this.file("shared.xml", changeLog(null, "<changeSet id=\"shared\" author=\"alice\"/>"));
+    final URL parent = this.file("parent.xml", changeLog(null, "<include file=\"shared.xml\" relativeToChangelogFile=\"true\"/>"));
+    final Document document = flatten(Arrays.asList(parent, shared, parent));
+    assertEquals(1, document.getElementsByTagNameNS(DATABASE_CHANGE_LOG_NAMESPACE_URI, "changeSet").getLength());
+    assertFalse(document.getDocumentElement().getTextContent().contains("shared.xml"));
+  }
+
+  private final URL file(final String name, final String contents) throws IOException {
+    final File file = new File(this.directory, name);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), contents.getBytes(UTF_8));
+    return file.toURI().toURL();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Flattens the changelogs located at the supplied {@link URL}s into
+   * an aggregate changelog and returns it, parsed.
+   */
+  private static final Document flatten(final List<URL> urls) throws Exception {
+    final StringWriter writer = new StringWriter();
+    writer.write("<databaseChangeLog xmlns=\"" + DATABASE_CHANGE_LOG_NAMESPACE_URI + "\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+    new ChangeLogFlattener().flatten(urls, writer);
+    writer.write("</databaseChangeLog>\n");
+    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new InputSource(new StringReader(writer.toString())));
+  }
+
+  private static final void assertChangeSet(final Element changeSet, final String id, final String author, final String logicalFilePath) {
+    assertEquals(id, changeSet.getAttribute("id"));
+    assertEquals(author, changeSet.getAttribute("author"));
+    assertEquals(logicalFilePath, changeSet.getAttribute("logicalFilePath"));
+  }
+
+  private static final String changeLog(final String logicalFilePath, final String... elements) {
+    final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<databaseChangeLog xmlns=\"" + DATABASE_CHANGE_LOG_NAMESPACE_URI + "\"");
+    if (logicalFilePath != null) {
+      sb.append(" logicalFilePath=\"").append(logicalFilePath).append("\"");
+    }
+    sb.append(">\n");
+    for (final String element : elements) {
+      sb.append("  ").append(element).append("\n");
+    }
+    return sb.append("</databaseChangeLog>\n").toString();
+  }
+
+}
@@ -0,0 +1,299 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.net.URL;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@link ChangeLogIncludeGraph} class.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChangeLogIncludeGraph#resolve(java.util.Collection)
+ */
+public class TestChangeLogIncludeGraph {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The UTF-8 {@link Charset}.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The name under which each test archive holds its changelog.
+   */
+  private static final String CHANGELOG = "META-INF/liquibase/changelog.xml";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * A temporary directory for changelogs and archives.
+   */
+  private File directory;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link TestChangeLogIncludeGraph}.
+   */
+  public TestChangeLogIncludeGraph() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Before
+  public void createDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("TestChangeLogIncludeGraph").toFile();
+  }
+
+  @After
+  public void deleteDirectory() throws IOException {
+    if (this.directory != null) {
+      Files.walkFileTree(this.directory.toPath(), new SimpleFileVisitor<Path>() {
+          @Override
+          public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public final FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+            Files.delete(directory);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    }
+  }
+
+  @Test
+  public void testIndexIsReplacedByItsIncludes() throws IOException {
+    final File a = this.archive("a.jar",
+                                CHANGELOG, changeLog(include("a/one.xml"), include("a/two.xml")),
+                                "a/one.xml", changeLog(changeSet("one")),
+                                "a/two.xml", changeLog(changeSet("two")));
+    final List<URL> roots = ChangeLogScanner.toURLs(a, Collections.singleton(CHANGELOG));
+    assertEquals(Arrays.asList(entry(a, "a/one.xml"), entry(a, "a/two.xml")), new ChangeLogIncludeGraph().resolve(roots));
+  }
+
+  @Test
+  public void testSharedChangeLogInCommonArchive() throws IOException {
+    final File a = this.archive("a.jar",
+                                CHANGELOG, changeLog(include("a/one.xml"), include("common/shared.xml")),
+                                "a/one.xml", changeLog(changeSet("one")));
+    final File b = this.archive("b.jar",
+                                CHANGELOG, changeLog(include("common/shared.xml"), include("b/two.xml")),
+                                "b/two.xml", changeLog(changeSet("two")));
+    final File common = this.archive("common.jar",
+                                     CHANGELOG, changeLog(include("common/shared.xml")),
+                                     "common/shared.xml", changeLog(changeSet("shared")));
+    final List<URL> roots = new ArrayList<URL>();
+    roots.addAll(ChangeLogScanner.toURLs(a, Collections.singleton(CHANGELOG)));
+    roots.addAll(ChangeLogScanner.toURLs(b, Collections.singleton(CHANGELOG)));
+    roots.addAll(ChangeLogScanner.toURLs(common, Collections.singleton(CHANGELOG)));
+    assertEquals(Arrays.asList(entry(a, "a/one.xml"), entry(common, "common/shared.xml"), entry(b, "b/two.xml")),
+                 new ChangeLogIncludeGraph().resolve(roots));
+  }
+
+  @Test
+  public void testClasspathIncludesResolveAgainstFirstRootInOrder() throws IOException {
+    final File a = this.archive("a.jar",
+                                CHANGELOG, changeLog(include("common/shared.xml")),
+                                "common/shared.xml", changeLog(changeSet("fromA")));
+    final File b = this.archive("b.jar",
+                                CHANGELOG, changeLog(include("common/shared.xml")),
+                                "common/shared.xml", changeLog(changeSet("fromB")));
+    final File classes = this.file("classes/" + CHANGELOG, changeLog(include("common/shared.xml")));
+    final List<URL> roots = new ArrayList<URL>();
+    roots.add(classes.toURI().toURL());
+    roots.addAll(ChangeLogScanner.toURLs(b, Collections.singleton(CHANGELOG)));
+    roots.addAll(ChangeLogScanner.toURLs(a, Collections.singleton(CHANGELOG)));
+    assertEquals(Collections.singletonList(entry(b, "common/shared.xml")), new ChangeLogIncludeGraph().resolve(roots));
+
+    // A directory is a root too.
+    final File shared = this.file("classes/common/shared.xml", changeLog(changeSet("fromClasses")));
+    assertEquals(Collections.singletonList(shared.toURI().toURL()), new ChangeLogIncludeGraph().resolve(roots));
+  }
+
+  @Test
+  public void testDeduplicationKeepsFirstOccurrence() throws IOException {
+    this.file("x.xml", changeLog(changeSet("x")));
+    this.file("y.xml", changeLog(changeSet("y")));
+    this.file("z.xml", changeLog(changeSet("z")));
+    final File first = this.file("first.xml", changeLog(relativeInclude("x.xml"), relativeInclude("y.xml")));
+    final File second = this.file("second.xml", changeLog(relativeInclude("y.xml"), relativeInclude("z.xml"), relativeInclude("x.xml")));
+    assertEquals(urls("x.xml", "y.xml", "z.xml"), new ChangeLogIncludeGraph().resolve(Arrays.asList(first.toURI().toURL(), second.toURI().toURL())));
+  }
+
+  @Test
+  public void testChangeLogWithChangeSetsCoversItsIncludes() throws IOException {
+    this.file("shared.xml", changeLog(changeSet("shared")));
+    this.file("other.xml", changeLog(changeSet("other")));
+    final File owner = this.file("owner.xml", changeLog(changeSet("owner"), relativeInclude("shared.xml")));
+    final File index = this.file("index.xml", changeLog(relativeInclude("shared.xml"), relativeInclude("other.xml")));
+    assertEquals(urls("owner.xml", "other.xml"), new ChangeLogIncludeGraph().resolve(Arrays.asList(owner.toURI().toURL(), index.toURI().toURL())));
+  }
+
+  @Test
+  public void testIncludeAll() throws IOException {
+    this.file("all/b.xml", changeLog(changeSet("b")));
+    this.file("all/a.xml", changeLog(changeSet("a")));
+    this.file("all/sub/c.sql", "--liquibase formatted sql\n");
+    this.file("all/readme.txt", "Not a changelog.\n");
+    final File index = this.file("index.xml", changeLog("<includeAll path=\"all\" relativeToChangelogFile=\"true\"/>"));
+    assertEquals(urls("all/a.xml", "all/b.xml", "all/sub/c.sql"), new ChangeLogIncludeGraph().resolve(Collections.singletonList(index.toURI().toURL())));
+  }
+
+  @Test
+  public void testIndexWithMissingIncludeIsIncludedAsIs() throws IOException {
+    this.file("present.xml", changeLog(changeSet("present")));
+    final File index = this.file("index.xml", changeLog(relativeInclude("present.xml"), relativeInclude("absent.xml")));
+    assertEquals(Collections.singletonList(index.toURI().toURL()), new ChangeLogIncludeGraph().resolve(Collections.singletonList(index.toURI().toURL())));
+  }
+
+  @Test
+  public void testIndexWithUnresolvableClasspathIncludeIsIncludedAsIs() throws IOException {
+    final File a = this.archive("a.jar",
+                                CHANGELOG, changeLog(include("a/one.xml"), include("elsewhere/absent.xml")),
+                                "a/one.xml", changeLog(changeSet("one")));
+    final List<URL> roots = ChangeLogScanner.toURLs(a, Collections.singleton(CHANGELOG));
+    assertEquals(roots, new ChangeLogIncludeGraph().resolve(roots));
+  }
+
+  @Test
+  public void testMissingRootIsIncludedAsIs() throws IOException {
+    final URL absent = new File(this.directory, "absent.xml").toURI().toURL();
+    assertEquals(Collections.singletonList(absent), new ChangeLogIncludeGraph().resolve(Collections.singletonList(absent)));
+  }
+
+  private final File file(final String name, final String contents) throws IOException {
+    final File file = new File(this.directory, name);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), contents.getBytes(UTF_8));
+    return file;
+  }
+
+  private final File archive(final String name, final String... namesAndContents) throws IOException {
+    final File archive = new File(this.directory, name);
+    final ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(archive));
+    try {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        stream.putNextEntry(new ZipEntry(namesAndContents[i]));
+        stream.write(namesAndContents[i + 1].getBytes(UTF_8));
+        stream.closeEntry();
+      }
+    } finally {
+      stream.close();
+    }
+    return archive;
+  }
+
+  private final List<URL> urls(final String... names) throws IOException {
+    final List<URL> returnValue = new ArrayList<URL>(names.length);
+    for (final String name : names) {
+      returnValue.add(new File(this.directory, name).toURI().toURL());
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final URL entry(final File archive, final String name) throws IOException {
+    return ChangeLogScanner.toURLs(archive, Collections.singleton(name)).get(0);
+  }
+
+  private static final String changeLog(final String... elements) {
+    final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\">\n");
+    for (final String element : elements) {
+      sb.append("  ").append(element).append("\n");
+    }
+    return sb.append("</databaseChangeLog>\n").toString();
+  }
+
+  private static final String include(final String file) {
+    return "<include file=\"" + file + "\"/>";
+  }
+
+  private static final String relativeInclude(final String file) {
+    return "<include file=\"" + file + "\" relativeToChangelogFile=\"true\"/>";
+  }
+
+  private static final String changeSet(final String id) {
+    return "<changeSet id=\"" + id + "\" author=\"test\"><comment>" + id + "</comment></changeSet>";
+  }
+
+}
@@ -0,0 +1,219 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright (c) 2014 Edugility LLC.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * The original copy of this license is available at
+ * http://www.opensource.org/license/mit-license.html.
+ */
+package com.edugility.maven.liquibase;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the translation of globs by the {@link ResourceNamePattern}
+ * class.
+ *
+ * @author <a href="http://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ResourceNamePattern
+ */
+public class TestResourceNamePattern {
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link TestResourceNamePattern}.
+   */
+  public TestResourceNamePattern() {
+    super();
+  }
+
+
+  /*
+   * Test methods.
+   */
+
+
+  @Test
+  public void testDoubleStarMatchesZeroDirectories() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("META-INF/**/changelog.xml");
+    assertTrue(pattern.matches("META-INF/changelog.xml"));
+    assertTrue(pattern.matches("META-INF/liquibase/changelog.xml"));
+    assertTrue(pattern.matches("META-INF/a/b/c/changelog.xml"));
+    assertFalse(pattern.matches("META-INF//changelog.xml"));
+    assertFalse(pattern.matches("META-INF/a//changelog.xml"));
+    assertFalse(pattern.matches("META-INF/xchangelog.xml"));
+    assertFalse(pattern.matches("changelog.xml"));
+  }
+
+  @Test
+  public void testLeadingDoubleStar() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("**/changelog.xml");
+    assertEquals("", pattern.getBase());
+    assertTrue(pattern.matches("changelog.xml"));
+    assertTrue(pattern.matches("META-INF/liquibase/changelog.xml"));
+    assertFalse(pattern.matches("/changelog.xml"));
+    assertFalse(pattern.matches("META-INF/liquibase/changelog.xml.bak"));
+  }
+
+  @Test
+  public void testTrailingDoubleStar() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("META-INF/liquibase/**");
+    assertEquals("META-INF/liquibase/", pattern.getBase());
+    assertTrue(pattern.matches("META-INF/liquibase/changelog.xml"));
+    assertTrue(pattern.matches("META-INF/liquibase/a/b/changelog.xml"));
+    assertFalse(pattern.matches("META-INF/liquibase/"));
+    assertFalse(pattern.matches("META-INF/liquibase//changelog.xml"));
+    assertFalse(pattern.matches("META-INF/liquibasechangelog.xml"));
+  }
+
+  @Test
+  public void testDoubleStarWithinASegmentBehavesLikeStar() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("META-INF/changelog**.xml");
+    assertTrue(pattern.matches("META-INF/changelog.xml"));
+    assertTrue(pattern.matches("META-INF/changelog-1.xml"));
+    assertFalse(pattern.matches("META-INF/changelog/1.xml"));
+  }
+
+  @Test
+  public void testStar() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("META-INF/*/changelog-*.xml");
+    assertEquals("META-INF/", pattern.getBase());
+    assertTrue(pattern.matches("META-INF/liquibase/changelog-1.xml"));
+    assertTrue(pattern.matches("META-INF/liquibase/changelog-.xml"));
+    assertFalse(pattern.matches("META-INF//changelog-1.xml"));
+    assertFalse(pattern.matches("META-INF/a/b/changelog-1.xml"));
+    assertFalse(pattern.matches("META-INF/liquibase/changelog-a/b.xml"));
+  }
+
+  @Test
+  public void testQuestionMark() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("META-INF/changelog-?.xml");
+    assertTrue(pattern.matches("META-INF/changelog-1.xml"));
+    assertFalse(pattern.matches("META-INF/changelog-12.xml"));
+    assertFalse(pattern.matches("META-INF/changelog-/.xml"));
+  }
+
+  @Test
+  public void testClassesNeverMatchSeparators() {
+    assertTrue(new ResourceNamePattern("a[/b]c").matches("abc"));
+    assertFalse(new ResourceNamePattern("a[/b]c").matches("a/c"));
+    assertTrue(new ResourceNamePattern("a[!x]c").matches("abc"));
+    assertFalse(new ResourceNamePattern("a[!x]c").matches("axc"));
+    assertFalse(new ResourceNamePattern("a[!x]c").matches("a/c"));
+    assertTrue(new ResourceNamePattern("a[]]c").matches("a]c"));
+    assertTrue(new ResourceNamePattern("a[!]]c").matches("abc"));
+    assertFalse(new ResourceNamePattern("a[!]]c").matches("a]c"));
+    assertTrue(new ResourceNamePattern("a[a-c&]c").matches("a&c"));
+  }
+
+  @Test
+  public void testAlternatives() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("META-INF/{liquibase,db}/changelog.{xml,yaml}");
+    assertTrue(pattern.matches("META-INF/liquibase/changelog.xml"));
+    assertTrue(pattern.matches("META-INF/db/changelog.yaml"));
+    assertFalse(pattern.matches("META-INF/other/changelog.xml"));
+    assertFalse(pattern.matches("META-INF/db/changelog.json"));
+  }
+
+  @Test
+  public void testRegularExpressionMetacharactersAreLiteral() {
+    final ResourceNamePattern pattern = new ResourceNamePattern("a+b(c)/$x^.*");
+    assertTrue(pattern.matches("a+b(c)/$x^.sql"));
+    assertFalse(pattern.matches("aab(c)/$x^.sql"));
+    assertFalse(pattern.matches("a+b(c)/$x^xsql"));
+  }
+
+  @Test
+  public void testTranslation() {
+    assertEquals("META-INF/(?:[^/]+/)*changelog\\.xml", ResourceNamePattern.toRegularExpression("META-INF/**/changelog.xml"));
+    assertEquals("META-INF/(?:[^/]+/)*[^/]+", ResourceNamePattern.toRegularExpression("META-INF/**"));
+    assertEquals("META-INF/[^/]+/c[^/]*", ResourceNamePattern.toRegularExpression("META-INF/*/c*"));
+    assertEquals("a(?!/)[^b]c", ResourceNamePattern.toRegularExpression("a[!b]c"));
+    for (final String glob : Arrays.asList("**", "**/*", "a/**/b/**", "[]]", "{a,b}/**/c?[!d]", "**x**/y")) {
+      // Every translation must compile.
+      Pattern.compile(ResourceNamePattern.toRegularExpression(glob));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnterminatedClass() {
+    new ResourceNamePattern("META-INF/[abc");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnterminatedGroup() {
+    new ResourceNamePattern("META-INF/{a,b");
+  }
+
+  @Test
+  public void testList() throws IOException {
+    final Path directory = Files.createTempDirectory("TestResourceNamePattern");
+    try {
+      for (final String name : Arrays.asList("META-INF/changelog.xml", "META-INF/b/changelog.xml", "META-INF/a/changelog.xml", "META-INF/a/other.xml", "changelog.xml")) {
+        final Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+      }
+      assertEquals(Arrays.asList("META-INF/a/changelog.xml", "META-INF/b/changelog.xml", "META-INF/changelog.xml"),
+                   new ResourceNamePattern("META-INF/**/changelog.xml").list(directory.toFile()));
+    } finally {
+      delete(directory.toFile());
+    }
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}